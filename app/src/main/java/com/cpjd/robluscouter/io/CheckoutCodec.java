@@ -0,0 +1,668 @@
+package com.cpjd.robluscouter.io;
+
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.RTeam;
+import com.cpjd.robluscouter.models.metrics.CheckboxValues;
+import com.cpjd.robluscouter.models.metrics.RBoolean;
+import com.cpjd.robluscouter.models.metrics.RCalculation;
+import com.cpjd.robluscouter.models.metrics.RCheckbox;
+import com.cpjd.robluscouter.models.metrics.RChooser;
+import com.cpjd.robluscouter.models.metrics.RCounter;
+import com.cpjd.robluscouter.models.metrics.RFieldData;
+import com.cpjd.robluscouter.models.metrics.RFieldDiagram;
+import com.cpjd.robluscouter.models.metrics.RGallery;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.models.metrics.RSlider;
+import com.cpjd.robluscouter.models.metrics.RStopwatch;
+import com.cpjd.robluscouter.models.metrics.RTextfield;
+import com.cpjd.robluscouter.models.metrics.SchemaPool;
+import com.cpjd.robluscouter.utils.DoubleList;
+import com.cpjd.robluscouter.utils.MatchType;
+
+import org.codehaus.jackson.annotate.JsonSubTypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CheckoutCodec is a compact binary format for the checkout model graph (RCheckout -> RTeam -> RTab -> RMetric).
+ *
+ * Compared to Java serialization, no class descriptors are written and nothing is reflected on at read time. Strings
+ * are interned per checkout, so metric titles that repeat in every match tab are only written once. Integers are written
+ * as zig-zag varints.
+ *
+ * Metric types are tagged with the names from RMetric's @JsonSubTypes annotation, the same names used by the JSON sync format.
+ *
+ * Strings are written as a varint length and UTF-8 bytes, so there's no limit on their length (DataOutputStream.writeUTF()
+ * can't write more than 65535 bytes, which a long text field note can reach).
+ *
+ * The schema of a metric (its title, chooser items, checkbox labels, counter increment, etc.) is only written the first
+ * time the metric's ID appears in the checkout. Every later tab that contains the same metric with the same schema only
+ * writes its values. Decoded metrics share their schema through {@link SchemaPool}, so it's held in memory once.
+ *
+ * Format:
+ * [4 bytes magic "RCK1"][1 byte version][checkout]
+ *
+ * Version 3 is the first version of the format that shipped, versions 1 and 2 were only written by pre-release builds.
+ *
+ * Data written with Java serialization (it starts with 0xACED) can be detected with {@link #isLegacy(byte[])}.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class CheckoutCodec {
+
+    private static final byte[] MAGIC = {'R', 'C', 'K', '1'};
+    /**
+     * Increment this if the format changes, older versions must still be readable
+     */
+    private static final int VERSION = 3;
+    /**
+     * The oldest version that can be read, the first version that shipped
+     */
+    private static final int MIN_VERSION = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final HashMap<Class<?>, String> typeNames = new HashMap<>();
+    private static final HashMap<String, Class<?>> types = new HashMap<>();
+
+    static {
+        for(JsonSubTypes.Type type : RMetric.class.getAnnotation(JsonSubTypes.class).value()) {
+            typeNames.put(type.value(), type.name());
+            types.put(type.name(), type.value());
+        }
+    }
+
+    /**
+     * Checks if the bytes were written with Java serialization (older versions of Roblu Scouter)
+     * @param bytes the serialized checkout
+     * @return true if the bytes should be read with an ObjectInputStream
+     */
+    public static boolean isLegacy(byte[] bytes) {
+        return bytes != null && bytes.length >= 2 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED;
+    }
+
+    /**
+     * Encodes a checkout
+     * @param checkout the checkout to encode
+     * @return the encoded checkout
+     */
+    public static byte[] encode(RCheckout checkout) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        encode(checkout, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a checkout to a stream
+     * @param checkout the checkout to encode
+     * @param stream the stream to write to, it won't be closed
+     */
+    public static void encode(RCheckout checkout, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        new Writer(out).writeCheckout(checkout);
+        out.flush();
+    }
+
+    /**
+     * Decodes a checkout
+     * @param bytes the encoded checkout
+     * @return the decoded checkout
+     */
+    public static RCheckout decode(byte[] bytes) throws IOException {
+        return decode(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Decodes a checkout from a stream
+     * @param stream the stream to read from
+     * @return the decoded checkout
+     */
+    public static RCheckout decode(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        for(byte b : MAGIC) if(in.readByte() != b) throw new IOException("Not an encoded checkout.");
+        int version = in.readUnsignedByte();
+        if(version < MIN_VERSION || version > VERSION) throw new IOException("Unsupported checkout format version "+version);
+        return new Reader(in).readCheckout();
+    }
+
+    /**
+     * Creates a deep copy of a checkout
+     * @param checkout the checkout to copy
+     * @return a copy of the checkout that doesn't share any references with the original
+     */
+    public static RCheckout copy(RCheckout checkout) throws IOException {
+        return decode(encode(checkout));
+    }
+
+    /**
+     * Writes a checkout, a Writer should only be used for one checkout
+     */
+    private static class Writer {
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+        /**
+         * The last metric that had its schema written, by metric ID
+         */
+        private final HashMap<Integer, RMetric> schemas = new HashMap<>();
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeCheckout(RCheckout checkout) throws IOException {
+            writeInt(checkout.getID());
+            writeInt(checkout.getStatus());
+            writeString(checkout.getNameTag());
+            writeLong(checkout.getTime());
+            writeTeam(checkout.getTeam());
+        }
+
+        private void writeTeam(RTeam team) throws IOException {
+            out.writeBoolean(team != null);
+            if(team == null) return;
+
+            writeInt(team.getID());
+            writeString(team.getName());
+            writeInt(team.getNumber());
+            writeLong(team.getLastEdit());
+            writeInt(team.getPage());
+            writeString(team.getFullName());
+            writeString(team.getLocation());
+            writeString(team.getMotto());
+            writeString(team.getWebsite());
+            writeInt(team.getRookieYear());
+
+            if(team.getTabs() == null) writeSize(-1);
+            else {
+                writeSize(team.getTabs().size());
+                for(RTab tab : team.getTabs()) writeTab(tab);
+            }
+        }
+
+        private void writeTab(RTab tab) throws IOException {
+            writeString(tab.getTitle());
+            out.writeBoolean(tab.isRedAlliance());
+            writeInt(tab.getAlliancePosition());
+            out.writeBoolean(tab.isWon());
+            writeLong(tab.getTime());
+            writeString(tab.getMatchType() == null ? null : tab.getMatchType().name());
+            writeInt(tab.getMatchOrder());
+            writeInt(tab.getSubMatchOrder());
+            writeInt(tab.getTeamOrder());
+
+            if(tab.getEdits() == null) writeSize(-1);
+            else {
+                writeSize(tab.getEdits().size());
+                for(Map.Entry<String, Long> edit : tab.getEdits().entrySet()) {
+                    writeString(edit.getKey());
+                    writeLong(edit.getValue() == null ? 0 : edit.getValue());
+                }
+            }
+
+            writeMetrics(tab.getMetrics());
+            writeTeams(tab.getTeammates());
+            writeTeams(tab.getOpponents());
+        }
+
+        private void writeTeams(ArrayList<RTeam> teams) throws IOException {
+            if(teams == null) writeSize(-1);
+            else {
+                writeSize(teams.size());
+                for(RTeam team : teams) writeTeam(team);
+            }
+        }
+
+        private void writeMetrics(ArrayList<RMetric> metrics) throws IOException {
+            if(metrics == null) writeSize(-1);
+            else {
+                writeSize(metrics.size());
+                for(RMetric metric : metrics) writeMetric(metric);
+            }
+        }
+
+        private void writeMetric(RMetric metric) throws IOException {
+            String type = metric == null ? null : typeNames.get(metric.getClass());
+            if(metric != null && type == null) throw new IOException("Unknown metric type "+metric.getClass().getSimpleName());
+            writeString(type);
+            if(metric == null) return;
+
+            writeInt(metric.getID());
+            // schema fields are only written if they're different from the last schema written for this ID
+            boolean full = !sameSchema(schemas.get(metric.getID()), metric);
+            out.writeBoolean(full);
+            if(full) {
+                schemas.put(metric.getID(), metric);
+                writeString(metric.getTitle());
+            }
+            out.writeBoolean(metric.isModified());
+
+            if(metric instanceof RBoolean) {
+                out.writeBoolean(((RBoolean) metric).isValue());
+            } else if(metric instanceof RCheckbox) {
+                CheckboxValues values = ((RCheckbox) metric).getValues();
+                if(full) writeSize(values == null ? -1 : values.size());
+                if(values != null) {
+                    for(int i = 0; i < values.size(); i++) {
+                        if(full) writeString(values.getLabel(i));
+                        out.writeByte(values.isChecked(i) ? 1 : 0);
+                    }
+                }
+            } else if(metric instanceof RChooser) {
+                String[] values = ((RChooser) metric).getValues();
+                if(full) {
+                    if(values == null) writeSize(-1);
+                    else {
+                        writeSize(values.length);
+                        for(String value : values) writeString(value);
+                    }
+                }
+                writeInt(((RChooser) metric).getSelectedIndex());
+            } else if(metric instanceof RCounter) {
+                out.writeDouble(((RCounter) metric).getValue());
+                if(full) {
+                    out.writeDouble(((RCounter) metric).getIncrement());
+                    out.writeBoolean(((RCounter) metric).isVerboseInput());
+                }
+            } else if(metric instanceof RGallery) {
+                ArrayList<Integer> pictureIDs = ((RGallery) metric).getPictureIDs();
+                if(pictureIDs == null) writeSize(-1);
+                else {
+                    writeSize(pictureIDs.size());
+                    for(Integer ID : pictureIDs) writeInt(ID);
+                }
+                ArrayList<byte[]> images = ((RGallery) metric).getImages();
+                if(images == null) writeSize(-1);
+                else {
+                    writeSize(images.size());
+                    for(byte[] image : images) writeBytes(image);
+                }
+            } else if(metric instanceof RSlider) {
+                writeInt(((RSlider) metric).getValue());
+                if(full) {
+                    writeInt(((RSlider) metric).getMin());
+                    writeInt(((RSlider) metric).getMax());
+                }
+            } else if(metric instanceof RStopwatch) {
+                out.writeDouble(((RStopwatch) metric).getTime());
+                DoubleList times = ((RStopwatch) metric).getTimes();
+                if(times == null) writeSize(-1);
+                else {
+                    writeSize(times.size());
+                    for(int i = 0; i < times.size(); i++) out.writeDouble(times.get(i));
+                }
+            } else if(metric instanceof RTextfield) {
+                writeString(((RTextfield) metric).getText());
+                if(full) {
+                    out.writeBoolean(((RTextfield) metric).isNumericalOnly());
+                    out.writeBoolean(((RTextfield) metric).isOneLine());
+                }
+            } else if(metric instanceof RFieldDiagram) {
+                if(full) writeInt(((RFieldDiagram) metric).getPictureID());
+                writeBytes(((RFieldDiagram) metric).getDrawings());
+            } else if(metric instanceof RCalculation) {
+                out.writeDouble(((RCalculation) metric).getLastValue());
+                if(full) writeString(((RCalculation) metric).getCalculation());
+            } else if(metric instanceof RFieldData) {
+                LinkedHashMap<String, ArrayList<RMetric>> data = ((RFieldData) metric).getData();
+                if(data == null) writeSize(-1);
+                else {
+                    writeSize(data.size());
+                    for(Map.Entry<String, ArrayList<RMetric>> entry : data.entrySet()) {
+                        writeString(entry.getKey());
+                        writeMetrics(entry.getValue());
+                    }
+                }
+            }
+            // RDivider has no fields
+        }
+
+        /**
+         * @param schema the metric that last had its schema written, may be null
+         * @param metric the metric to write
+         * @return true if the schema of the metric doesn't need to be written again
+         */
+        private boolean sameSchema(RMetric schema, RMetric metric) {
+            if(schema == null || schema.getClass() != metric.getClass() || !equal(schema.getTitle(), metric.getTitle())) return false;
+
+            if(metric instanceof RCheckbox) {
+                CheckboxValues a = ((RCheckbox) schema).getValues(), b = ((RCheckbox) metric).getValues();
+                if(a == null || b == null) return a == b;
+                return Arrays.equals(a.getLabels(), b.getLabels());
+            } else if(metric instanceof RChooser) {
+                return Arrays.equals(((RChooser) schema).getValues(), ((RChooser) metric).getValues());
+            } else if(metric instanceof RCounter) {
+                return ((RCounter) schema).getIncrement() == ((RCounter) metric).getIncrement()
+                        && ((RCounter) schema).isVerboseInput() == ((RCounter) metric).isVerboseInput();
+            } else if(metric instanceof RSlider) {
+                return ((RSlider) schema).getMin() == ((RSlider) metric).getMin() && ((RSlider) schema).getMax() == ((RSlider) metric).getMax();
+            } else if(metric instanceof RTextfield) {
+                return ((RTextfield) schema).isNumericalOnly() == ((RTextfield) metric).isNumericalOnly()
+                        && ((RTextfield) schema).isOneLine() == ((RTextfield) metric).isOneLine();
+            } else if(metric instanceof RFieldDiagram) {
+                return ((RFieldDiagram) schema).getPictureID() == ((RFieldDiagram) metric).getPictureID();
+            } else if(metric instanceof RCalculation) {
+                return equal(((RCalculation) schema).getCalculation(), ((RCalculation) metric).getCalculation());
+            }
+            return true;
+        }
+
+        private boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        /**
+         * Strings are written as a varint reference, 0 is null, 1 is a new string (followed by its UTF-8 bytes), and
+         * anything higher is a reference to a string that was already written
+         */
+        private void writeString(String string) throws IOException {
+            if(string == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer ref = strings.get(string);
+            if(ref != null) writeVarInt(ref + 2);
+            else {
+                writeVarInt(1);
+                writeBytes(string.getBytes(UTF8));
+                strings.put(string, strings.size());
+            }
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            writeSize(bytes == null ? -1 : bytes.length);
+            if(bytes != null) out.write(bytes);
+        }
+
+        /**
+         * Sizes are written as size + 1, so that null (-1) can be written as 0
+         */
+        private void writeSize(int size) throws IOException {
+            writeVarInt(size + 1);
+        }
+
+        private void writeInt(int value) throws IOException {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        private void writeLong(long value) throws IOException {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.writeByte((int) zigzag);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    /**
+     * Reads a checkout, a Reader should only be used for one checkout
+     */
+    private static class Reader {
+        private final DataInputStream in;
+        private final ArrayList<String> strings = new ArrayList<>();
+        /**
+         * The last metric that had its schema read, by metric ID
+         */
+        private final HashMap<Integer, RMetric> schemas = new HashMap<>();
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        private RCheckout readCheckout() throws IOException {
+            RCheckout checkout = new RCheckout();
+            checkout.setID(readInt());
+            checkout.setStatus(readInt());
+            checkout.setNameTag(readString());
+            checkout.setTime(readLong());
+            checkout.setTeam(readTeam());
+            return checkout;
+        }
+
+        private RTeam readTeam() throws IOException {
+            if(!in.readBoolean()) return null;
+
+            RTeam team = new RTeam();
+            team.setID(readInt());
+            team.setName(readString());
+            team.setNumber(readInt());
+            team.setLastEdit(readLong());
+            team.setPage(readInt());
+            team.setFullName(readString());
+            team.setLocation(readString());
+            team.setMotto(readString());
+            team.setWebsite(readString());
+            team.setRookieYear(readInt());
+
+            int size = readSize();
+            if(size >= 0) {
+                ArrayList<RTab> tabs = new ArrayList<>(size);
+                for(int i = 0; i < size; i++) tabs.add(readTab());
+                team.setTabs(tabs);
+            }
+            return team;
+        }
+
+        private RTab readTab() throws IOException {
+            RTab tab = new RTab();
+            tab.setTitle(readString());
+            tab.setRedAlliance(in.readBoolean());
+            tab.setAlliancePosition(readInt());
+            tab.setWon(in.readBoolean());
+            tab.setTime(readLong());
+            String matchType = readString();
+            if(matchType != null) tab.setMatchType(MatchType.valueOf(matchType));
+            tab.setMatchOrder(readInt());
+            tab.setSubMatchOrder(readInt());
+            tab.setTeamOrder(readInt());
+
+            int size = readSize();
+            if(size >= 0) {
+                LinkedHashMap<String, Long> edits = new LinkedHashMap<>();
+                for(int i = 0; i < size; i++) edits.put(readString(), readLong());
+                tab.setEdits(edits);
+            }
+
+            tab.setMetrics(readMetrics());
+            tab.setTeammates(readTeams());
+            tab.setOpponents(readTeams());
+            return tab;
+        }
+
+        private ArrayList<RTeam> readTeams() throws IOException {
+            int size = readSize();
+            if(size < 0) return null;
+            ArrayList<RTeam> teams = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) teams.add(readTeam());
+            return teams;
+        }
+
+        private ArrayList<RMetric> readMetrics() throws IOException {
+            int size = readSize();
+            if(size < 0) return null;
+            ArrayList<RMetric> metrics = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) metrics.add(readMetric());
+            return metrics;
+        }
+
+        private RMetric readMetric() throws IOException {
+            String typeName = readString();
+            if(typeName == null) return null;
+            Class<?> type = types.get(typeName);
+            if(type == null) throw new IOException("Unknown metric type "+typeName);
+
+            RMetric metric;
+            try {
+                metric = (RMetric) type.newInstance();
+            } catch(Exception e) {
+                throw new IOException("Failed to create metric of type "+typeName);
+            }
+
+            metric.setID(readInt());
+            boolean full = in.readBoolean();
+            RMetric schema = metric;
+            if(full) schemas.put(metric.getID(), metric);
+            else {
+                schema = schemas.get(metric.getID());
+                if(schema == null || schema.getClass() != metric.getClass()) throw new IOException("Missing schema for metric "+metric.getID());
+            }
+
+            String title = full ? readString() : schema.getTitle();
+            if(title != null) metric.setTitle(title);
+            metric.setModified(in.readBoolean());
+
+            if(metric instanceof RBoolean) {
+                ((RBoolean) metric).setValue(in.readBoolean());
+            } else if(metric instanceof RCheckbox) {
+                int size = full ? readSize() : ((RCheckbox) schema).getValues() == null ? -1 : ((RCheckbox) schema).getValues().size();
+                if(size >= 0) {
+                    String[] labels = full ? new String[size] : ((RCheckbox) schema).getValues().getLabels();
+                    boolean[] checked = new boolean[size];
+                    for(int i = 0; i < size; i++) {
+                        if(full) labels[i] = readString();
+                        checked[i] = in.readByte() == 1;
+                    }
+                    CheckboxValues values = new CheckboxValues(labels);
+                    for(int i = 0; i < size; i++) values.setChecked(i, checked[i]);
+                    ((RCheckbox) metric).setValues(values);
+                }
+            } else if(metric instanceof RChooser) {
+                if(full) {
+                    int size = readSize();
+                    if(size >= 0) {
+                        String[] values = new String[size];
+                        for(int i = 0; i < size; i++) values[i] = readString();
+                        ((RChooser) metric).setValues(values);
+                    }
+                } else ((RChooser) metric).setValues(((RChooser) schema).getValues());
+                ((RChooser) metric).setSelectedIndex(readInt());
+            } else if(metric instanceof RCounter) {
+                ((RCounter) metric).setValue(in.readDouble());
+                ((RCounter) metric).setIncrement(full ? in.readDouble() : ((RCounter) schema).getIncrement());
+                ((RCounter) metric).setVerboseInput(full ? in.readBoolean() : ((RCounter) schema).isVerboseInput());
+            } else if(metric instanceof RGallery) {
+                int size = readSize();
+                if(size >= 0) {
+                    ArrayList<Integer> pictureIDs = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++) pictureIDs.add(readInt());
+                    ((RGallery) metric).setPictureIDs(pictureIDs);
+                }
+                size = readSize();
+                if(size >= 0) {
+                    ArrayList<byte[]> images = new ArrayList<>(size);
+                    for(int i = 0; i < size; i++) images.add(readBytes());
+                    ((RGallery) metric).setImages(images);
+                }
+            } else if(metric instanceof RSlider) {
+                ((RSlider) metric).setValue(readInt());
+                ((RSlider) metric).setMin(full ? readInt() : ((RSlider) schema).getMin());
+                ((RSlider) metric).setMax(full ? readInt() : ((RSlider) schema).getMax());
+            } else if(metric instanceof RStopwatch) {
+                ((RStopwatch) metric).setTime(in.readDouble());
+                int size = readSize();
+                if(size >= 0) {
+                    DoubleList times = new DoubleList(size);
+                    for(int i = 0; i < size; i++) times.add(in.readDouble());
+                    ((RStopwatch) metric).setTimes(times);
+                }
+            } else if(metric instanceof RTextfield) {
+                ((RTextfield) metric).setText(readString());
+                ((RTextfield) metric).setNumericalOnly(full ? in.readBoolean() : ((RTextfield) schema).isNumericalOnly());
+                ((RTextfield) metric).setOneLine(full ? in.readBoolean() : ((RTextfield) schema).isOneLine());
+            } else if(metric instanceof RFieldDiagram) {
+                ((RFieldDiagram) metric).setPictureID(full ? readInt() : ((RFieldDiagram) schema).getPictureID());
+                ((RFieldDiagram) metric).setDrawings(readBytes());
+            } else if(metric instanceof RCalculation) {
+                ((RCalculation) metric).setLastValue(in.readDouble());
+                ((RCalculation) metric).setCalculation(full ? readString() : ((RCalculation) schema).getCalculation());
+            } else if(metric instanceof RFieldData) {
+                int size = readSize();
+                if(size >= 0) {
+                    LinkedHashMap<String, ArrayList<RMetric>> data = new LinkedHashMap<>();
+                    for(int i = 0; i < size; i++) {
+                        String key = readString();
+                        data.put(key, readMetrics());
+                    }
+                    ((RFieldData) metric).setData(data);
+                }
+            }
+            // metrics that reused a schema already share it
+            return full ? SchemaPool.intern(metric) : metric;
+        }
+
+        private String readString() throws IOException {
+            int ref = readVarInt();
+            if(ref == 0) return null;
+            if(ref == 1) {
+                byte[] bytes = readBytes();
+                if(bytes == null) throw new IOException("Invalid string");
+                String string = new String(bytes, UTF8);
+                strings.add(string);
+                return string;
+            }
+            if(ref - 2 >= strings.size()) throw new IOException("Invalid string reference "+ref);
+            return strings.get(ref - 2);
+        }
+
+        private byte[] readBytes() throws IOException {
+            int size = readSize();
+            if(size < 0) return null;
+            byte[] bytes = new byte[size];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        private int readSize() throws IOException {
+            return readVarInt() - 1;
+        }
+
+        private int readInt() throws IOException {
+            int zigzag = readVarInt();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private long readLong() throws IOException {
+            long zigzag = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            throw new IOException("Malformed varint.");
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for(int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint.");
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cpjd.robluscouter.io;
+
+import com.cpjd.robluscouter.models.RCheckout;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * CheckoutIndex holds the checkouts of one list in {@link CheckoutRepository}, both by ID and in sorted order.
+ *
+ * Checkouts are ordered by their packed sort key (see {@link RCheckout#getSortKey()}), so adding, replacing, or removing
+ * one checkout is O(log n), and the list never has to be sorted as a whole.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+class CheckoutIndex {
+
+    /**
+     * Sort key first, the ID breaks ties so that checkouts with the same key can coexist
+     */
+    private static final Comparator<RCheckout> ORDER = new Comparator<RCheckout>() {
+        @Override
+        public int compare(RCheckout a, RCheckout b) {
+            int result = Long.compare(a.getSortKey(), b.getSortKey());
+            return result != 0 ? result : Integer.compare(a.getID(), b.getID());
+        }
+    };
+
+    private final HashMap<Integer, RCheckout> byID = new HashMap<>();
+    private final TreeSet<RCheckout> sorted = new TreeSet<>(ORDER);
+
+    CheckoutIndex(ArrayList<RCheckout> checkouts) {
+        if(checkouts == null) return;
+        for(RCheckout checkout : checkouts) if(checkout != null) put(checkout);
+    }
+
+    RCheckout get(int ID) {
+        return byID.get(ID);
+    }
+
+    /**
+     * Adds a checkout, or replaces the checkout with the same ID
+     * @param checkout the checkout
+     */
+    void put(RCheckout checkout) {
+        RCheckout old = byID.put(checkout.getID(), checkout);
+        if(old != null) sorted.remove(old);
+        sorted.add(checkout);
+    }
+
+    void remove(int ID) {
+        RCheckout old = byID.remove(ID);
+        if(old != null) sorted.remove(old);
+    }
+
+    int size() {
+        return byID.size();
+    }
+
+    /**
+     * @return the checkouts, in sorted order
+     */
+    ArrayList<RCheckout> values() {
+        return new ArrayList<>(sorted);
+    }
+}
@@ -0,0 +1,481 @@
+package com.cpjd.robluscouter.io;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.metrics.RGallery;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.models.metrics.SchemaPool;
+import com.cpjd.robluscouter.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CheckoutRepository keeps the /checkouts/ and /mycheckouts/ lists in memory so that the UI and the background service
+ * don't have to deserialize the whole event from the disk every time they need it.
+ *
+ * -Each list is loaded from IO the first time it's requested, after that it's served from memory
+ * -Saves and deletes are written through to IO immediately, so the disk is always up to date
+ * -Except for {@link #saveMyCheckoutLater(RCheckout)}, which coalesces rapid edits into one write, see {@link #flush()}
+ * -Listeners are notified with the IDs of the checkouts that changed
+ * -Lists are returned sorted, each list is kept in sorted order as checkouts are saved, see {@link CheckoutIndex}
+ *
+ * The checkouts returned by the repository are the cached instances, if they're modified, they must be saved
+ * back with the repository (not IO), otherwise the cache and the disk will be out of sync.
+ *
+ * The background service runs in the same process as the UI, so there's only one repository for the whole app.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class CheckoutRepository {
+
+    private static CheckoutRepository instance;
+
+    private final IO io;
+
+    /**
+     * /checkouts/, null until loaded
+     */
+    private CheckoutIndex checkouts;
+    /**
+     * /mycheckouts/, null until loaded
+     */
+    private CheckoutIndex myCheckouts;
+    /**
+     * Built from /checkouts/ when it's requested, and discarded whenever /checkouts/ changes
+     */
+    private MatchIndex matchIndex;
+
+    private final CopyOnWriteArrayList<CheckoutRepositoryListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * How long edits are collected before they're written to the disk, in milliseconds
+     */
+    private static final long WRITE_BEHIND_DELAY = 750;
+    /**
+     * Writes the checkouts saved with saveMyCheckoutLater()
+     */
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * The checkouts waiting to be written to /mycheckouts/, guarded by this. Only the reference is stored, the checkout
+     * is encoded once by the writer thread, however many times it was saved in the meantime.
+     */
+    private final LinkedHashMap<Integer, RCheckout> pendingWrites = new LinkedHashMap<>();
+    /**
+     * Checkouts the writer thread has taken out of pendingWrites, but not written yet, guarded by this.
+     * A checkout is removed from here if it's saved or deleted in the meantime, so it isn't written.
+     */
+    private final HashMap<Integer, RCheckout> writing = new HashMap<>();
+    /**
+     * Held while writing to /mycheckouts/, so the writer thread can't overwrite a newer save with an older snapshot.
+     * Always acquired before the repository monitor, never while holding it.
+     */
+    private final Object diskLock = new Object();
+    private ScheduledFuture<?> scheduledWrite;
+    /**
+     * Number of saves that didn't have to be encoded and written because they were coalesced with another one
+     */
+    private int coalescedEncodes;
+
+    public interface CheckoutRepositoryListener {
+        /**
+         * Called from whichever thread changed the checkouts
+         * @param mode either Constants.CHECKOUTS or Constants.MY_CHECKOUTS
+         * @param IDs the IDs of the checkouts that were saved or deleted, empty if the list was cleared
+         */
+        void checkoutsChanged(int mode, ArrayList<Integer> IDs);
+    }
+
+    private CheckoutRepository(Context context) {
+        this.io = new IO(context);
+    }
+
+    /**
+     * Gets the shared repository
+     * @param context any context, the application context will be used
+     * @return the repository instance
+     */
+    public static synchronized CheckoutRepository getInstance(Context context) {
+        if(instance == null) instance = new CheckoutRepository(context.getApplicationContext());
+        return instance;
+    }
+
+    public void addListener(CheckoutRepositoryListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(CheckoutRepositoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /*
+     * /checkouts/ METHODS
+     */
+
+    /**
+     * @return a list of all the checkouts, null if there aren't any
+     */
+    public synchronized ArrayList<RCheckout> getCheckouts() {
+        loadCheckouts();
+        if(checkouts.size() == 0) return null;
+        return checkouts.values();
+    }
+
+    /**
+     * @param ID the ID of the checkout
+     * @return the checkout, null if it doesn't exist
+     */
+    public synchronized RCheckout getCheckout(int ID) {
+        loadCheckouts();
+        return checkouts.get(ID);
+    }
+
+    /**
+     * Saves a checkout to /checkouts/, checkouts received from the server share their metric schemas with
+     * the cached checkouts, see {@link SchemaPool}
+     * @param checkout the checkout to save
+     */
+    public void saveCheckout(RCheckout checkout) {
+        if(checkout.getTeam() != null && checkout.getTeam().getTabs() != null) {
+            for(RTab tab : checkout.getTeam().getTabs()) SchemaPool.intern(tab.getMetrics());
+        }
+        synchronized(this) {
+            loadCheckouts();
+            loadMyCheckouts(); // needed by separate()
+            checkouts.put(separate(checkout, myCheckouts));
+            matchIndex = null;
+            io.saveCheckout(checkout);
+        }
+        notifyListeners(Constants.CHECKOUTS, checkout.getID());
+    }
+
+    /**
+     * @return an index of the matches in /checkouts/, it's only rebuilt after /checkouts/ changes
+     */
+    public synchronized MatchIndex getMatchIndex() {
+        loadCheckouts();
+        if(matchIndex == null) matchIndex = new MatchIndex(checkouts.values());
+        return matchIndex;
+    }
+
+    /*
+     * /mycheckouts/ METHODS
+     */
+
+    /**
+     * @return a list of all the checkouts in /mycheckouts/, null if there aren't any
+     */
+    public synchronized ArrayList<RCheckout> getMyCheckouts() {
+        loadMyCheckouts();
+        if(myCheckouts.size() == 0) return null;
+        return myCheckouts.values();
+    }
+
+    /**
+     * @param ID the ID of the checkout
+     * @return the checkout from /mycheckouts/, null if it doesn't exist
+     */
+    public synchronized RCheckout getMyCheckout(int ID) {
+        loadMyCheckouts();
+        return myCheckouts.get(ID);
+    }
+
+    /**
+     * Saves a checkout to /mycheckouts/
+     * @param checkout the checkout to save
+     */
+    public void saveMyCheckout(RCheckout checkout) {
+        synchronized(diskLock) {
+            synchronized(this) {
+                loadMyCheckouts();
+                loadCheckouts(); // needed by separate()
+                myCheckouts.put(separate(checkout, checkouts));
+                pendingWrites.remove(checkout.getID());
+                writing.remove(checkout.getID());
+                io.saveMyCheckout(checkout);
+            }
+        }
+        notifyListeners(Constants.MY_CHECKOUTS, checkout.getID());
+    }
+
+    /**
+     * Saves a checkout to /mycheckouts/ in memory right away, but writes it to the disk in the background a moment later.
+     * Any other saves of the checkout until then are coalesced into the same write, this is meant for edits that come in
+     * rapid succession, like tapping a counter.
+     *
+     * Nothing is encoded on the calling thread, the checkout is encoded by the writer thread when the write happens.
+     * If it's saved again while it's being encoded, that encoding is discarded and the checkout is written with the next write.
+     * Make sure to call {@link #flush()} at points where the checkout must be on the disk (like when the activity is paused),
+     * the checkout must not be edited while flush() runs.
+     * @param checkout the checkout to save
+     */
+    public synchronized void saveMyCheckoutLater(RCheckout checkout) {
+        loadMyCheckouts();
+        loadCheckouts(); // needed by separate()
+        RCheckout saved = separate(checkout, checkouts);
+        myCheckouts.put(saved);
+
+        if(pendingWrites.put(saved.getID(), saved) != null) coalescedEncodes++;
+        if(scheduledWrite == null) scheduledWrite = writer.schedule(writePending, WRITE_BEHIND_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes any checkouts saved with {@link #saveMyCheckoutLater(RCheckout)} to the disk, and waits until they're written
+     * @return true if every edit is on the disk, false if a write failed (the failed checkouts are written again on the next flush)
+     */
+    public boolean flush() {
+        synchronized(this) {
+            if(pendingWrites.isEmpty()) return true;
+        }
+        try {
+            return writer.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return writePending();
+                }
+            }).get();
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to flush pending checkout writes. err msg: "+e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a checkout from /mycheckouts/
+     * @param ID the ID of the checkout to delete
+     */
+    public void deleteMyCheckout(int ID) {
+        synchronized(diskLock) {
+            synchronized(this) {
+                loadMyCheckouts();
+                myCheckouts.remove(ID);
+                pendingWrites.remove(ID);
+                writing.remove(ID);
+                io.deleteMyCheckout(ID);
+            }
+        }
+        notifyListeners(Constants.MY_CHECKOUTS, ID);
+    }
+
+    /**
+     * Reads a copy of a checkout from the disk. Copying the cached instance instead isn't safe on a background thread,
+     * it might be in the middle of being edited. The copy can be modified and saved back with {@link #replace(int, RCheckout, RCheckout)}.
+     * @param mode either Constants.CHECKOUTS or Constants.MY_CHECKOUTS
+     * @param ID the ID of the checkout
+     * @return the copy, or null if it couldn't be read, or it has edits that haven't been written to the disk yet
+     */
+    public RCheckout loadCopy(int mode, int ID) {
+        if(mode == Constants.CHECKOUTS) return io.loadCheckout(ID); // the checkout store is synchronized itself
+
+        // held so the writer thread can't be in the middle of writing the checkout
+        synchronized(diskLock) {
+            synchronized(this) {
+                if(pendingWrites.containsKey(ID) || writing.containsKey(ID)) return null;
+            }
+            return io.loadMyCheckout(ID);
+        }
+    }
+
+    /**
+     * Replaces a checkout with a copy of it that was modified in the background (for example, re-verified against a new form).
+     * The copy is only saved if the checkout wasn't changed, replaced, or edited in the meantime, otherwise, it's discarded.
+     * @param mode either Constants.CHECKOUTS or Constants.MY_CHECKOUTS
+     * @param original the cached checkout the copy was made from
+     * @param copy the modified copy
+     * @return true if the copy was saved
+     */
+    public boolean replace(int mode, RCheckout original, RCheckout copy) {
+        synchronized(diskLock) {
+            synchronized(this) {
+                CheckoutIndex list;
+                if(mode == Constants.CHECKOUTS) {
+                    loadCheckouts();
+                    list = checkouts;
+                } else {
+                    loadMyCheckouts();
+                    list = myCheckouts;
+                }
+                if(list.get(original.getID()) != original || pendingWrites.containsKey(original.getID()) || writing.containsKey(original.getID())
+                        || original.getTeam().getLastEdit() != copy.getTeam().getLastEdit()) return false;
+
+                list.put(copy);
+                if(mode == Constants.CHECKOUTS) matchIndex = null;
+                if(mode == Constants.CHECKOUTS) io.saveCheckout(copy);
+                else io.saveMyCheckout(copy);
+            }
+        }
+        notifyListeners(mode, copy.getID());
+        return true;
+    }
+
+    /**
+     * Checks if any checkout still references a picture. Identical pictures are only stored once,
+     * so a picture removed from one gallery might still be in use by another.
+     * @param pictureID the ID of the picture
+     * @return true if a checkout in /checkouts/ or /mycheckouts/ references the picture
+     * @see IO#deletePicture(int)
+     */
+    public synchronized boolean isPictureReferenced(int pictureID) {
+        loadCheckouts();
+        loadMyCheckouts();
+        return references(checkouts.values(), pictureID) || references(myCheckouts.values(), pictureID);
+    }
+
+    /**
+     * Deletes all checkouts, presumably because the event has been flagged as in-active
+     * @see IO#clearCheckouts()
+     */
+    public void clear() {
+        synchronized(diskLock) {
+            synchronized(this) {
+                pendingWrites.clear();
+                writing.clear();
+                io.clearCheckouts();
+                checkouts = new CheckoutIndex(null);
+                myCheckouts = new CheckoutIndex(null);
+                matchIndex = null;
+            }
+        }
+        for(CheckoutRepositoryListener listener : listeners) {
+            listener.checkoutsChanged(Constants.CHECKOUTS, new ArrayList<Integer>());
+            listener.checkoutsChanged(Constants.MY_CHECKOUTS, new ArrayList<Integer>());
+        }
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private final Runnable writePending = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    /**
+     * Writes the checkouts that are waiting to be written, runs on the writer thread. The checkouts are taken out of
+     * pendingWrites under the repository monitor, but encoded and written outside of it, so the UI isn't blocked by the disk.
+     * @return true if every checkout was written
+     */
+    private boolean writePending() {
+        LinkedHashMap<Integer, RCheckout> pending;
+        int coalesced;
+        synchronized(this) {
+            if(scheduledWrite != null) scheduledWrite.cancel(false);
+            scheduledWrite = null;
+            if(pendingWrites.isEmpty()) return true;
+
+            pending = new LinkedHashMap<>(pendingWrites);
+            writing.putAll(pendingWrites);
+            pendingWrites.clear();
+            coalesced = coalescedEncodes;
+            coalescedEncodes = 0;
+        }
+
+        ArrayList<Integer> IDs = new ArrayList<>();
+        int failed = 0;
+        for(Map.Entry<Integer, RCheckout> entry : pending.entrySet()) {
+            int ID = entry.getKey();
+            RCheckout checkout = entry.getValue();
+
+            byte[] bytes;
+            try {
+                bytes = CheckoutCodec.encode(checkout);
+            } catch(Exception e) {
+                // most likely the checkout was being edited, it's saved again after the edit
+                Log.d("RSBS", "Failed to encode checkout "+ID+" for writing. err msg: "+e.getMessage());
+                bytes = null;
+            }
+
+            synchronized(diskLock) {
+                synchronized(this) {
+                    // saved or deleted since it was taken out of pendingWrites
+                    if(writing.get(ID) != checkout) continue;
+                    // saved again while it was being encoded, the encoding might be of a half finished edit, the next write replaces it
+                    if(pendingWrites.containsKey(ID)) {
+                        writing.remove(ID);
+                        coalescedEncodes++;
+                        continue;
+                    }
+                }
+                boolean written = bytes != null && io.saveMyCheckout(ID, bytes);
+                synchronized(this) {
+                    if(writing.get(ID) == checkout) writing.remove(ID);
+                    if(written) IDs.add(ID);
+                    else {
+                        failed++;
+                        // put back to be written again, unless it's been edited or deleted since
+                        if(!pendingWrites.containsKey(ID) && myCheckouts != null && myCheckouts.get(ID) == checkout) pendingWrites.put(ID, checkout);
+                    }
+                }
+            }
+        }
+
+        Log.d("RSBS", "Wrote "+IDs.size()+" checkouts in the background, "+coalesced+" encodes were coalesced, "+failed+" failed.");
+        if(!IDs.isEmpty()) for(CheckoutRepositoryListener listener : listeners) listener.checkoutsChanged(Constants.MY_CHECKOUTS, IDs);
+        return failed == 0;
+    }
+
+    private void loadCheckouts() {
+        if(checkouts != null) return;
+        checkouts = new CheckoutIndex(io.loadCheckouts());
+        Log.d("RSBS", "Loaded "+checkouts.size()+" checkouts into the checkout repository.");
+    }
+
+    private void loadMyCheckouts() {
+        if(myCheckouts != null) return;
+        myCheckouts = new CheckoutIndex(io.loadMyCheckouts());
+        Log.d("RSBS", "Loaded "+myCheckouts.size()+" checkouts into the my checkouts repository.");
+    }
+
+    /**
+     * The checkouts and my checkouts lists must never share a checkout instance (for example, AutoCheckoutTask saves the same
+     * instance to both). Otherwise, editing a checkout in TeamViewer would also edit the cached /checkouts/ copy without saving it.
+     * @param checkout the checkout that's being saved
+     * @param other the other list
+     * @return the checkout, or a copy of it if the other list already contains the same instance
+     */
+    private RCheckout separate(RCheckout checkout, CheckoutIndex other) {
+        if(other.get(checkout.getID()) != checkout) return checkout;
+        try {
+            return CheckoutCodec.copy(checkout);
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to copy checkout "+checkout.getID()+", err msg: "+e.getMessage());
+            return checkout;
+        }
+    }
+
+    private static boolean references(Collection<RCheckout> checkouts, int pictureID) {
+        for(RCheckout checkout : checkouts) {
+            if(checkout.getTeam() == null || checkout.getTeam().getTabs() == null) continue;
+            for(RTab tab : checkout.getTeam().getTabs()) {
+                if(tab.getMetrics() == null) continue;
+                for(RMetric metric : tab.getMetrics()) {
+                    if(metric instanceof RGallery && ((RGallery) metric).getPictureIDs() != null && ((RGallery) metric).getPictureIDs().contains(pictureID)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void notifyListeners(int mode, int ID) {
+        if(listeners.isEmpty()) return;
+        ArrayList<Integer> IDs = new ArrayList<>(Collections.singletonList(ID));
+        for(CheckoutRepositoryListener listener : listeners) listener.checkoutsChanged(mode, IDs);
+    }
+}
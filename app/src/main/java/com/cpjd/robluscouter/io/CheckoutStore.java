@@ -0,0 +1,460 @@
+package com.cpjd.robluscouter.io;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.BufferedInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * CheckoutStore keeps every checkout of a directory inside one append-only data file, plus a compact
+ * ID -> offset index, instead of one .ser file per checkout.
+ *
+ * Layout:
+ * -/checkouts.dat: a sequence of records in the format [int ID][int length][byte[length] payload].
+ * A length of -1 is a tombstone, it marks the checkout with that ID as deleted.
+ * -/checkouts.idx: a sequence of [int ID][long offset][int length] entries, one for every record appended to the
+ * data file. The index is only a cache of the data file, if it's missing or behind, it's rebuilt by scanning the data file.
+ *
+ * Saving a checkout appends a new record and supersedes the old one. Superseded records are "dead bytes", once there are
+ * more dead bytes than live bytes, the store is compacted in the background by re-writing only the live records.
+ *
+ * Stores are shared by all IO instances (the UI and the background service use separate IO instances), so
+ * always use {@link #getInstance(File)}.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class CheckoutStore {
+
+    private static final String DATA_FILE = "checkouts.dat";
+    private static final String INDEX_FILE = "checkouts.idx";
+
+    /**
+     * Don't bother compacting until at least this many bytes are dead
+     */
+    private static final long COMPACTION_THRESHOLD = 256 * 1024;
+
+    /**
+     * Size of the [int ID][int length] header in front of every record in the data file
+     */
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * All the stores that have been opened, keyed by directory path
+     */
+    private static final HashMap<String, CheckoutStore> stores = new HashMap<>();
+
+    /**
+     * Compaction is run on this thread so that saveCheckout() calls stay quick
+     */
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor();
+
+    private final File dataFile;
+    private final File indexFile;
+
+    /**
+     * In memory copy of the index, ID -> live record
+     */
+    private final HashMap<Integer, Entry> index = new HashMap<>();
+
+    /**
+     * Length of the data file that is covered by the index
+     */
+    private long end;
+    private long liveBytes;
+    private long deadBytes;
+
+    private boolean compactionScheduled;
+
+    /**
+     * Location of one live record within the data file
+     */
+    private static class Entry {
+        private final long offset;
+        private final int length;
+
+        private Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private CheckoutStore(File directory) {
+        if(!directory.exists()) if(directory.mkdirs()) Log.d("RSBS", "Successfully created checkout store directory.");
+        this.dataFile = new File(directory, DATA_FILE);
+        this.indexFile = new File(directory, INDEX_FILE);
+        open();
+    }
+
+    /**
+     * Gets the store that manages the specified directory
+     * @param directory the directory to store checkouts in
+     * @return the shared store instance for the directory
+     */
+    public static CheckoutStore getInstance(File directory) {
+        synchronized(stores) {
+            CheckoutStore store = stores.get(directory.getAbsolutePath());
+            if(store == null) {
+                store = new CheckoutStore(directory);
+                stores.put(directory.getAbsolutePath(), store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Checks if the file is managed by a CheckoutStore, this is used for telling store files apart from
+     * old one-file-per-checkout .ser files
+     * @param file the file to check
+     * @return true if the file belongs to a store
+     */
+    public static boolean isStoreFile(File file) {
+        return file.getName().equals(DATA_FILE) || file.getName().equals(INDEX_FILE) || file.getName().endsWith(".tmp");
+    }
+
+    /**
+     * Appends a new version of a checkout to the store
+     * @param ID the ID of the checkout
+     * @param payload the serialized checkout
+     * @return true if the checkout was written
+     */
+    public synchronized boolean put(int ID, byte[] payload) {
+        boolean written = false;
+        try {
+            append(ID, payload);
+            written = true;
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to write checkout "+ID+" to the checkout store. err msg: "+e.getMessage());
+        }
+        scheduleCompactionIfNeeded();
+        return written;
+    }
+
+    /**
+     * Reads the latest version of a checkout
+     * @param ID the ID of the checkout to read
+     * @return the serialized checkout, null if it isn't in the store
+     */
+    public synchronized byte[] get(int ID) {
+        Entry entry = index.get(ID);
+        if(entry == null) return null;
+
+        try(RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            byte[] payload = new byte[entry.length];
+            file.seek(entry.offset + RECORD_HEADER);
+            file.readFully(payload);
+            return payload;
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to read checkout "+ID+" from the checkout store. err msg: "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads every live checkout with one sequential pass over the data file
+     * @return map of checkout ID -> serialized checkout, in the order they're stored on disk, or null if
+     * any of the checkouts couldn't be read
+     */
+    public synchronized LinkedHashMap<Integer, byte[]> getAll() {
+        LinkedHashMap<Integer, byte[]> result = new LinkedHashMap<>();
+        if(index.isEmpty()) return result;
+
+        ArrayList<Integer> IDs = new ArrayList<>(index.keySet());
+        Collections.sort(IDs, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(index.get(o1).offset, index.get(o2).offset);
+            }
+        });
+
+        try(RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            for(int ID : IDs) {
+                Entry entry = index.get(ID);
+                byte[] payload = new byte[entry.length];
+                file.seek(entry.offset + RECORD_HEADER);
+                file.readFully(payload);
+                result.put(ID, payload);
+            }
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to read the checkout store. err msg: "+e.getMessage());
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * @return the IDs of the live checkouts in the store
+     */
+    public synchronized ArrayList<Integer> getIDs() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * Removes a checkout from the store
+     * @param ID the ID of the checkout to remove
+     */
+    public synchronized void remove(int ID) {
+        if(!index.containsKey(ID)) return;
+        try {
+            append(ID, null);
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to remove checkout "+ID+" from the checkout store. err msg: "+e.getMessage());
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * @param ID the ID of the checkout
+     * @return true if the store contains a checkout with the ID
+     */
+    public synchronized boolean contains(int ID) {
+        return index.containsKey(ID);
+    }
+
+    /**
+     * @return the number of live checkouts in the store
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Deletes all checkouts from the store
+     */
+    public synchronized void clear() {
+        if(dataFile.exists() && !dataFile.delete()) Log.d("RSBS", "Failed to delete "+dataFile.getAbsolutePath());
+        if(indexFile.exists() && !indexFile.delete()) Log.d("RSBS", "Failed to delete "+indexFile.getAbsolutePath());
+        index.clear();
+        end = 0;
+        liveBytes = 0;
+        deadBytes = 0;
+    }
+
+    /**
+     * Re-writes the data file with only the live records, and re-writes the index to match
+     */
+    public synchronized void compact() {
+        long start = System.currentTimeMillis();
+        File tempData = new File(dataFile.getParentFile(), DATA_FILE+".tmp");
+        File tempIndex = new File(indexFile.getParentFile(), INDEX_FILE+".tmp");
+
+        // Compacting with only some of the records would lose the rest for good
+        LinkedHashMap<Integer, byte[]> live = getAll();
+        if(live == null) {
+            Log.d("RSBS", "Skipped compacting the checkout store, not every checkout could be read.");
+            return;
+        }
+        HashMap<Integer, Entry> newIndex = new HashMap<>();
+        long offset = 0;
+
+        try {
+            try(FileOutputStream fos = new FileOutputStream(tempData); DataOutputStream data = new DataOutputStream(new BufferedOutputStream(fos));
+                DataOutputStream idx = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempIndex)))) {
+                for(Integer ID : live.keySet()) {
+                    byte[] payload = live.get(ID);
+                    data.writeInt(ID);
+                    data.writeInt(payload.length);
+                    data.write(payload);
+                    idx.writeInt(ID);
+                    idx.writeLong(offset);
+                    idx.writeInt(payload.length);
+                    newIndex.put(ID, new Entry(offset, payload.length));
+                    offset += RECORD_HEADER + payload.length;
+                }
+                data.flush();
+                fos.getFD().sync();
+            }
+
+            if(!tempData.renameTo(dataFile) || !tempIndex.renameTo(indexFile)) throw new IOException("Failed to swap in compacted store files.");
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to compact the checkout store. err msg: "+e.getMessage());
+            if(tempData.exists() && !tempData.delete()) Log.d("RSBS", "Failed to delete "+tempData.getAbsolutePath());
+            if(tempIndex.exists() && !tempIndex.delete()) Log.d("RSBS", "Failed to delete "+tempIndex.getAbsolutePath());
+            // The index file might be out of sync with the data file now, rebuild from the data file
+            indexFile.delete();
+            open();
+            return;
+        }
+
+        index.clear();
+        index.putAll(newIndex);
+        end = offset;
+        liveBytes = offset;
+        deadBytes = 0;
+
+        Log.d("RSBS", "Compacted checkout store to "+live.size()+" checkouts in "+(System.currentTimeMillis() - start)+"ms.");
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Appends a record to the data file and index file, and updates the in memory index.
+     *
+     * The record is written at the end of the data file that's covered by the index, not wherever the file happens to end,
+     * so a record that was only partially written is overwritten (and chopped off) instead of shifting every later record.
+     * Once the record is on the disk, it's applied even if the index can't be written, the index is recovered from the data file.
+     * @param ID the ID of the checkout
+     * @param payload the serialized checkout, or null to write a tombstone
+     * @throws IOException if the record couldn't be written to the data file, nothing was changed
+     */
+    private void append(int ID, byte[] payload) throws IOException {
+        int length = payload == null ? -1 : payload.length;
+        long offset = end;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(RECORD_HEADER + Math.max(length, 0));
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeInt(ID);
+        record.writeInt(length);
+        if(payload != null) record.write(payload);
+
+        // The data file goes first, the index can always be recovered from it
+        try(RandomAccessFile file = new RandomAccessFile(dataFile, "rw")) {
+            try {
+                file.seek(offset);
+                file.write(buffer.toByteArray());
+                if(file.length() > offset + buffer.size()) file.setLength(offset + buffer.size());
+                file.getFD().sync();
+            } catch(IOException e) {
+                try {
+                    file.setLength(offset);
+                } catch(IOException e2) {
+                    Log.d("RSBS", "Failed to chop off a partially written checkout record. err msg: "+e2.getMessage());
+                }
+                throw e;
+            }
+        }
+        apply(ID, offset, length);
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)))) {
+            out.writeInt(ID);
+            out.writeLong(offset);
+            out.writeInt(length);
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to write the checkout store index, rebuilding it. err msg: "+e.getMessage());
+            rewriteIndex();
+        }
+    }
+
+    /**
+     * Applies a record to the in memory index
+     */
+    private void apply(int ID, long offset, int length) {
+        Entry old = index.remove(ID);
+        if(old != null) {
+            liveBytes -= RECORD_HEADER + old.length;
+            deadBytes += RECORD_HEADER + old.length;
+        }
+
+        if(length >= 0) {
+            index.put(ID, new Entry(offset, length));
+            liveBytes += RECORD_HEADER + length;
+            end = offset + RECORD_HEADER + length;
+        } else {
+            deadBytes += RECORD_HEADER;
+            end = offset + RECORD_HEADER;
+        }
+    }
+
+    /**
+     * Loads the index file into memory, then scans any records in the data file that the index doesn't cover
+     * (for example, if the app was killed between the data and index writes)
+     */
+    private void open() {
+        index.clear();
+        end = 0;
+        liveBytes = 0;
+        deadBytes = 0;
+
+        if(indexFile.exists()) {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                while(true) {
+                    int ID = in.readInt();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if(offset != end || offset + RECORD_HEADER + Math.max(length, 0) > dataFile.length()) break; // index is corrupt past this point
+                    apply(ID, offset, length);
+                }
+            } catch(EOFException e) {
+                // end of index
+            } catch(IOException e) {
+                Log.d("RSBS", "Failed to read checkout store index, rebuilding it. err msg: "+e.getMessage());
+            }
+        }
+
+        if(!dataFile.exists() || dataFile.length() <= end) return;
+
+        long indexed = end;
+        try(RandomAccessFile file = new RandomAccessFile(dataFile, "rw")) {
+            while(end + RECORD_HEADER <= file.length()) {
+                file.seek(end);
+                int ID = file.readInt();
+                int length = file.readInt();
+                if(end + RECORD_HEADER + Math.max(length, 0) > file.length()) break; // partially written record
+                apply(ID, end, length);
+            }
+            // Chop off a partially written record
+            if(file.length() > end) file.setLength(end);
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to scan checkout store. err msg: "+e.getMessage());
+        }
+
+        if(end != indexed) rewriteIndex();
+    }
+
+    /**
+     * Re-writes the index file by walking every record header in the data file, this only happens after a crash
+     */
+    private void rewriteIndex() {
+        try(RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, false)))) {
+            long offset = 0;
+            while(offset + RECORD_HEADER <= end) {
+                file.seek(offset);
+                int ID = file.readInt();
+                int length = file.readInt();
+                out.writeInt(ID);
+                out.writeLong(offset);
+                out.writeInt(length);
+                offset += RECORD_HEADER + Math.max(length, 0);
+            }
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to rebuild checkout store index. err msg: "+e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules a compaction on the background thread if enough of the data file is dead
+     */
+    private void scheduleCompactionIfNeeded() {
+        if(compactionScheduled || deadBytes < COMPACTION_THRESHOLD || deadBytes < liveBytes) return;
+
+        compactionScheduled = true;
+        compactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(CheckoutStore.this) {
+                    compactionScheduled = false;
+                    compact();
+                }
+            }
+        });
+    }
+}
@@ -1,8 +1,6 @@
 package com.cpjd.robluscouter.io;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.Log;
 
 import com.cpjd.robluscouter.models.RCheckout;
@@ -11,26 +9,30 @@ import com.cpjd.robluscouter.models.RForm;
 import com.cpjd.robluscouter.models.RSettings;
 import com.cpjd.robluscouter.models.RUI;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 /**
  * IO manages interactions with the file system, mainly by serializing/de-serializing models
  *
  * Directories managed by IO:
- * -/PREFIX/checkouts: master checkouts list that is synced with the server
+ * -/PREFIX/checkouts: master checkouts list that is synced with the server, stored in a single file by {@link CheckoutStore}
  * -/PREFIX/pending: locally edited checkouts waiting to upload
  * -/PREFIX/settings.ser
  * -/PREFIX/cloudSettings.ser
  * -/PREFIX/mycheckouts
  * -/PREFIX/images
  *
- * @version 4
+ * @version 5
  * @since 1.0.0
  * @author Will Davies
  *
@@ -65,6 +67,7 @@ public class IO {
         if(!checkouts.exists()) {
             if(checkouts.mkdir()) Log.d("RSBS", "/checkouts/ dir successfully created.");
         }
+        new IO(context).migrateCheckouts();
 
         // Create mycheckouts directory
         File mycheckouts = new File(context.getFilesDir(), PREFIX+File.separator+"mycheckouts");
@@ -158,9 +161,11 @@ public class IO {
     /**
      * Save a checkout object instance to internal storage
      * @param checkout the checkout object instance
+     * @return true if the checkout was saved
      */
-    public void saveCheckout(RCheckout checkout) {
-        serializeObject(checkout, PREFIX+File.separator+"checkouts"+File.separator+checkout.getID()+".ser");
+    public boolean saveCheckout(RCheckout checkout) {
+        byte[] payload = encodeCheckout(checkout);
+        return payload != null && getCheckoutStore().put(checkout.getID(), payload);
     }
 
     /**
@@ -170,8 +175,12 @@ public class IO {
      * @param id the long id of the checkout to load.
      */
     public RCheckout loadCheckout(int id) {
-        RCheckout checkout = (RCheckout) deserializeObject(PREFIX+File.separator+"checkouts"+File.separator+id+".ser");
-        if(checkout != null) checkout.setID(id);
+        byte[] payload = getCheckoutStore().get(id);
+        RCheckout checkout = decodeCheckout(payload);
+        if(checkout != null) {
+            checkout.setID(id);
+            if(CheckoutCodec.isLegacy(payload)) saveCheckout(checkout);
+        }
         return checkout;
     }
 
@@ -180,12 +189,61 @@ public class IO {
      * @return a list of all available checkouts from internal storage, may be null
      */
     public ArrayList<RCheckout> loadCheckouts() {
-        File[] files = getChildFiles(PREFIX+File.separator+"checkouts"+File.separator);
-        if(files == null || files.length == 0) return null;
-        ArrayList<RCheckout> checkouts = new ArrayList<>();
-        for(File file : files) checkouts.add(loadCheckout(Integer.parseInt(file.getName().replace(".ser", ""))));
+        CheckoutStore store = getCheckoutStore();
+        LinkedHashMap<Integer, byte[]> payloads = store.getAll();
+        if(payloads == null) {
+            // the sequential read failed, read whichever checkouts can still be read one at a time
+            payloads = new LinkedHashMap<>();
+            for(int id : store.getIDs()) {
+                byte[] payload = store.get(id);
+                if(payload != null) payloads.put(id, payload);
+            }
+        }
+        if(payloads.size() == 0) return null;
+        ArrayList<RCheckout> checkouts = new ArrayList<>(payloads.size());
+        for(Integer id : payloads.keySet()) {
+            RCheckout checkout = decodeCheckout(payloads.get(id));
+            if(checkout == null) continue;
+            checkout.setID(id);
+            if(CheckoutCodec.isLegacy(payloads.get(id))) saveCheckout(checkout);
+            checkouts.add(checkout);
+        }
         return checkouts;
     }
+
+    /**
+     * Gets the store that holds /checkouts/
+     * @return the shared checkout store
+     */
+    private CheckoutStore getCheckoutStore() {
+        return CheckoutStore.getInstance(new File(context.getFilesDir(), PREFIX+File.separator+"checkouts"));
+    }
+
+    /**
+     * Moves checkouts saved by older versions (one .ser file per checkout) into the checkout store
+     */
+    private void migrateCheckouts() {
+        File[] files = getChildFiles(PREFIX+File.separator+"checkouts"+File.separator);
+        if(files == null) return;
+        int migrated = 0;
+        for(File file : files) {
+            if(CheckoutStore.isStoreFile(file) || !file.getName().endsWith(".ser")) continue;
+            RCheckout checkout = loadCheckoutFile(PREFIX+File.separator+"checkouts"+File.separator+file.getName());
+            if(checkout == null) {
+                // kept, but renamed so it isn't migrated again
+                Log.d("RSBS", "Failed to migrate checkout file "+file.getName()+", it couldn't be read.");
+                if(!file.renameTo(new File(file.getParentFile(), file.getName()+".bad"))) Log.d("RSBS", "Failed to rename "+file.getName());
+                continue;
+            }
+            checkout.setID(Integer.parseInt(file.getName().replace(".ser", "")));
+            // only deleted once it's in the store, otherwise it's retried next time
+            if(saveCheckout(checkout)) {
+                delete(file);
+                migrated++;
+            }
+        }
+        if(migrated > 0) Log.d("RSBS", "Migrated "+migrated+" checkouts into the checkout store.");
+    }
     // End of /checkouts/ methods
 
     /*
@@ -194,9 +252,20 @@ public class IO {
     /**
      * Save a checkout object instance to internal storage
      * @param checkout the checkout object instance
+     * @return true if the checkout was saved
+     */
+    public boolean saveMyCheckout(RCheckout checkout) {
+        return saveCheckoutFile(checkout, PREFIX+File.separator+"mycheckouts"+File.separator+checkout.getID()+".ser");
+    }
+
+    /**
+     * Save an already encoded checkout to internal storage
+     * @param id the ID of the checkout
+     * @param bytes the checkout, encoded with {@link CheckoutCodec}
+     * @return true if the checkout was saved
      */
-    public void saveMyCheckout(RCheckout checkout) {
-        serializeObject(checkout, PREFIX+File.separator+"mycheckouts"+File.separator+checkout.getID()+".ser");
+    public boolean saveMyCheckout(int id, byte[] bytes) {
+        return writeCheckoutFile(bytes, PREFIX+File.separator+"mycheckouts"+File.separator+id+".ser");
     }
 
     /**
@@ -206,7 +275,7 @@ public class IO {
      * @param id the long id of the checkout to load.
      */
     public RCheckout loadMyCheckout(int id) {
-        RCheckout checkout = (RCheckout) deserializeObject(PREFIX+File.separator+"mycheckouts"+File.separator+id+".ser");
+        RCheckout checkout = loadCheckoutFile(PREFIX+File.separator+"mycheckouts"+File.separator+id+".ser");
         if(checkout != null) checkout.setID(id);
         return checkout;
     }
@@ -245,7 +314,7 @@ public class IO {
      * @param checkout the checkout object instance
      */
     public void savePendingCheckout(RCheckout checkout) {
-        serializeObject(checkout, PREFIX+File.separator+"pending"+File.separator+checkout.getID()+".ser");
+        saveCheckoutFile(checkout, PREFIX+File.separator+"pending"+File.separator+checkout.getID()+".ser");
     }
 
     /**
@@ -255,7 +324,7 @@ public class IO {
      * @param id the long id of the checkout to load.
      */
     private RCheckout loadPendingCheckout(int id) {
-        RCheckout checkout = (RCheckout) deserializeObject(PREFIX+File.separator+"pending"+File.separator+id+".ser");
+        RCheckout checkout = loadCheckoutFile(PREFIX+File.separator+"pending"+File.separator+id+".ser");
         if(checkout != null) checkout.setID(id);
         return checkout;
     }
@@ -288,12 +357,7 @@ public class IO {
      * Deletes all checkouts and pending checkouts, presumably because the event has been flagged as in-active by the user
      */
     public void clearCheckouts() {
-        File checkoutsDir = new File(context.getFilesDir(), PREFIX +File.separator+"checkouts"+File.separator);
-        if(checkoutsDir.listFiles() != null) {
-            for(File f : checkoutsDir.listFiles()) {
-                delete(f);
-            }
-        }
+        getCheckoutStore().clear();
 
         File mycheckoutsDir = new File(context.getFilesDir(), PREFIX+File.separator+"mycheckouts"+File.separator);
         if(mycheckoutsDir.listFiles() != null) {
@@ -312,6 +376,8 @@ public class IO {
         RSyncSettings syncSettings = loadCloudSettings();
         syncSettings.setLastBluetoothCheckoutSync(0);
         syncSettings.getCheckoutSyncIDs().clear();
+        syncSettings.getUploadedFingerprints().clear();
+        syncSettings.getUploadedImageHashes().clear();
         syncSettings.setEventName("");
         syncSettings.setTeamSyncID(0);
         saveCloudSettings(syncSettings);
@@ -325,63 +391,72 @@ public class IO {
      */
 
     /**
-     * Saves a pre-existing image to the file system with a new ID
+     * Saves a pre-existing image to the file system. If the same image is already saved, it won't be saved again
+     * and the existing image's ID is returned instead.
      * @param image the image to write
-     * @return the ID of the new image, -1 if an error occurred
+     * @return the ID of the image, -1 if an error occurred
+     * @see ImageStore
      */
     public int savePicture(byte[] image) {
-        try {
-            int ID = getNewPictureID();
-            File file = new File(context.getFilesDir(), PREFIX+File.separator+"images"+File.separator+ID+".jpg");
-            if(!file.getParentFile().exists()) if(file.getParentFile().mkdirs()) Log.d("RSBS", "Successfully created /images directory.");
-            FileOutputStream fos = new FileOutputStream(file.getPath());
-            fos.write(image);
-            fos.close();
-            return ID;
-        } catch(Exception e) {
-            Log.d("RSBS", "Failed to save existing picture.");
-            return -1;
-        }
+        return getImageStore().save(image);
     }
 
     /**
      * Deletes a picture from the local disk. Keep in mind, this picture's ID should also be removed from the associated RGallery
-     * metric.
+     * metric. Identical pictures are only stored once, so make sure no other RGallery references this ID.
      * @param pictureID the ID of the picture to be deleted
+     * @see CheckoutRepository#isPictureReferenced(int)
      */
     public void deletePicture(int pictureID) {
-        delete(new File(context.getFilesDir(), PREFIX+ File.separator+"images"+File.separator+pictureID+".jpg"));
+        getImageStore().delete(pictureID);
+    }
+
+    /**
+     * Gets the content hash of a picture, identical pictures have identical hashes
+     * @param pictureID the ID of the picture
+     * @return the hash of the picture, null if it doesn't exist
+     */
+    public String getPictureHash(int pictureID) {
+        return getImageStore().getHash(pictureID);
     }
 
     /**
      * Loads a picture from the local disk into memory. This byte[] array should be inserted into an RGallery before launching the image gallery viewer.
+     * The picture's file is read as-is, so the bytes always match {@link #getPictureHash(int)}
      * @param pictureID the pictureID that contains the picture
-     * @return a byte[] representing the picture
+     * @return a byte[] representing the picture, null if it couldn't be loaded
      */
     public byte[] loadPicture(int pictureID) {
-        File image = new File(context.getFilesDir(), PREFIX+File.separator+"images"+File.separator+pictureID+".jpg");
-        if(!image.getParentFile().exists()) if(image.getParentFile().mkdirs()) Log.d("RSBS", "Successfully created /images directory.");
-        Bitmap bitmap = BitmapFactory.decodeFile(image.getPath());
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-        return stream.toByteArray();
-    }
-
-    /**
-     * Gets a new available picture ID
-     * @return the ID of a new picture.
-     */
-    private int getNewPictureID() {
-        File f = new File(context.getFilesDir(), PREFIX+File.separator+"images"+File.separator);
-        if(!f.exists()) if(f.mkdirs()) Log.d("RSBS", "Successfully created /images directory.");
-        int maxID = 0;
-        File[] children = f.listFiles();
-        if(children == null || children.length == 0) return maxID;
-        for(File file : children) {
-            int newID = Integer.parseInt(file.getName().replaceAll(".jpg", ""));
-            if(newID > maxID) maxID = newID;
-        }
-        return maxID + 1;
+        return getImageStore().load(pictureID);
+    }
+
+    /**
+     * Writes a picture from the local disk to a stream, without loading it into memory
+     * @param pictureID the pictureID that contains the picture
+     * @param out the stream to write the picture to, it won't be closed
+     * @return the number of bytes written
+     * @throws IOException if the picture couldn't be read or the stream couldn't be written to
+     */
+    public long writePicture(int pictureID, OutputStream out) throws IOException {
+        return getImageStore().transfer(pictureID, out);
+    }
+
+    /**
+     * Gets the store that holds /images/
+     * @return the shared image store
+     */
+    private ImageStore getImageStore() {
+        return ImageStore.getInstance(new File(context.getFilesDir(), PREFIX+File.separator+"images"));
+    }
+
+    /**
+     * Gets the folder that generated QR codes are cached in, see {@link com.cpjd.robluscouter.sync.qr.QRCache}
+     * @return the folder, it's created if it doesn't exist
+     */
+    public File getQRCacheDir() {
+        File dir = new File(context.getCacheDir(), PREFIX+File.separator+"qr");
+        if(!dir.exists() && !dir.mkdirs()) Log.d("RSBS", "Failed to create the QR cache folder.");
+        return dir;
     }
 
     /**
@@ -448,6 +523,87 @@ public class IO {
         }
     }
 
+    /**
+     * Encodes a checkout with {@link CheckoutCodec}
+     * @param checkout the checkout to encode
+     * @return the encoded checkout, null if an error occurred
+     */
+    private byte[] encodeCheckout(RCheckout checkout) {
+        try {
+            return CheckoutCodec.encode(checkout);
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to encode checkout "+checkout.getID()+", err msg: "+e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Decodes a checkout, checkouts written with Java serialization by older versions are still supported
+     * @param bytes the encoded checkout, may be null
+     * @return the checkout, null if it couldn't be decoded
+     */
+    private RCheckout decodeCheckout(byte[] bytes) {
+        if(bytes == null) return null;
+        try {
+            if(CheckoutCodec.isLegacy(bytes)) {
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                RCheckout checkout = (RCheckout) in.readObject();
+                in.close();
+                return checkout;
+            }
+            return CheckoutCodec.decode(bytes);
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to decode checkout, err msg: "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes an encoded checkout to a file
+     * @param checkout the checkout to write
+     * @param location location to write the file to
+     */
+    private boolean saveCheckoutFile(RCheckout checkout, String location) {
+        byte[] bytes = encodeCheckout(checkout);
+        return bytes != null && writeCheckoutFile(bytes, location);
+    }
+
+    private boolean writeCheckoutFile(byte[] bytes, String location) {
+        try {
+            FileOutputStream fos = new FileOutputStream(new File(context.getFilesDir(), location));
+            fos.write(bytes);
+            fos.close();
+            return true;
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to save checkout at location "+location+" err msg: "+e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads an encoded checkout from a file. If the file was written with Java serialization, it's re-written
+     * with {@link CheckoutCodec}.
+     * @param location location of the file
+     * @return the checkout, null if it couldn't be loaded
+     */
+    private RCheckout loadCheckoutFile(String location) {
+        byte[] bytes;
+        try {
+            File file = new File(context.getFilesDir(), location);
+            bytes = new byte[(int)file.length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            in.readFully(bytes);
+            in.close();
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to load checkout at location "+location+", err msg: "+e.getMessage());
+            return null;
+        }
+        RCheckout checkout = decodeCheckout(bytes);
+        if(checkout != null && CheckoutCodec.isLegacy(bytes) && !location.startsWith(PREFIX+File.separator+"checkouts")) saveCheckoutFile(checkout, location);
+        return checkout;
+    }
+
     /**
      * Recursively delete a folder and all of its contents
      * @param folder the folder to delete
@@ -0,0 +1,417 @@
+package com.cpjd.robluscouter.io;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ImageStore manages /images/ as a content-addressed store. Every picture is identified by a hash of its contents,
+ * so saving a picture that's already stored returns the existing picture's ID instead of writing a duplicate.
+ * Sync rounds receive the same pictures over and over, without this, every round added another copy to the disk.
+ *
+ * Pictures are still stored as [ID].jpg and referenced by their int ID in RGallery, since Roblu Master uses the IDs.
+ * Because a picture is only ever stored once, an ID is a stable handle for the picture's contents.
+ *
+ * The hash of each picture is recorded in /images/hashes.idx as "[ID] [hash]" lines, deleted pictures are
+ * recorded as "[ID] -". Once most of the lines are outdated, the index is re-written with only the current hashes.
+ * Pictures saved by older versions are hashed the first time a picture isn't found by its hash, so they're deduplicated too.
+ *
+ * There is only one store per directory, and it's synchronized, so the Service and the UI can save pictures at
+ * the same time without being handed the same ID.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class ImageStore {
+
+    private static final String INDEX_FILE = "hashes.idx";
+    private static final String COUNTER_FILE = "next.id";
+
+    /**
+     * The index is re-written once it has more than this many lines that aren't current
+     */
+    private static final int INDEX_COMPACTION_THRESHOLD = 256;
+
+    /**
+     * All the stores that have been opened, keyed by directory path
+     */
+    private static final HashMap<String, ImageStore> stores = new HashMap<>();
+
+    private final File directory;
+    private final File indexFile;
+    private final File counterFile;
+
+    /**
+     * The next picture ID to hand out, -1 until it's loaded
+     */
+    private int nextID = -1;
+
+    /**
+     * hash -> picture ID
+     */
+    private final HashMap<String, Integer> IDs = new HashMap<>();
+    /**
+     * picture ID -> hash
+     */
+    private final HashMap<Integer, String> hashes = new HashMap<>();
+    /**
+     * Number of lines in the index file
+     */
+    private int indexLines;
+    /**
+     * True once the pictures saved by older versions have been hashed
+     */
+    private boolean legacyHashed;
+
+    private ImageStore(File directory) {
+        this.directory = directory;
+        this.indexFile = new File(directory, INDEX_FILE);
+        this.counterFile = new File(directory, COUNTER_FILE);
+        if(!directory.exists()) if(directory.mkdirs()) Log.d("RSBS", "Successfully created /images directory.");
+        loadIndex();
+    }
+
+    /**
+     * Gets the store that manages the specified directory
+     * @param directory the images directory
+     * @return the shared store instance for the directory
+     */
+    public static ImageStore getInstance(File directory) {
+        synchronized(stores) {
+            ImageStore store = stores.get(directory.getAbsolutePath());
+            if(store == null) {
+                store = new ImageStore(directory);
+                stores.put(directory.getAbsolutePath(), store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Saves a picture, if the same picture is already stored, it isn't saved again
+     * @param image the picture to save
+     * @return the ID of the picture, -1 if an error occurred
+     */
+    public synchronized int save(byte[] image) {
+        String hash = hash(image);
+        Integer existing = IDs.get(hash);
+        if(existing == null && !legacyHashed) {
+            hashLegacyPictures();
+            existing = IDs.get(hash);
+        }
+        if(existing != null && getFile(existing).exists()) return existing;
+
+        try {
+            int ID = nextID();
+            FileOutputStream fos = new FileOutputStream(getFile(ID));
+            fos.write(image);
+            fos.close();
+            record(ID, hash);
+            return ID;
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to save picture. err msg: "+e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Loads the stored bytes of a picture. The bytes are read straight from the file, the picture is never decoded.
+     * @param ID the ID of the picture
+     * @return the picture's bytes, null if it couldn't be loaded
+     */
+    public byte[] load(int ID) {
+        File file = getFile(ID);
+        if(!file.exists()) return null;
+        try {
+            FileChannel channel = new FileInputStream(file).getChannel();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while(buffer.hasRemaining()) {
+                    if(channel.read(buffer) == -1) break;
+                }
+                return buffer.array();
+            } finally {
+                channel.close();
+            }
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to load picture "+ID+". err msg: "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the stored bytes of a picture to a stream without loading the whole picture into memory
+     * @param ID the ID of the picture
+     * @param out the stream to write the picture to, it won't be closed
+     * @return the number of bytes written
+     * @throws IOException if the picture couldn't be read or the stream couldn't be written to
+     */
+    public long transfer(int ID, OutputStream out) throws IOException {
+        FileChannel channel = new FileInputStream(getFile(ID)).getChannel();
+        try {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            long position = 0;
+            while(position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if(transferred <= 0) break;
+                position += transferred;
+            }
+            return position;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gets the content hash of a picture
+     * @param ID the ID of the picture
+     * @return the hash of the picture, null if it doesn't exist
+     */
+    public synchronized String getHash(int ID) {
+        String hash = hashes.get(ID);
+        if(hash != null) return hash;
+
+        // Saved by an older version, hash it now
+        File file = getFile(ID);
+        if(!file.exists()) return null;
+        hash = hashFile(file);
+        if(hash != null) record(ID, hash);
+        return hash;
+    }
+
+    /**
+     * Deletes a picture
+     * @param ID the ID of the picture to delete
+     */
+    public synchronized void delete(int ID) {
+        File file = getFile(ID);
+        if(file.exists() && file.delete()) Log.d("RSBS", file.getAbsolutePath()+" was deleted successfully.");
+        if(hashes.containsKey(ID)) record(ID, null);
+    }
+
+    /**
+     * Gets the file a picture is stored in
+     * @param ID the ID of the picture
+     * @return the picture's file
+     */
+    public File getFile(int ID) {
+        return new File(directory, ID+".jpg");
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Gets a new available picture ID. The next ID is persisted in /images/next.id, so the directory only has to be listed
+     * if that file is missing or damaged. The counter is saved before the ID is used, so an ID is never handed out twice, even after a crash.
+     * @return the ID of a new picture.
+     */
+    private int nextID() {
+        if(nextID < 0) nextID = loadCounter();
+        while(getFile(nextID).exists()) nextID++;
+        int ID = nextID++;
+        saveCounter(nextID);
+        return ID;
+    }
+
+    private int loadCounter() {
+        if(counterFile.exists()) {
+            try {
+                DataInputStream in = new DataInputStream(new FileInputStream(counterFile));
+                int counter = in.readInt();
+                in.close();
+                if(counter >= 0) return counter;
+            } catch(IOException e) {
+                Log.d("RSBS", "Failed to load the picture ID counter, rebuilding it. err msg: "+e.getMessage());
+            }
+        }
+
+        int maxID = -1;
+        File[] children = directory.listFiles();
+        if(children == null) return 0;
+        for(File file : children) {
+            if(!file.getName().endsWith(".jpg")) continue;
+            try {
+                int newID = Integer.parseInt(file.getName().replaceAll(".jpg", ""));
+                if(newID > maxID) maxID = newID;
+            } catch(NumberFormatException ignored) {}
+        }
+        return maxID + 1;
+    }
+
+    /**
+     * Writes the counter to a temporary file and renames it over the old one, so the counter file is never half written
+     */
+    private void saveCounter(int counter) {
+        File temp = new File(directory, COUNTER_FILE+".tmp");
+        try {
+            FileOutputStream fos = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(counter);
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+            if(!temp.renameTo(counterFile)) Log.d("RSBS", "Failed to save the picture ID counter.");
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to save the picture ID counter. err msg: "+e.getMessage());
+        }
+    }
+
+    /**
+     * Hashes every picture that was saved by an older version and isn't in the index yet, so a picture that's saved
+     * again is recognized as a duplicate. This only happens once, the hashes are written to the index.
+     */
+    private void hashLegacyPictures() {
+        legacyHashed = true;
+        File[] children = directory.listFiles();
+        if(children == null) return;
+
+        long start = System.currentTimeMillis();
+        int hashed = 0;
+        for(File file : children) {
+            if(!file.getName().endsWith(".jpg")) continue;
+            int ID;
+            try {
+                ID = Integer.parseInt(file.getName().replaceAll(".jpg", ""));
+            } catch(NumberFormatException e) {
+                continue;
+            }
+            if(hashes.containsKey(ID)) continue;
+            String hash = hashFile(file);
+            if(hash == null) continue;
+            remember(ID, hash);
+            hashed++;
+        }
+        if(hashed > 0) {
+            rewriteIndex();
+            Log.d("RSBS", "Hashed "+hashed+" pictures saved by an older version in "+(System.currentTimeMillis() - start)+"ms.");
+        }
+    }
+
+    /**
+     * Records a picture's hash in memory and in the index file
+     * @param ID the ID of the picture
+     * @param hash the hash of the picture, or null if the picture was deleted
+     */
+    private void record(int ID, String hash) {
+        remember(ID, hash);
+
+        try {
+            FileWriter writer = new FileWriter(indexFile, true);
+            writer.write(ID+" "+(hash == null ? "-" : hash)+"\n");
+            writer.close();
+            indexLines++;
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to update picture index. err msg: "+e.getMessage());
+        }
+
+        if(indexLines - hashes.size() > INDEX_COMPACTION_THRESHOLD) rewriteIndex();
+    }
+
+    /**
+     * Records a picture's hash in memory only
+     * @param ID the ID of the picture
+     * @param hash the hash of the picture, or null if the picture was deleted
+     */
+    private void remember(int ID, String hash) {
+        String old = hash == null ? hashes.remove(ID) : hashes.put(ID, hash);
+        if(old != null && IDs.get(old) != null && IDs.get(old) == ID) IDs.remove(old);
+        if(hash != null) IDs.put(hash, ID);
+    }
+
+    /**
+     * Writes the current hashes to a temporary file and renames it over the index, dropping deleted and outdated lines
+     */
+    private void rewriteIndex() {
+        File temp = new File(directory, INDEX_FILE+".tmp");
+        try {
+            FileWriter writer = new FileWriter(temp, false);
+            try {
+                for(Map.Entry<Integer, String> entry : hashes.entrySet()) writer.write(entry.getKey()+" "+entry.getValue()+"\n");
+            } finally {
+                writer.close();
+            }
+            if(!temp.renameTo(indexFile)) throw new IOException("Failed to replace the picture index.");
+            indexLines = hashes.size();
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to re-write picture index. err msg: "+e.getMessage());
+            if(temp.exists() && !temp.delete()) Log.d("RSBS", "Failed to delete "+temp.getAbsolutePath());
+        }
+    }
+
+    private void loadIndex() {
+        if(!indexFile.exists()) return;
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+            String line;
+            while((line = reader.readLine()) != null) {
+                indexLines++;
+                String[] tokens = line.split(" ");
+                if(tokens.length != 2) continue;
+                int ID = Integer.parseInt(tokens[0]);
+                String old = hashes.remove(ID);
+                if(old != null) IDs.remove(old);
+                if(tokens[1].equals("-")) continue;
+                hashes.put(ID, tokens[1]);
+                IDs.put(tokens[1], ID);
+            }
+            reader.close();
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to load picture index, pictures will be re-hashed. err msg: "+e.getMessage());
+            hashes.clear();
+            IDs.clear();
+        }
+    }
+
+    private static String hashFile(File file) {
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] buffer = new byte[8192];
+                int read;
+                while((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+                return toHex(digest.digest());
+            } finally {
+                in.close();
+            }
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to hash picture "+file.getName()+". err msg: "+e.getMessage());
+            return null;
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch(Exception e) {
+            // SHA-1 is always available on Android
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
+}
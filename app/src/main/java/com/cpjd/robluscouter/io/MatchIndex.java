@@ -0,0 +1,89 @@
+package com.cpjd.robluscouter.io;
+
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.RTeam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * MatchIndex answers "who is in match X" and "which matches is team Y in" without scanning the checkouts.
+ * It's built from /checkouts/ in one pass, and rebuilt by {@link CheckoutRepository#getMatchIndex()} only after /checkouts/ changes,
+ * so it must be treated as read only.
+ *
+ * Match titles are compared case insensitively, and ignoring extra whitespace.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class MatchIndex {
+
+    private static class Alliances {
+        final ArrayList<RTeam> red = new ArrayList<>();
+        final ArrayList<RTeam> blue = new ArrayList<>();
+    }
+
+    private final HashMap<String, Alliances> matches = new HashMap<>();
+    private final HashMap<Integer, ArrayList<RCheckout>> byTeam = new HashMap<>();
+
+    /**
+     * @param checkouts the checkouts to index, in the order they should be returned in
+     */
+    MatchIndex(ArrayList<RCheckout> checkouts) {
+        if(checkouts == null) return;
+        for(RCheckout checkout : checkouts) {
+            if(checkout.getTeam() == null || checkout.getTeam().getTabs() == null || checkout.getTeam().getTabs().isEmpty()) continue;
+            RTab tab = checkout.getTeam().getTabs().get(0);
+
+            String key = normalize(tab.getTitle());
+            Alliances alliances = matches.get(key);
+            if(alliances == null) {
+                alliances = new Alliances();
+                matches.put(key, alliances);
+            }
+            if(tab.isRedAlliance()) alliances.red.add(checkout.getTeam());
+            else alliances.blue.add(checkout.getTeam());
+
+            ArrayList<RCheckout> list = byTeam.get(checkout.getTeam().getNumber());
+            if(list == null) {
+                list = new ArrayList<>();
+                byTeam.put(checkout.getTeam().getNumber(), list);
+            }
+            list.add(checkout);
+        }
+    }
+
+    /**
+     * @param title the title of the match, for example "Quals 12"
+     * @param red true for the red alliance, false for the blue alliance
+     * @return the teams on the alliance, empty if the match isn't known
+     */
+    public ArrayList<RTeam> getAlliance(String title, boolean red) {
+        Alliances alliances = matches.get(normalize(title));
+        if(alliances == null) return new ArrayList<>();
+        return new ArrayList<>(red ? alliances.red : alliances.blue);
+    }
+
+    /**
+     * @param teamNumber the team number
+     * @return the checkouts of the team, in sorted order, empty if there aren't any
+     */
+    public ArrayList<RCheckout> getCheckouts(int teamNumber) {
+        ArrayList<RCheckout> list = byTeam.get(teamNumber);
+        if(list == null) return new ArrayList<>();
+        return new ArrayList<>(list);
+    }
+
+    private static String normalize(String title) {
+        if(title == null) return "";
+        StringBuilder normalized = new StringBuilder(title.length());
+        for(int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if(!Character.isWhitespace(c)) normalized.append(Character.toLowerCase(c));
+            else if(normalized.length() > 0 && normalized.charAt(normalized.length() - 1) != ' ') normalized.append(' ');
+        }
+        if(normalized.length() > 0 && normalized.charAt(normalized.length() - 1) == ' ') normalized.setLength(normalized.length() - 1);
+        return normalized.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.cpjd.robluscouter.models;
+
+import com.cpjd.robluscouter.models.metrics.CheckboxValues;
+import com.cpjd.robluscouter.models.metrics.RBoolean;
+import com.cpjd.robluscouter.models.metrics.RCalculation;
+import com.cpjd.robluscouter.models.metrics.RCheckbox;
+import com.cpjd.robluscouter.models.metrics.RChooser;
+import com.cpjd.robluscouter.models.metrics.RCounter;
+import com.cpjd.robluscouter.models.metrics.RFieldDiagram;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.models.metrics.RSlider;
+import com.cpjd.robluscouter.models.metrics.RStopwatch;
+import com.cpjd.robluscouter.models.metrics.RTextfield;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * FormDiff brings the metrics of a tab in line with the form, see {@link RTeam#verify(RForm)}.
+ *
+ * The pit and match forms are indexed by metric ID once, then each tab is patched in one pass over its metrics:
+ * -Metrics that aren't on the form anymore are removed
+ * -Metrics whose type changed on the form are removed and replaced with a fresh copy
+ * -Metric titles are renamed to match the form
+ * -Default values are reset on metrics that haven't been modified
+ * -Metrics that are on the form, but not in the tab, are added
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+class FormDiff {
+
+    private final LinkedHashMap<Integer, RMetric> pit;
+    private final LinkedHashMap<Integer, RMetric> match;
+
+    FormDiff(RForm form) {
+        pit = index(form.getPit());
+        match = index(form.getMatch());
+    }
+
+    /**
+     * Identifies the contents of a form, if the fingerprint of a form hasn't changed since a team was verified,
+     * the team doesn't need to be verified again
+     * @param form the form
+     * @return a fingerprint of the form, 0 is never returned
+     */
+    static long fingerprint(RForm form) {
+        long fingerprint = ((long) form.getPit().hashCode() << 32) | (form.getMatch().hashCode() & 0xFFFFFFFFL);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Patches a tab so that it matches the form
+     * @param tab the tab to patch
+     */
+    void apply(RTab tab) {
+        LinkedHashMap<Integer, RMetric> form = tab.getTitle().equalsIgnoreCase("Pit") ? pit : match;
+
+        ArrayList<RMetric> metrics = new ArrayList<>(form.size());
+        HashSet<Integer> present = new HashSet<>();
+        for(RMetric s : tab.getMetrics()) {
+            RMetric e = form.get(s.getID());
+            // removed from the form, or retyped (in which case, it's re-added below)
+            if(e == null || !e.getClass().equals(s.getClass())) continue;
+
+            s.setTitle(e.getTitle());
+            updateDefaults(e, s);
+            metrics.add(s);
+            present.add(s.getID());
+        }
+        for(RMetric e : form.values()) if(!present.contains(e.getID())) metrics.add(e.clone());
+
+        tab.setMetrics(metrics);
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Update default values for non-modified values, also check for some weird scenarios
+     * @param e the form metric
+     * @param s the team metric, of the same type
+     */
+    private static void updateDefaults(RMetric e, RMetric s) {
+        if(e instanceof RBoolean && !s.isModified())
+            ((RBoolean) s).setValue(((RBoolean) e).isValue());
+        else if(e instanceof RFieldDiagram && (((RFieldDiagram) e).getPictureID() != ((RFieldDiagram) s).getPictureID())) {
+            // Remove old picture drawings
+            ((RFieldDiagram) s).setDrawings(null);
+            ((RFieldDiagram) s).setPictureID(((RFieldDiagram) e).getPictureID());
+        }
+        else if(e instanceof RCounter && !s.isModified()) {
+            ((RCounter)s).setValue(((RCounter)e).getValue());
+        }
+        else if(e instanceof RCalculation) {
+            ((RCalculation) s).setCalculation(((RCalculation) e).getCalculation());
+        }
+        else if(e instanceof RCheckbox) {
+            // update the titles always, rely on position for this one, the labels are shared with the form
+            CheckboxValues form = ((RCheckbox) e).getValues(), old = ((RCheckbox) s).getValues();
+            CheckboxValues values = new CheckboxValues(form.getLabels());
+            for(int i = 0; i < values.size(); i++) {
+                // if the checkbox is not modified, reset the boolean values
+                boolean keep = s.isModified() && old != null && i < old.size();
+                values.setChecked(i, keep ? old.isChecked(i) : form.isChecked(i));
+            }
+            // set new values back to team metric
+            ((RCheckbox) s).setValues(values);
+        }
+        // if one line is true, it means its the team name or number metric and its value shouldn't be overrided
+        else if(e instanceof RTextfield && !s.isModified() && !((RTextfield) e).isOneLine()) ((RTextfield) s).setText(((RTextfield) e).getText());
+        else if(e instanceof RChooser) {
+            // Always update the title
+            if (!Arrays.equals(((RChooser) s).getValues(), ((RChooser) e).getValues())) {
+                ((RChooser) s).setValues(((RChooser) e).getValues());
+            }
+            // if the chooser is not modified, reset the chooser values
+            if(!s.isModified())
+                ((RChooser) s).setSelectedIndex(((RChooser) e).getSelectedIndex());
+        } else if (e instanceof RStopwatch && !s.isModified())
+            ((RStopwatch) s).setTime(((RStopwatch) e).getTime());
+        else if (e instanceof RSlider && !s.isModified()) {
+            ((RSlider) s).setMax(((RSlider) e).getMax());
+            ((RSlider) s).setMin(((RSlider) e).getMin());
+            ((RSlider) s).setValue(((RSlider) e).getValue());
+        } else if (e instanceof RCounter) {
+            ((RCounter) s).setIncrement(((RCounter) e).getIncrement());
+
+            ((RCounter) s).setVerboseInput(((RCounter) e).isVerboseInput());
+        }
+    }
+
+    private static LinkedHashMap<Integer, RMetric> index(ArrayList<RMetric> metrics) {
+        LinkedHashMap<Integer, RMetric> map = new LinkedHashMap<>();
+        for(RMetric metric : metrics) if(!map.containsKey(metric.getID())) map.put(metric.getID(), metric);
+        return map;
+    }
+}
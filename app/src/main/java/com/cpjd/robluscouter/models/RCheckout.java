@@ -2,9 +2,13 @@ package com.cpjd.robluscouter.models;
 
 import android.support.annotation.NonNull;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
+
 import java.io.Serializable;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 
 /**
  * A model that stores data that will be transferred to the Roblu Cloud server, a hosted server, Bluetooth, or QR codes.
@@ -78,6 +82,12 @@ public class RCheckout implements Serializable, Comparable<RCheckout> {
      */
     private transient int customRelevance;
 
+    /**
+     * Packed sorting key, 0 until it's computed, see {@link #getSortKey()}
+     */
+    @Setter(AccessLevel.NONE)
+    private transient long sortKey;
+
     /**
      * The empty constructor is required for de-serialization
      */
@@ -92,13 +102,27 @@ public class RCheckout implements Serializable, Comparable<RCheckout> {
         this.team = team;
     }
 
+    /**
+     * The sort key of a checkout is the sort key of its tab, it's computed the first time it's needed and then cached,
+     * since a checkout's tab title and team number never change
+     * @return the sort key
+     * @see RTab#getSortKey()
+     */
+    @JsonIgnore
+    public long getSortKey() {
+        if(sortKey == 0) {
+            // Broken checkouts are sorted last
+            if(team == null || team.getTabs() == null || team.getTabs().isEmpty()) return Long.MAX_VALUE;
+            RTab tab = team.getTabs().get(0);
+            if(tab.getMatchType() == null) tab.computeSortingCache(team.getNumber());
+            sortKey = tab.getSortKey();
+        }
+        return sortKey;
+    }
+
     @Override
     public int compareTo(@NonNull RCheckout handoff) {
-        // These lines prevent some odd sorting error from occurring
-        if(getTeam().getTabs().get(0).getMatchType() == null) getTeam().getTabs().get(0).computeSortingCache(getTeam().getNumber());
-        else if(handoff.getTeam().getTabs().get(0).getMatchType() == null) handoff.getTeam().getTabs().get(0).computeSortingCache(handoff.getTeam().getNumber());
-
-        return getTeam().getTabs().get(0).compareTo(handoff.getTeam().getTabs().get(0));
+        return Long.compare(getSortKey(), handoff.getSortKey());
     }
 
 }
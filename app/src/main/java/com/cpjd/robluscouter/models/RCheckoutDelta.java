@@ -0,0 +1,87 @@
+package com.cpjd.robluscouter.models;
+
+import com.cpjd.robluscouter.models.metrics.RMetric;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import lombok.Data;
+
+/**
+ * RCheckoutDelta contains only the parts of a checkout that changed since the server last acknowledged it.
+ * This is what gets uploaded instead of a full RCheckout when delta uploads are enabled.
+ *
+ * -Status, name tag, and time are always included, they're tiny
+ * -Only tabs that changed are included, and only the metrics within them that changed
+ * -If the server has never acknowledged the checkout, every tab and metric is included and full is true
+ * -Pictures are referenced by their content hash, and only pictures the server hasn't acknowledged are included
+ *
+ * @see com.cpjd.robluscouter.sync.SyncHelper#packCheckoutDeltas(ArrayList, RSyncSettings)
+ * @version 1
+ * @since 4.5.0
+ */
+@Data
+public class RCheckoutDelta implements Serializable {
+
+    /**
+     * Changing this versionUID will render this class incompatible with older versions.
+     */
+    public static final long serialVersionUID = 1L;
+
+    /**
+     * ID of the checkout this delta applies to
+     */
+    private int ID;
+    /**
+     * The checkout's sync ID when it was last pulled from the server, the delta was computed against this version
+     */
+    private long baseSyncID;
+    /**
+     * True if this delta contains the entire checkout
+     */
+    private boolean full;
+
+    private int status;
+    private String nameTag;
+    private long time;
+    private long lastEdit;
+
+    /**
+     * The tabs that changed
+     */
+    private ArrayList<TabDelta> tabs;
+    /**
+     * Pictures the server doesn't have yet, content hash -> picture
+     * @see com.cpjd.robluscouter.io.ImageStore
+     */
+    private LinkedHashMap<String, byte[]> images;
+
+    @Data
+    public static class TabDelta implements Serializable {
+        public static final long serialVersionUID = 1L;
+
+        /**
+         * Title of the tab, titles are unique within a team
+         */
+        private String title;
+        private boolean won;
+        private LinkedHashMap<String, Long> edits;
+        /**
+         * The metrics that changed
+         */
+        private ArrayList<RMetric> metrics;
+        /**
+         * Picture hashes of the RGallery metrics in metrics, gallery metric ID -> ordered picture hashes.
+         * The RGallery metrics themselves don't contain any pictures.
+         */
+        private LinkedHashMap<Integer, ArrayList<String>> galleries;
+
+        public TabDelta() {}
+    }
+
+    /**
+     * The empty constructor is required for de-serialization
+     */
+    public RCheckoutDelta() {}
+}
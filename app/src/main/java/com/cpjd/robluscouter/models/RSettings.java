@@ -74,6 +74,11 @@ public class RSettings implements Serializable {
      * Allows the user to explicitly disable the background service.
      */
     private boolean syncDisabled;
+
+    /**
+     * Only upload the changes made to checkouts instead of entire checkouts. This requires a server that supports delta uploads.
+     */
+    private boolean deltaUploads;
     /**
      * Sets the defaults for settings
      */
@@ -1,7 +1,15 @@
 package com.cpjd.robluscouter.models;
 
+import com.cpjd.robluscouter.utils.IntLongMap;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 import lombok.Data;
 
@@ -23,6 +31,18 @@ public class RSyncSettings implements Serializable {
      * Changing this versionUID will render this class incompatible with older versions.
      */
     public static final long serialVersionUID = 1L;
+    /**
+     * Older versions serialized checkoutSyncIDs as a LinkedHashMap, so the fields are read and written manually
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("teamNumber", int.class),
+            new ObjectStreamField("eventName", String.class),
+            new ObjectStreamField("teamSyncID", long.class),
+            new ObjectStreamField("checkoutSyncIDs", Object.class),
+            new ObjectStreamField("lastBluetoothCheckoutSync", long.class),
+            new ObjectStreamField("uploadedFingerprints", LinkedHashMap.class),
+            new ObjectStreamField("uploadedImageHashes", HashSet.class)
+    };
     /**
      * The team's FRC number, used for showing a user the matches they are in
      * @see com.cpjd.robluscouter.ui.mymatches.MyMatches
@@ -42,16 +62,65 @@ public class RSyncSettings implements Serializable {
      * The key represents the checkout ID, and the value represents that checkout's corresponding sync
      * ID.
      */
-    private LinkedHashMap<Integer, Long> checkoutSyncIDs;
+    private IntLongMap checkoutSyncIDs;
 
     /**
      * Stores the timestamp of the last successful Bluetooth sync, to minimize data transfers
      */
     private long lastBluetoothCheckoutSync;
 
+    /**
+     * Stores what the server has acknowledged for each checkout, used for delta uploads.
+     * The key represents the checkout ID, and the value maps parts of the checkout (the checkout itself, tabs, and metrics)
+     * to fingerprints of their uploaded contents.
+     * Only kept while delta uploads are on, and only for checkouts that are still in /mycheckouts/.
+     * @see com.cpjd.robluscouter.sync.SyncHelper#packCheckoutDeltas(java.util.ArrayList, RSyncSettings)
+     */
+    private LinkedHashMap<Integer, LinkedHashMap<String, Long>> uploadedFingerprints;
+    /**
+     * Content hashes of the pictures the server has acknowledged, these pictures don't need to be uploaded again
+     * @see com.cpjd.robluscouter.io.ImageStore
+     */
+    private HashSet<String> uploadedImageHashes;
+
 
-    public LinkedHashMap<Integer, Long> getCheckoutSyncIDs() {
-        if(checkoutSyncIDs == null) this.checkoutSyncIDs = new LinkedHashMap<>();
+    public IntLongMap getCheckoutSyncIDs() {
+        if(checkoutSyncIDs == null) this.checkoutSyncIDs = new IntLongMap();
         return checkoutSyncIDs;
     }
+
+    public LinkedHashMap<Integer, LinkedHashMap<String, Long>> getUploadedFingerprints() {
+        if(uploadedFingerprints == null) this.uploadedFingerprints = new LinkedHashMap<>();
+        return uploadedFingerprints;
+    }
+
+    public HashSet<String> getUploadedImageHashes() {
+        if(uploadedImageHashes == null) this.uploadedImageHashes = new HashSet<>();
+        return uploadedImageHashes;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("teamNumber", teamNumber);
+        fields.put("eventName", eventName);
+        fields.put("teamSyncID", teamSyncID);
+        fields.put("checkoutSyncIDs", checkoutSyncIDs);
+        fields.put("lastBluetoothCheckoutSync", lastBluetoothCheckoutSync);
+        fields.put("uploadedFingerprints", uploadedFingerprints);
+        fields.put("uploadedImageHashes", uploadedImageHashes);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        teamNumber = fields.get("teamNumber", 0);
+        eventName = (String) fields.get("eventName", null);
+        teamSyncID = fields.get("teamSyncID", 0L);
+        Object syncIDs = fields.get("checkoutSyncIDs", null);
+        checkoutSyncIDs = syncIDs instanceof Map ? IntLongMap.of((Map<?, ?>) syncIDs) : (IntLongMap) syncIDs;
+        lastBluetoothCheckoutSync = fields.get("lastBluetoothCheckoutSync", 0L);
+        uploadedFingerprints = (LinkedHashMap<Integer, LinkedHashMap<String, Long>>) fields.get("uploadedFingerprints", null);
+        uploadedImageHashes = (HashSet<String>) fields.get("uploadedImageHashes", null);
+    }
 }
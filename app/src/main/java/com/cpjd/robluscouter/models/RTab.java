@@ -5,11 +5,17 @@ import android.support.annotation.NonNull;
 import com.cpjd.robluscouter.models.metrics.RMetric;
 import com.cpjd.robluscouter.utils.MatchType;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
+
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 /**
  * This class stores information about either PIT, Prediction, or Match data.
@@ -79,6 +85,23 @@ public class RTab implements Serializable, Comparable<RTab> {
      */
     private ArrayList<RTeam> teammates, opponents;
 
+    /**
+     * Metric ID -> position in metrics, see {@link #indexOf(int)}. It isn't serialized, it's rebuilt
+     * whenever metrics is replaced, resized, or a lookup finds a stale position.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient HashMap<Integer, Integer> positions;
+    /**
+     * The list and size positions was built for
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient ArrayList<RMetric> indexedMetrics;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient int indexedSize;
+
     /**
      * The empty constructor is required for de-serialization
      */
@@ -105,26 +128,95 @@ public class RTab implements Serializable, Comparable<RTab> {
         computeSortingCache(teamNumber);
     }
 
+    /**
+     * Parses the sorting variables out of the title, for example "Quarters 2 Match 1"
+     * @param teamNumber the number of the team this tab belongs to
+     */
     public void computeSortingCache(int teamNumber) {
-        // Process MatchType
-        String matchName = "team# "+teamNumber+" "+title.toLowerCase().trim();
-        String[] tokens = matchName.split("\\s+");
-        matchType = MatchType.getByName(tokens[2]);
-        if(matchType.hasMatchOrder()) matchOrder = Integer.parseInt(tokens[3]);
-        if(matchType.hasSubmatches()) subMatchOrder = Integer.parseInt(tokens[5]);
-        teamOrder = Integer.parseInt(tokens[1]);
+        ArrayList<String> tokens = new ArrayList<>(6);
+        int start = -1;
+        for(int i = 0; i <= title.length(); i++) {
+            boolean whitespace = i == title.length() || Character.isWhitespace(title.charAt(i));
+            if(!whitespace && start == -1) start = i;
+            else if(whitespace && start != -1) {
+                tokens.add(title.substring(start, i));
+                start = -1;
+            }
+        }
+
+        matchType = tokens.isEmpty() ? null : MatchType.getByName(tokens.get(0));
+        if(matchType != null && matchType.hasMatchOrder()) matchOrder = parseOrder(tokens, 1);
+        if(matchType != null && matchType.hasSubmatches()) subMatchOrder = parseOrder(tokens, 3);
+        teamOrder = teamNumber;
+    }
+
+    /**
+     * Packs the sorting variables into one number, tabs sorted by this number are sorted by match type,
+     * then match number, then sub match number, then team number.
+     * Call {@link #computeSortingCache(int)} first if the match type is null.
+     * Bits (from most to least significant): 7 match type, 20 match, 12 sub match, 24 team number
+     * @return the sort key, never 0
+     */
+    @JsonIgnore
+    public long getSortKey() {
+        // Tabs with an unrecognized title are sorted last
+        long type = matchType == null ? 0x7F : matchType.getMatchTypeOrder();
+        return type << 56 | clamp(matchOrder, 0xFFFFF) << 36 | clamp(subMatchOrder, 0xFFF) << 24 | clamp(teamOrder, 0xFFFFFF);
+    }
+
+    /**
+     * Finds the position of a metric without scanning the metrics
+     * @param ID the ID of the metric
+     * @return the position of the first metric with the ID, -1 if there isn't one
+     */
+    public int indexOf(int ID) {
+        if(metrics == null) return -1;
+        Integer position = positions(false).get(ID);
+        // The list might have been edited in place, if so, re-index and try again
+        if(position == null || position >= metrics.size() || metrics.get(position).getID() != ID) position = positions(true).get(ID);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Finds a metric without scanning the metrics
+     * @param ID the ID of the metric
+     * @return the first metric with the ID, null if there isn't one
+     */
+    public RMetric getMetric(int ID) {
+        int position = indexOf(ID);
+        return position == -1 ? null : metrics.get(position);
     }
 
     @Override
     public int compareTo(@NonNull RTab tab) {
-        // Matches are different in some way
-        if(this.matchType == tab.getMatchType()) {
-            // Matches are exactly identical, sort by team number then
-            if(this.matchOrder == tab.getMatchOrder() && this.subMatchOrder == tab.getSubMatchOrder()) return (this.getTeamOrder() - tab.getTeamOrder());
-
-            if(this.matchOrder == tab.getMatchOrder()) return ((this.subMatchOrder) - (tab.getSubMatchOrder()));
-            else return ((this.matchOrder) - (tab.getMatchOrder()));
-        } else return ((this.matchType.getMatchTypeOrder()) - (tab.getMatchType().getMatchTypeOrder()));
+        return Long.compare(getSortKey(), tab.getSortKey());
+    }
+
+    private HashMap<Integer, Integer> positions(boolean rebuild) {
+        if(rebuild || positions == null || indexedMetrics != metrics || indexedSize != metrics.size()) {
+            positions = new HashMap<>(metrics.size() * 2);
+            for(int i = 0; i < metrics.size(); i++) {
+                if(!positions.containsKey(metrics.get(i).getID())) positions.put(metrics.get(i).getID(), i);
+            }
+            indexedMetrics = metrics;
+            indexedSize = metrics.size();
+        }
+        return positions;
+    }
+
+    private static int parseOrder(ArrayList<String> tokens, int index) {
+        if(index >= tokens.size()) return 0;
+        int value = 0;
+        for(int i = 0; i < tokens.get(index).length(); i++) {
+            char c = tokens.get(index).charAt(i);
+            if(c < '0' || c > '9') return 0;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static long clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
     }
 
     @Override
@@ -1,24 +1,17 @@
 package com.cpjd.robluscouter.models;
 
-import com.cpjd.robluscouter.models.metrics.RBoolean;
-import com.cpjd.robluscouter.models.metrics.RCalculation;
-import com.cpjd.robluscouter.models.metrics.RCheckbox;
-import com.cpjd.robluscouter.models.metrics.RChooser;
-import com.cpjd.robluscouter.models.metrics.RCounter;
-import com.cpjd.robluscouter.models.metrics.RFieldDiagram;
 import com.cpjd.robluscouter.models.metrics.RMetric;
-import com.cpjd.robluscouter.models.metrics.RSlider;
-import com.cpjd.robluscouter.models.metrics.RStopwatch;
 import com.cpjd.robluscouter.models.metrics.RTextfield;
 import com.cpjd.robluscouter.utils.Utils;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
 /**
  * Welcome to the belly of the beast! (Not really)
@@ -79,6 +72,15 @@ public class RTeam implements Serializable {
     private String fullName, location, motto, website;
     private int rookieYear;
 
+    /**
+     * Fingerprint of the form this team was last verified against. It has no accessors and isn't serialized,
+     * so a team is verified at most once per form version while it's in memory
+     * @see #verify(RForm)
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient long verifiedForm;
+
     /**
      * The empty constructor is required for de-serialization
      */
@@ -122,8 +124,14 @@ public class RTeam implements Serializable {
      * <p>
      * NULLS to check for:
      * -If the team has never been opened before, set the PIT values, matches don't need to be set until creation.
+     * <p>
+     * Each tab is patched in a single pass, see {@link FormDiff}. The team remembers the fingerprint of the form
+     * it was verified against, so verifying it against the same form again is skipped.
+     *
+     * @param form the form to verify against
+     * @return true if the team was verified, false if it was already verified against this form
      */
-    public void verify(RForm form) {
+    public boolean verify(RForm form) {
         // Check for null or missing Pit & Predictions tabs
         if(this.tabs == null || this.tabs.size() == 0) {
             this.tabs = new ArrayList<>();
@@ -135,163 +143,18 @@ public class RTeam implements Serializable {
                 else if(m.getID() == 1) ((RTextfield)m).setText(String.valueOf(number)); // team number
             }
 
-            return;
+            verifiedForm = FormDiff.fingerprint(form);
+            return true;
         }
 
-        // Remove elements that aren't on the form
-        ArrayList<RMetric> temp = form.getPit(); // less if statements, just switches between PIT or MATCH depending on what needs to be verified
-        for(int i = 0; i < tabs.size(); i++) {
-            if(!tabs.get(i).getTitle().equalsIgnoreCase("Pit")) temp = form.getMatch();
-            for (int j = 0; j < tabs.get(i).getMetrics().size(); j++) {
-                boolean found = false;
-                if(temp.size() == 0) {
-                    tabs.get(i).getMetrics().clear();
-                    break;
-                }
-                for (int k = 0; k < temp.size(); k++) {
-                    if (tabs.get(i).getMetrics().get(j).getID() == temp.get(k).getID()) found = true;
-                    if (k == temp.size() - 1 && !found) {
-                        tabs.get(i).getMetrics().remove(j);
-                        j = 0;
-                        break;
-                    }
-                }
-            }
-        }
+        // Already verified against this version of the form
+        long fingerprint = FormDiff.fingerprint(form);
+        if(fingerprint == verifiedForm) return false;
 
-        /*
-         * Alright, so we removed old elements, but we're still very suspicious. For example,
-         * let's say the user edited the form (by removing an element), didn't re-verify any teams (by not opening them),
-         * and then added a new element in the position of the old one. What will happen is that the above method will
-         * NOT remove the old metric instance, and instead below the metrics name will not get updated. So, here we will
-         * make sure that both the ID and INSTANCE TYPE of each metric (in the form and team) match, otherwise, the metric
-         * gets booted.
-         */
-        temp = form.getPit();
-        for(int i = 0; i < tabs.size(); i++) {
-            if(!tabs.get(i).getTitle().equalsIgnoreCase("Pit")) temp = form.getMatch();
-            for(int j = 0; j < temp.size(); j++) {
-                for(int k = 0; k < tabs.get(i).getMetrics().size(); k++) {
-                    if(tabs.get(i).getMetrics().get(k).getID() == temp.get(j).getID()) {
-                        if(!temp.get(j).getClass().equals(tabs.get(i).getMetrics().get(k).getClass())) {
-                            tabs.get(i).getMetrics().remove(k);
-                            j = 0;
-                            k = 0;
-                        }
-                    }
-                }
-            }
-        }
-
-        // Add elements that are on the form, but not in this team
-        temp = form.getPit();
-        for(int i = 0; i < tabs.size(); i++) {
-            if(!tabs.get(i).getTitle().equalsIgnoreCase("Pit")) temp = form.getMatch();
-            for (int j = 0; j < temp.size(); j++) {
-                boolean found = false;
-                if(tabs.get(i).getMetrics().size() == 0) {
-                    tabs.get(i).getMetrics().add(temp.get(j).clone());
-                    continue;
-                }
-                for (int k = 0; k < tabs.get(i).getMetrics().size(); k++) {
-                    if (tabs.get(i).getMetrics().get(k).getID() == temp.get(j).getID()) found = true;
-                    if (k == tabs.get(i).getMetrics().size() - 1 && !found) {
-                        tabs.get(i).getMetrics().add(temp.get(j).clone());
-                        j = 0;
-                        break;
-                    }
-                }
-            }
-        }
-
-        // Update item names
-        temp = form.getPit();
-        for(int i = 0; i < tabs.size(); i++) {
-            if(!tabs.get(i).getTitle().equalsIgnoreCase("PIT")) temp = form.getMatch();
-            for (int j = 0; j < temp.size(); j++) {
-                for (int k = 0; k < tabs.get(i).getMetrics().size(); k++) {
-                    if (temp.get(j).getID() == tabs.get(i).getMetrics().get(k).getID()) {
-                        tabs.get(i).getMetrics().get(k).setTitle(temp.get(j).getTitle());
-                        break;
-                    }
-                }
-            }
-        }
-
-        // Update default values for non-modified values, also check for some weird scenarios
-        temp = form.getPit();
-        for(int i = 0; i < tabs.size(); i++) {
-            if(!tabs.get(i).getTitle().equalsIgnoreCase("PIT")) temp = form.getMatch();
-            for(int j = 0; j < temp.size(); j++) {
-                for(int k = 0; k < tabs.get(i).getMetrics().size(); k++) {
-                    if (temp.get(j).getID() == tabs.get(i).getMetrics().get(k).getID()) {
-                        RMetric e = temp.get(j);
-                        RMetric s = tabs.get(i).getMetrics().get(k);
-
-                        if(e instanceof RBoolean && !s.isModified() && s instanceof RBoolean)
-                            ((RBoolean) s).setValue(((RBoolean) e).isValue());
-                        else if(e instanceof RFieldDiagram && s instanceof RFieldDiagram && (((RFieldDiagram) e).getPictureID() != ((RFieldDiagram) s).getPictureID())) {
-                            // Remove old picture drawings
-                            ((RFieldDiagram) s).setDrawings(null);
-                            ((RFieldDiagram) s).setPictureID(((RFieldDiagram) e).getPictureID());
-                        }
-                        else if(e instanceof RCounter && !s.isModified() && s instanceof RCounter) {
-                            ((RCounter)s).setValue(((RCounter)e).getValue());
-                        }
-                        else if(e instanceof RCalculation && s instanceof RCalculation) {
-                            ((RCalculation) s).setCalculation(((RCalculation) e).getCalculation());
-                        }
-                        else if(e instanceof RCheckbox && s instanceof RCheckbox) {
-                            // update the titles always, rely on position for this one
-                            LinkedHashMap<String, Boolean> newHash = new LinkedHashMap<>();
-                            // get old values
-                            ArrayList<Boolean> values = new ArrayList<>();
-                            // put values from team checkbox into this array
-                            for(String oKey : ((RCheckbox) s).getValues().keySet()) {
-                                values.add(((RCheckbox) s).getValues().get(oKey));
-                            }
-                            // copy values to new linked hash map, replacing the new keys
-                            int index = 0;
-                            for(String oKey : ((RCheckbox) e).getValues().keySet()) {
-                                newHash.put(oKey, values.get(index));
-                                index++;
-                            }
-                            // set new array back to team metric
-                            ((RCheckbox) s).setValues(newHash);
-
-                            // if the checkbox is not modified, reset the boolean values
-                            if(!s.isModified()) {
-                                for(String key : ((RCheckbox)e).getValues().keySet()) ((RCheckbox)s).getValues().put(key, ((RCheckbox) e).getValues().get(key));
-                            }
-                        }
-                        // if one line is true, it means its the team name or number metric and its value shouldn't be overrided
-                        else if(e instanceof RTextfield && !s.isModified() && !((RTextfield) e).isOneLine()) ((RTextfield) s).setText(((RTextfield) e).getText());
-                        else if(e instanceof RChooser && s instanceof RChooser) {
-                            // Always update the title
-                            if (!Arrays.equals(((RChooser) s).getValues(), ((RChooser) e).getValues())) {
-                                ((RChooser) s).setValues(((RChooser) e).getValues());
-                            }
-                            // if the chooser is not modified, reset the chooser values
-                            if(!s.isModified())
-                                ((RChooser) s).setSelectedIndex(((RChooser) e).getSelectedIndex());
-                        } else if (e instanceof RStopwatch && !s.isModified() && s instanceof RStopwatch)
-                            ((RStopwatch) s).setTime(((RStopwatch) e).getTime());
-                        else if (e instanceof RSlider && !s.isModified() && s instanceof RSlider) {
-                            ((RSlider) s).setMax(((RSlider) e).getMax());
-                            ((RSlider) s).setMin(((RSlider) e).getMin());
-                            ((RSlider) s).setValue(((RSlider) e).getValue());
-                        } else if (e instanceof RCounter && s instanceof RCounter) {
-                            ((RCounter) s).setIncrement(((RCounter) e).getIncrement());
-
-                            ((RCounter) s).setVerboseInput(((RCounter) e).isVerboseInput());
-                            if (!s.isModified())
-                                ((RCounter) s).setValue(((RCounter) e).getValue());
-                        }
-                        break;
-                    }
-                }
-            }
-        }
+        FormDiff diff = new FormDiff(form);
+        for(RTab tab : tabs) diff.apply(tab);
+        verifiedForm = fingerprint;
+        return true;
     }
 
     /**
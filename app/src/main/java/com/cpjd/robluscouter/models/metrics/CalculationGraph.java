@@ -0,0 +1,187 @@
+package com.cpjd.robluscouter.models.metrics;
+
+import android.util.Log;
+
+import com.cpjd.robluscouter.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * CalculationGraph evaluates the RCalculation metrics of one tab.
+ *
+ * Each formula is compiled once into an {@link Expression}, and the calculations are arranged into a dependency graph
+ * (a calculation can reference counters, sliders, stopwatches and other calculations). When a metric changes,
+ * {@link #update(int)} only recomputes the calculations that depend on it, in dependency order.
+ *
+ * Calculations that reference each other in a cycle, that can't be parsed, or that depend on one of those are "Bad equation".
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class CalculationGraph implements Expression.Values {
+
+    public static final String BAD_EQUATION = "Bad equation";
+
+    /**
+     * The metrics that can be referenced by a calculation, keyed by ID
+     */
+    private final HashMap<Integer, RMetric> metrics = new HashMap<>();
+    /**
+     * Compiled expressions, keyed by calculation ID, calculations that couldn't be compiled are missing
+     */
+    private final HashMap<Integer, Expression> expressions = new HashMap<>();
+    /**
+     * Calculations that depend on each metric, keyed by metric ID
+     */
+    private final HashMap<Integer, ArrayList<RCalculation>> dependents = new HashMap<>();
+    /**
+     * Every calculation, ordered so that each one comes after all the calculations it references
+     */
+    private final ArrayList<RCalculation> order = new ArrayList<>();
+    /**
+     * Calculation values, keyed by calculation ID, calculations without a valid value are missing
+     */
+    private final HashMap<Integer, Double> values = new HashMap<>();
+
+    /**
+     * Builds the graph for a tab, call {@link #evaluateAll()} to compute the values
+     * @param metrics the metrics of the tab
+     */
+    public CalculationGraph(ArrayList<RMetric> metrics) {
+        // Metrics that can be referenced, when titles are duplicated, the first metric wins
+        LinkedHashMap<String, Integer> titles = new LinkedHashMap<>();
+        ArrayList<RCalculation> calculations = new ArrayList<>();
+        for(RMetric metric : metrics) {
+            if(!(metric instanceof RCounter || metric instanceof RStopwatch || metric instanceof RSlider || metric instanceof RCalculation)) continue;
+            this.metrics.put(metric.getID(), metric);
+            if(metric.getTitle() != null && !metric.getTitle().isEmpty() && !titles.containsKey(metric.getTitle())) titles.put(metric.getTitle(), metric.getID());
+            if(metric instanceof RCalculation) calculations.add((RCalculation) metric);
+        }
+
+        StringBuilder signature = new StringBuilder();
+        for(String title : titles.keySet()) signature.append(title).append('\u0000').append(titles.get(title)).append('\u0000');
+
+        for(RCalculation calculation : calculations) {
+            if(calculation.getCalculation() == null || calculation.getCalculation().equals("null")) continue;
+            // A calculation can't reference itself
+            LinkedHashMap<String, Integer> available = titles;
+            if(titles.containsKey(calculation.getTitle())) {
+                available = new LinkedHashMap<>(titles);
+                available.remove(calculation.getTitle());
+            }
+            try {
+                Expression expression = Expression.compile(calculation.getCalculation(), available, calculation.getTitle()+"\u0000"+signature);
+                expressions.put(calculation.getID(), expression);
+                for(int ID : expression.getReferences()) {
+                    if(!dependents.containsKey(ID)) dependents.put(ID, new ArrayList<RCalculation>());
+                    dependents.get(ID).add(calculation);
+                }
+            } catch(IllegalArgumentException e) {
+                Log.d("RSBS", "Failed to compile calculation "+calculation.getTitle()+". err msg: "+e.getMessage());
+            }
+        }
+
+        // Topological order, calculations in a cycle are dropped so they never get a value
+        HashSet<Integer> visited = new HashSet<>();
+        HashSet<Integer> visiting = new HashSet<>();
+        for(RCalculation calculation : calculations) sort(calculation, visited, visiting);
+    }
+
+    /**
+     * Recomputes every calculation
+     */
+    public void evaluateAll() {
+        values.clear();
+        for(RCalculation calculation : order) evaluate(calculation);
+    }
+
+    /**
+     * Recomputes the calculations that depend on a metric, directly or through other calculations
+     * @param ID the ID of the metric that changed
+     * @return the calculations that were recomputed, in dependency order
+     */
+    public ArrayList<RCalculation> update(int ID) {
+        HashSet<Integer> affected = new HashSet<>();
+        ArrayList<Integer> queue = new ArrayList<>();
+        queue.add(ID);
+        while(!queue.isEmpty()) {
+            ArrayList<RCalculation> list = dependents.get(queue.remove(queue.size() - 1));
+            if(list == null) continue;
+            for(RCalculation calculation : list) if(affected.add(calculation.getID())) queue.add(calculation.getID());
+        }
+
+        ArrayList<RCalculation> updated = new ArrayList<>();
+        if(affected.isEmpty()) return updated;
+        for(RCalculation calculation : order) {
+            if(!affected.contains(calculation.getID())) continue;
+            values.remove(calculation.getID());
+            evaluate(calculation);
+            updated.add(calculation);
+        }
+        return updated;
+    }
+
+    /**
+     * @param calculation the calculation
+     * @return the value of the calculation as it should be displayed, or "Bad equation"
+     */
+    public String getValue(RCalculation calculation) {
+        Double value = values.get(calculation.getID());
+        return value == null ? BAD_EQUATION : String.valueOf(value);
+    }
+
+    @Override
+    public double valueOf(int ID) {
+        RMetric metric = metrics.get(ID);
+        if(metric instanceof RCounter) return ((RCounter) metric).getValue();
+        if(metric instanceof RSlider) return ((RSlider) metric).getValue();
+        if(metric instanceof RStopwatch) return ((RStopwatch) metric).getTime();
+        Double value = values.get(ID);
+        if(value == null) throw new IllegalStateException("Referenced calculation doesn't have a value");
+        return value;
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private void evaluate(RCalculation calculation) {
+        Expression expression = expressions.get(calculation.getID());
+        if(expression == null) return;
+        try {
+            double value = Utils.round(expression.evaluate(this), 2);
+            calculation.setLastValue(value);
+            values.put(calculation.getID(), value);
+        } catch(IllegalStateException e) {
+            // A referenced calculation is bad, so this one is too
+        }
+    }
+
+    /**
+     * Depth first topological sort
+     * @return false if the calculation is part of a cycle, or references one that was found while sorting it
+     */
+    private boolean sort(RCalculation calculation, HashSet<Integer> visited, HashSet<Integer> visiting) {
+        if(visited.contains(calculation.getID())) return true;
+        if(!visiting.add(calculation.getID())) {
+            Log.d("RSBS", "Calculation "+calculation.getTitle()+" is part of a cycle.");
+            return false;
+        }
+        boolean valid = true;
+        Expression expression = expressions.get(calculation.getID());
+        if(expression != null) {
+            for(int ID : expression.getReferences()) {
+                RMetric metric = metrics.get(ID);
+                if(metric instanceof RCalculation && !sort((RCalculation) metric, visited, visiting)) valid = false;
+            }
+        }
+        visiting.remove(calculation.getID());
+        visited.add(calculation.getID());
+        if(valid) order.add(calculation);
+        else expressions.remove(calculation.getID());
+        return valid;
+    }
+}
@@ -0,0 +1,191 @@
+package com.cpjd.robluscouter.models.metrics;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationContext;
+import org.codehaus.jackson.map.JsonDeserializer;
+import org.codehaus.jackson.map.JsonSerializer;
+import org.codehaus.jackson.map.SerializerProvider;
+import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CheckboxValues holds the items of an {@link RCheckbox}, it replaces a LinkedHashMap<String, Boolean>.
+ *
+ * The labels come from the form and are the same in every tab, so the label array is shared (see {@link SchemaPool})
+ * and must never be modified in place. The checked state of each item is a bit.
+ *
+ * In JSON, it's written as an object of label and boolean pairs, exactly like the LinkedHashMap it replaces.
+ * Labels are unique, like the keys of the map were. Null values aren't supported, they're read as false.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+@JsonSerialize(using = CheckboxValues.Serializer.class)
+@JsonDeserialize(using = CheckboxValues.Deserializer.class)
+public class CheckboxValues implements Serializable {
+
+    /**
+     * Changing this versionUID will render this class incompatible with older versions.
+     */
+    public static final long serialVersionUID = 1L;
+
+    private String[] labels;
+    private long[] checked;
+
+    /**
+     * Creates values with all items unchecked
+     * @param labels the labels of the items, the array is shared, not copied
+     */
+    public CheckboxValues(String[] labels) {
+        this.labels = labels;
+        this.checked = new long[(labels.length + 63) >>> 6];
+    }
+
+    /**
+     * Converts a map, nulls are read as false
+     * @param map the map to convert, may be null
+     * @return the values, or null if map was null
+     */
+    public static CheckboxValues of(Map<String, Boolean> map) {
+        if(map == null) return null;
+        CheckboxValues values = new CheckboxValues(map.keySet().toArray(new String[map.size()]));
+        int index = 0;
+        for(Boolean value : map.values()) values.setChecked(index++, value != null && value);
+        return values;
+    }
+
+    /**
+     * @return the values as a map, in item order
+     */
+    public LinkedHashMap<String, Boolean> toMap() {
+        LinkedHashMap<String, Boolean> map = new LinkedHashMap<>();
+        for(int i = 0; i < labels.length; i++) map.put(labels[i], isChecked(i));
+        return map;
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * @return the labels, the array is shared and must not be modified
+     */
+    public String[] getLabels() {
+        return labels;
+    }
+
+    public String getLabel(int index) {
+        return labels[index];
+    }
+
+    /**
+     * @param label the label of an item
+     * @return the index of the item, -1 if there isn't an item with the label
+     */
+    public int indexOf(String label) {
+        for(int i = 0; i < labels.length; i++) if(labels[i].equals(label)) return i;
+        return -1;
+    }
+
+    public boolean isChecked(int index) {
+        if(index < 0 || index >= labels.length) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+labels.length);
+        return (checked[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void setChecked(int index, boolean value) {
+        if(index < 0 || index >= labels.length) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+labels.length);
+        if(value) checked[index >>> 6] |= 1L << index;
+        else checked[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * Sets the value of an item by label, if there isn't an item with the label, it's added
+     * @param label the label of the item
+     * @param value the new value
+     */
+    public void put(String label, boolean value) {
+        int index = indexOf(label);
+        if(index == -1) {
+            // the labels are shared, so they're copied rather than modified
+            index = labels.length;
+            labels = Arrays.copyOf(labels, index + 1);
+            labels[index] = label;
+            if(checked.length < ((labels.length + 63) >>> 6)) checked = Arrays.copyOf(checked, checked.length + 1);
+        }
+        setChecked(index, value);
+    }
+
+    /**
+     * Makes the labels share an instance with equal labels from other checkboxes
+     */
+    void intern() {
+        labels = SchemaPool.intern(labels);
+    }
+
+    public CheckboxValues copy() {
+        CheckboxValues copy = new CheckboxValues(labels);
+        System.arraycopy(checked, 0, copy.checked, 0, checked.length);
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof CheckboxValues)) return false;
+        CheckboxValues other = (CheckboxValues) o;
+        return Arrays.equals(labels, other.labels) && Arrays.equals(checked, other.checked);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(labels) + Arrays.hashCode(checked);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    /**
+     * Writes the values the same way as a LinkedHashMap<String, Boolean>
+     */
+    public static class Serializer extends JsonSerializer<CheckboxValues> {
+        @Override
+        public void serialize(CheckboxValues values, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            for(int i = 0; i < values.labels.length; i++) generator.writeBooleanField(values.labels[i], values.isChecked(i));
+            generator.writeEndObject();
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<CheckboxValues> {
+        @Override
+        public CheckboxValues deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if(parser.getCurrentToken() != JsonToken.START_OBJECT) throw context.mappingException(CheckboxValues.class);
+            ArrayList<String> labels = new ArrayList<>();
+            ArrayList<Boolean> checked = new ArrayList<>();
+            for(JsonToken token = parser.nextToken(); token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+                String label = parser.getCurrentName();
+                token = parser.nextToken();
+                parser.skipChildren();
+                int index = labels.indexOf(label);
+                if(index == -1) {
+                    labels.add(label);
+                    checked.add(token == JsonToken.VALUE_TRUE);
+                } else checked.set(index, token == JsonToken.VALUE_TRUE);
+            }
+            CheckboxValues values = new CheckboxValues(labels.toArray(new String[labels.size()]));
+            for(int i = 0; i < checked.size(); i++) values.setChecked(i, checked.get(i));
+            return values;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.cpjd.robluscouter.models.metrics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Expression is an RCalculation formula that has been parsed into a tree. Metric titles are resolved to metric IDs
+ * while parsing, so evaluating the expression doesn't have to do any string work at all.
+ *
+ * The syntax matches the DoubleEvaluator that was used before:
+ * -Operators +, -, *, /, % and ^ (^ is left associative and binds tighter than a leading -, so -2^2 is -4)
+ * -Constants pi and e
+ * -Functions sin, cos, tan, asin, acos, atan, sinh, cosh, tanh, min, max, sum, avg, ln, log, round, ceil, floor, abs, random
+ * -Metric titles, the longest title that matches at a position wins, and titles take priority over everything else
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+final class Expression {
+
+    /**
+     * Provides the values of the metrics referenced by an expression
+     */
+    interface Values {
+        /**
+         * @param ID the ID of a referenced metric
+         * @return the value of the metric
+         * @throws IllegalStateException if the metric doesn't have a valid value
+         */
+        double valueOf(int ID);
+    }
+
+    private static final int CACHE_SIZE = 64;
+    /**
+     * Compiled expressions, keyed by formula and the titles it was compiled against, so rebuilding a
+     * {@link CalculationGraph} for the same form doesn't parse anything again
+     */
+    private static final LinkedHashMap<String, Expression> cache = new LinkedHashMap<String, Expression>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final Node root;
+    private final HashSet<Integer> references;
+
+    private Expression(Node root, HashSet<Integer> references) {
+        this.root = root;
+        this.references = references;
+    }
+
+    /**
+     * Compiles a formula
+     * @param formula the formula to compile
+     * @param titles metric titles that may be referenced, mapped to metric IDs
+     * @param signature identifies the contents of titles, for caching
+     * @return the compiled expression
+     * @throws IllegalArgumentException if the formula isn't valid
+     */
+    static Expression compile(String formula, Map<String, Integer> titles, String signature) {
+        String key = formula+"\u0000"+signature;
+        synchronized(cache) {
+            Expression expression = cache.get(key);
+            if(expression != null) return expression;
+        }
+        Parser parser = new Parser(formula, titles);
+        Expression expression = new Expression(parser.parse(), parser.references);
+        synchronized(cache) {
+            cache.put(key, expression);
+        }
+        return expression;
+    }
+
+    /**
+     * @return the IDs of the metrics this expression references
+     */
+    HashSet<Integer> getReferences() {
+        return references;
+    }
+
+    double evaluate(Values values) {
+        return root.evaluate(values);
+    }
+
+    /*
+     * Tree
+     */
+
+    private static abstract class Node {
+        abstract double evaluate(Values values);
+    }
+
+    private static class Constant extends Node {
+        private final double value;
+        Constant(double value) {
+            this.value = value;
+        }
+        @Override
+        double evaluate(Values values) {
+            return value;
+        }
+    }
+
+    private static class Reference extends Node {
+        private final int ID;
+        Reference(int ID) {
+            this.ID = ID;
+        }
+        @Override
+        double evaluate(Values values) {
+            return values.valueOf(ID);
+        }
+    }
+
+    private static class Negate extends Node {
+        private final Node operand;
+        Negate(Node operand) {
+            this.operand = operand;
+        }
+        @Override
+        double evaluate(Values values) {
+            return -operand.evaluate(values);
+        }
+    }
+
+    private static class Binary extends Node {
+        private final char operator;
+        private final Node left, right;
+        Binary(char operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+        @Override
+        double evaluate(Values values) {
+            double a = left.evaluate(values), b = right.evaluate(values);
+            switch(operator) {
+                case '+': return a + b;
+                case '-': return a - b;
+                case '*': return a * b;
+                case '/': return a / b;
+                case '%': return a % b;
+                default: return Math.pow(a, b);
+            }
+        }
+    }
+
+    private static class Function extends Node {
+        private final String name;
+        private final Node[] arguments;
+        Function(String name, Node[] arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+        @Override
+        double evaluate(Values values) {
+            if(name.equals("random")) return Math.random();
+            double[] a = new double[arguments.length];
+            for(int i = 0; i < a.length; i++) a[i] = arguments[i].evaluate(values);
+            switch(name) {
+                case "sin": return Math.sin(a[0]);
+                case "cos": return Math.cos(a[0]);
+                case "tan": return Math.tan(a[0]);
+                case "asin": return Math.asin(a[0]);
+                case "acos": return Math.acos(a[0]);
+                case "atan": return Math.atan(a[0]);
+                case "sinh": return Math.sinh(a[0]);
+                case "cosh": return Math.cosh(a[0]);
+                case "tanh": return Math.tanh(a[0]);
+                case "ln": return Math.log(a[0]);
+                case "log": return Math.log10(a[0]);
+                case "round": return Math.round(a[0]);
+                case "ceil": return Math.ceil(a[0]);
+                case "floor": return Math.floor(a[0]);
+                case "abs": return Math.abs(a[0]);
+            }
+            double result = name.equals("min") ? Double.POSITIVE_INFINITY : name.equals("max") ? Double.NEGATIVE_INFINITY : 0;
+            for(double value : a) {
+                if(name.equals("min")) result = Math.min(result, value);
+                else if(name.equals("max")) result = Math.max(result, value);
+                else result += value;
+            }
+            return name.equals("avg") ? result / a.length : result;
+        }
+    }
+
+    /*
+     * Parser
+     */
+
+    private static final String[] UNARY_FUNCTIONS = {"sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh", "ln", "log", "round", "ceil", "floor", "abs"};
+    private static final String[] VARIADIC_FUNCTIONS = {"min", "max", "sum", "avg"};
+
+    /**
+     * Recursive descent parser, from the lowest precedence to the highest:
+     * sum := product (('+' | '-') product)*
+     * product := unary (('*' | '/' | '%') unary)*
+     * unary := '-' unary | power
+     * power := primary ('^' primary)*
+     * primary := number | title | constant | function '(' arguments ')' | '(' sum ')'
+     */
+    private static class Parser {
+        private final String formula;
+        private final Map<String, Integer> titles;
+        private final HashSet<Integer> references = new HashSet<>();
+        private int position;
+
+        Parser(String formula, Map<String, Integer> titles) {
+            this.formula = formula;
+            this.titles = titles;
+        }
+
+        Node parse() {
+            Node node = sum();
+            skipWhitespace();
+            if(position != formula.length()) throw error("Unexpected character");
+            return node;
+        }
+
+        private Node sum() {
+            Node node = product();
+            while(true) {
+                if(accept('+')) node = new Binary('+', node, product());
+                else if(accept('-')) node = new Binary('-', node, product());
+                else return node;
+            }
+        }
+
+        private Node product() {
+            Node node = unary();
+            while(true) {
+                if(accept('*')) node = new Binary('*', node, unary());
+                else if(accept('/')) node = new Binary('/', node, unary());
+                else if(accept('%')) node = new Binary('%', node, unary());
+                else return node;
+            }
+        }
+
+        private Node unary() {
+            if(accept('-')) return new Negate(unary());
+            return power();
+        }
+
+        private Node power() {
+            Node node = primary();
+            while(accept('^')) node = new Binary('^', node, primary());
+            return node;
+        }
+
+        private Node primary() {
+            skipWhitespace();
+            if(position == formula.length()) throw error("Unexpected end");
+
+            // Titles first, the longest one wins
+            String title = null;
+            for(String candidate : titles.keySet()) {
+                if(formula.startsWith(candidate, position) && (title == null || candidate.length() > title.length())) title = candidate;
+            }
+            if(title != null) {
+                position += title.length();
+                int ID = titles.get(title);
+                references.add(ID);
+                return new Reference(ID);
+            }
+
+            if(accept('(')) {
+                Node node = sum();
+                expect(')');
+                return node;
+            }
+
+            char c = formula.charAt(position);
+            if(Character.isDigit(c) || c == '.') return number();
+            if(Character.isLetter(c)) return identifier();
+            throw error("Unexpected character");
+        }
+
+        private Node number() {
+            int start = position;
+            boolean decimal = false;
+            while(position < formula.length() && (Character.isDigit(formula.charAt(position)) || formula.charAt(position) == '.')) {
+                if(formula.charAt(position) == '.') {
+                    if(decimal) throw error("Invalid number");
+                    decimal = true;
+                }
+                position++;
+            }
+            if(position - start == 1 && decimal) throw error("Invalid number");
+            return new Constant(Double.parseDouble(formula.substring(start, position)));
+        }
+
+        private Node identifier() {
+            int start = position;
+            while(position < formula.length() && Character.isLetter(formula.charAt(position))) position++;
+            String name = formula.substring(start, position);
+
+            if(name.equals("pi")) return new Constant(Math.PI);
+            if(name.equals("e")) return new Constant(Math.E);
+
+            int min, max;
+            if(name.equals("random")) min = max = 0;
+            else if(contains(UNARY_FUNCTIONS, name)) min = max = 1;
+            else if(contains(VARIADIC_FUNCTIONS, name)) {
+                min = 1;
+                max = Integer.MAX_VALUE;
+            }
+            else {
+                position = start;
+                throw error("Unknown name");
+            }
+
+            expect('(');
+            ArrayList<Node> arguments = new ArrayList<>();
+            if(!accept(')')) {
+                do arguments.add(sum());
+                while(accept(','));
+                expect(')');
+            }
+            if(arguments.size() < min || arguments.size() > max) throw error("Invalid argument count for "+name);
+            return new Function(name, arguments.toArray(new Node[arguments.size()]));
+        }
+
+        private boolean accept(char c) {
+            skipWhitespace();
+            if(position < formula.length() && formula.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if(!accept(c)) throw error("Expected '"+c+"'");
+        }
+
+        private void skipWhitespace() {
+            while(position < formula.length() && Character.isWhitespace(formula.charAt(position))) position++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message+" at position "+position+" in "+formula);
+        }
+
+        private static boolean contains(String[] array, String value) {
+            for(String s : array) if(s.equals(value)) return true;
+            return false;
+        }
+    }
+}
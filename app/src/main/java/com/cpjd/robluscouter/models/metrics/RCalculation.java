@@ -1,10 +1,5 @@
 package com.cpjd.robluscouter.models.metrics;
 
-import android.util.Log;
-
-import com.cpjd.robluscouter.utils.Utils;
-import com.fathzer.soft.javaluator.DoubleEvaluator;
-
 import org.codehaus.jackson.annotate.JsonTypeName;
 
 import java.util.ArrayList;
@@ -64,43 +59,15 @@ public class RCalculation extends RMetric {
     }
 
     /**
-     * Process the equation and returns a value
+     * Process the equation and returns a value. To evaluate every calculation in a tab, or to keep
+     * the values up to date as metrics change, use a {@link CalculationGraph} instead.
      * @param metrics the metric list to process
      * @return the value
      */
     public String getValue(ArrayList<RMetric> metrics) {
-        if(calculation.equals("null")) return "Bad equation";
-
-        try {
-            String equation = calculation;
-
-            // Substitute values in for the metric names
-            for(RMetric metric : metrics) {
-                // Skip the reference to "ourself"
-                if(metric.getTitle().equals(title)) continue;
-
-                if(metric instanceof RCounter || metric instanceof RStopwatch || metric instanceof RSlider) {
-                    equation = equation.replaceAll(metric.getTitle(), metric.toString());
-                }
-                else if(metric instanceof RCalculation) {
-                    // This condition is required or this will overflow recursively
-                    if(equation.contains(metric.getTitle())) equation = equation.replaceAll(metric.getTitle(), ((RCalculation) metric).getValue(metrics));
-                }
-            }
-
-            // Trim
-            equation = equation.trim();
-            equation = equation.replaceAll(" ", "");
-
-            Log.d("RBS", "Evaluating "+equation+". Value: "+new DoubleEvaluator().evaluate(equation));
-
-            // Process
-            lastValue = Utils.round(new DoubleEvaluator().evaluate(equation), 2);
-            return String.valueOf(lastValue);
-        } catch(Exception e) {
-            Log.d("RBS", "bad equation: ", e);
-            return "Bad equation";
-        }
+        CalculationGraph graph = new CalculationGraph(metrics);
+        graph.evaluateAll();
+        return graph.getValue(this);
     }
 
     @Override
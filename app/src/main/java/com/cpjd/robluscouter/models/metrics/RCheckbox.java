@@ -2,7 +2,10 @@ package com.cpjd.robluscouter.models.metrics;
 
 import org.codehaus.jackson.annotate.JsonTypeName;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.Map;
 
 import lombok.Data;
@@ -23,11 +26,15 @@ public class RCheckbox extends RMetric {
      */
     public static final long serialVersionUID = 1L;
     /**
-     * Ordered HashMap containing a title and value for the specified number of elements.
+     * Older versions serialized the values as a LinkedHashMap, so the field is read and written manually
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {new ObjectStreamField("values", Object.class)};
+    /**
+     * Ordered list of titles and values for the specified number of elements.
      * The title is treated as the key, so duplicates aren't allowed.
      */
     @NonNull
-    private LinkedHashMap<String, Boolean> values;
+    private CheckboxValues values;
 
     /**
      * The empty constructor is required for de-serialization
@@ -39,9 +46,9 @@ public class RCheckbox extends RMetric {
      * Creates a RCheckbox model
      * @param ID the unique identifier for this object
      * @param title object title
-     * @param values non-null, no duplicates map containing title and boolean key pairs
+     * @param values non-null, no duplicates list of titles and values
      */
-    private RCheckbox(int ID, String title, LinkedHashMap<String, Boolean> values) {
+    private RCheckbox(int ID, String title, CheckboxValues values) {
         super(ID, title);
         this.values = values;
         if(this.values == null || values.size() == 0) {
@@ -52,16 +59,26 @@ public class RCheckbox extends RMetric {
     @Override
     public String getFormDescriptor() {
         StringBuilder descriptor = new StringBuilder("Type: Checkbox\nItems: (key,defaultValue) ");
-        for(Object o : values.entrySet()) {
-            Map.Entry pair = (Map.Entry) o;
-            descriptor.append("(").append(pair.getKey()).append(", ").append(pair.getValue()).append(")");
+        for(int i = 0; i < values.size(); i++) {
+            descriptor.append("(").append(values.getLabel(i)).append(", ").append(values.isChecked(i)).append(")");
         }
         return descriptor.toString();
     }
 
     @Override
     public RMetric clone() {
-        RCheckbox checkbox = new RCheckbox(ID, title, (LinkedHashMap<String, Boolean>)values.clone());
+        RCheckbox checkbox = new RCheckbox(ID, title, values.copy());
         return checkbox;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.putFields().put("values", values);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        Object values = in.readFields().get("values", null);
+        this.values = values instanceof Map ? CheckboxValues.of((Map<String, Boolean>) values) : (CheckboxValues) values;
+    }
 }
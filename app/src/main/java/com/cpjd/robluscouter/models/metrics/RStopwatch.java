@@ -2,7 +2,13 @@ package com.cpjd.robluscouter.models.metrics;
 
 import org.codehaus.jackson.annotate.JsonTypeName;
 
-import java.util.ArrayList;
+import com.cpjd.robluscouter.utils.DoubleList;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.List;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -20,6 +26,12 @@ public class RStopwatch extends RMetric {
      * Changing this versionUID will render this class incompatible with older versions.
      */
     public static final long serialVersionUID = 1L;
+    /**
+     * Older versions serialized the times as an ArrayList, so the fields are read and written manually
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("time", double.class), new ObjectStreamField("times", Object.class)
+    };
     /**
      * The time, in seconds, currently on this stopwatch
      */
@@ -29,7 +41,7 @@ public class RStopwatch extends RMetric {
      * The time, in seconds, currently on this stopwatch.
      * This is now an array, since laps have been implemented
      */
-    private ArrayList<Double> times;
+    private DoubleList times;
 
     /**
      * The empty constructor is required for de-serialization
@@ -56,11 +68,25 @@ public class RStopwatch extends RMetric {
     @Override
     public RMetric clone() {
         RStopwatch stopwatch = new RStopwatch(ID, title, time);
-        stopwatch.setTimes(times);
+        if(times != null) stopwatch.setTimes(times.copy());
         return stopwatch;
     }
     @Override
     public String toString() {
         return String.valueOf(time);
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("time", time);
+        fields.put("times", times);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        time = fields.get("time", 0.0);
+        Object times = fields.get("times", null);
+        this.times = times instanceof List ? DoubleList.of((List<?>) times) : (DoubleList) times;
+    }
 }
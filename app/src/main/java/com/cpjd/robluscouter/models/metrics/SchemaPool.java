@@ -0,0 +1,97 @@
+package com.cpjd.robluscouter.models.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * SchemaPool shares the parts of a metric that come from the form (its "schema"), across every tab that contains the metric.
+ *
+ * Each tab holds its own copy of every form metric, but only the values differ between tabs. Titles, chooser items,
+ * checkbox labels and calculation formulas are the same in hundreds of tabs, so after interning, each one is held in memory once.
+ *
+ * Schema objects are shared between metrics, so they must never be modified in place (chooser item arrays already
+ * were shared by {@link RChooser#clone()}, so nothing does).
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public final class SchemaPool {
+
+    /**
+     * The pool is cleared once it grows past this, a form only has a few hundred schema strings, so this
+     * only happens if strings that aren't part of a form are interned
+     */
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final HashMap<String, String> strings = new HashMap<>();
+    private static final HashMap<List<String>, String[]> items = new HashMap<>();
+
+    private SchemaPool() {}
+
+    /**
+     * Interns the schema of a list of metrics, the metrics are modified in place
+     * @param metrics the metrics to intern, may be null
+     */
+    public static void intern(ArrayList<RMetric> metrics) {
+        if(metrics == null) return;
+        for(RMetric metric : metrics) intern(metric);
+    }
+
+    /**
+     * Interns the schema of a metric, the metric is modified in place
+     * @param metric the metric to intern, may be null
+     * @return the metric
+     */
+    public static RMetric intern(RMetric metric) {
+        if(metric == null) return null;
+
+        if(metric.getTitle() != null) metric.setTitle(intern(metric.getTitle()));
+
+        if(metric instanceof RChooser) {
+            ((RChooser) metric).setValues(intern(((RChooser) metric).getValues()));
+        } else if(metric instanceof RCheckbox && ((RCheckbox) metric).getValues() != null) {
+            ((RCheckbox) metric).getValues().intern();
+        } else if(metric instanceof RCalculation) {
+            ((RCalculation) metric).setCalculation(intern(((RCalculation) metric).getCalculation()));
+        } else if(metric instanceof RFieldData && ((RFieldData) metric).getData() != null) {
+            for(ArrayList<RMetric> data : ((RFieldData) metric).getData().values()) intern(data);
+        }
+        return metric;
+    }
+
+    /**
+     * @param string the string to intern
+     * @return the pooled instance of the string, null if string is null
+     */
+    public static String intern(String string) {
+        if(string == null) return null;
+        synchronized(strings) {
+            String pooled = strings.get(string);
+            if(pooled != null) return pooled;
+            if(strings.size() >= MAX_ENTRIES) strings.clear();
+            strings.put(string, string);
+            return string;
+        }
+    }
+
+    /**
+     * @param values the chooser items or checkbox labels to intern
+     * @return the pooled instance of the items, null if values is null
+     */
+    public static String[] intern(String[] values) {
+        if(values == null) return null;
+        List<String> key = Arrays.asList(values);
+        synchronized(items) {
+            String[] pooled = items.get(key);
+            if(pooled != null) return pooled;
+            if(items.size() >= MAX_ENTRIES) items.clear();
+        }
+        for(int i = 0; i < values.length; i++) values[i] = intern(values[i]);
+        synchronized(items) {
+            items.put(key, values);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,113 @@
+package com.cpjd.robluscouter.sync;
+
+import android.util.Log;
+
+import com.cpjd.robluscouter.io.CheckoutRepository;
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RForm;
+import com.cpjd.robluscouter.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * FormVerifyTask re-verifies every checkout in /checkouts/ and /mycheckouts/ against a new form, right after it's received.
+ * Otherwise, each team would be verified the first time it's opened in TeamViewer, on the UI thread.
+ *
+ * -Checkouts are verified in parallel on a small worker pool
+ * -Each checkout is verified on a copy read from the disk (the cached checkout might be being edited on the UI thread),
+ * which replaces the cached checkout only if it wasn't edited in the meantime, see {@link CheckoutRepository#replace(int, RCheckout, RCheckout)}
+ * -Progress and the elapsed time are logged
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class FormVerifyTask extends Thread {
+
+    /**
+     * Makes sure that only one task runs at a time, in case forms are received in quick succession
+     */
+    private static final Object lock = new Object();
+
+    private static final int MAX_THREADS = 4;
+
+    private final CheckoutRepository repository;
+
+    private final RForm form;
+
+    public FormVerifyTask(CheckoutRepository repository, RForm form) {
+        this.repository = repository;
+        this.form = form;
+    }
+
+    @Override
+    public void run() {
+        synchronized(lock) {
+            long start = System.currentTimeMillis();
+
+            int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CompletionService<Boolean> completion = new ExecutorCompletionService<>(pool);
+
+            int total = submit(completion, Constants.CHECKOUTS, repository.getCheckouts());
+            total += submit(completion, Constants.MY_CHECKOUTS, repository.getMyCheckouts());
+
+            int verified = 0, done = 0, lastReported = 0;
+            try {
+                for(; done < total; done++) {
+                    if(completion.take().get()) verified++;
+
+                    int percent = (done + 1) * 100 / total;
+                    if(percent >= lastReported + 25) {
+                        lastReported = percent;
+                        Log.d("RSBS", "Re-verifying checkouts against the new form: "+(done + 1)+"/"+total+" ("+percent+"%) after "+(System.currentTimeMillis() - start)+"ms.");
+                    }
+                }
+            } catch(Exception e) {
+                Log.d("RSBS", "Failed to re-verify checkouts against the new form. err msg: "+e.getMessage());
+            } finally {
+                pool.shutdownNow();
+            }
+
+            Log.d("RSBS", "Re-verified "+verified+" of "+total+" checkouts against the new form on "+threads+" threads in "+(System.currentTimeMillis() - start)+"ms.");
+        }
+    }
+
+    /**
+     * Queues a list of checkouts for verification
+     * @return the number of checkouts that were queued
+     */
+    private int submit(CompletionService<Boolean> completion, final int mode, ArrayList<RCheckout> checkouts) {
+        if(checkouts == null) return 0;
+        for(final RCheckout checkout : checkouts) {
+            completion.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return verify(mode, checkout);
+                }
+            });
+        }
+        return checkouts.size();
+    }
+
+    /**
+     * Verifies a copy of the checkout, and saves it if the checkout wasn't edited in the meantime
+     * @return true if the verified checkout was saved
+     */
+    private boolean verify(int mode, RCheckout checkout) {
+        try {
+            RCheckout copy = repository.loadCopy(mode, checkout.getID());
+            // not on the disk yet, it's verified when it's opened instead
+            if(copy == null || copy.getTeam() == null) return false;
+            copy.getTeam().verify(form);
+            return repository.replace(mode, checkout, copy);
+        } catch(Exception e) {
+            Log.d("RSBS", "Failed to re-verify checkout "+checkout.getID()+". err msg: "+e.getMessage());
+            return false;
+        }
+    }
+}
@@ -4,8 +4,10 @@ import android.content.Context;
 import android.util.Log;
 
 import com.cpjd.models.CloudCheckout;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RCheckoutDelta;
 import com.cpjd.robluscouter.models.RSettings;
 import com.cpjd.robluscouter.models.RSyncSettings;
 import com.cpjd.robluscouter.models.RTab;
@@ -14,13 +16,24 @@ import com.cpjd.robluscouter.models.metrics.RMetric;
 import com.cpjd.robluscouter.notifications.Notify;
 import com.cpjd.robluscouter.sync.cloud.AutoCheckoutTask;
 import com.cpjd.robluscouter.utils.HandoffStatus;
+import com.cpjd.robluscouter.utils.IntLongMap;
 import com.cpjd.robluscouter.utils.Utils;
 
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 
 import lombok.Data;
@@ -38,6 +51,7 @@ public class SyncHelper {
     private ObjectMapper mapper;
     private Context context;
     private IO io;
+    private CheckoutRepository repository;
     private RSettings settings;
 
     private MODES mode;
@@ -50,6 +64,7 @@ public class SyncHelper {
         this.context = context;
         this.mode = mode;
         io = new IO(context);
+        repository = CheckoutRepository.getInstance(context);
         this.settings = io.loadSettings();
         mapper = new ObjectMapper().configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
@@ -58,42 +73,266 @@ public class SyncHelper {
      * @param checkouts the checkouts to package
      * @throws Exception if no checkouts are received or a error occurred when serializing them
      * @return a string containing all checkout information
+     * @see #packCheckouts(ArrayList, OutputStream)
      */
     public String packCheckouts(ArrayList<RCheckout> checkouts) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packCheckouts(checkouts, out);
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Packages a list of checkouts and writes them to a stream as a JSON array, one checkout at a time.
+     * Each checkout's pictures are loaded right before it's written and released right after, so only
+     * one checkout's pictures are ever in memory at once.
+     * @param checkouts the checkouts to package
+     * @param out the stream to write to, it will be flushed but not closed
+     * @throws Exception if no checkouts are received or a error occurred when serializing them
+     */
+    public void packCheckouts(ArrayList<RCheckout> checkouts, OutputStream out) throws Exception {
         if(checkouts == null || checkouts.size() == 0) {
             throw new NullPointerException("No checkouts were found to package.");
         }
 
-            // Go through and make sure to add edit history tags to all the RTabs
-            for(RCheckout checkout : checkouts) {
-                if(mode == MODES.BLUETOOTH && checkout.getStatus() != HandoffStatus.COMPLETED) continue;
+        JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        for(RCheckout checkout : checkouts) {
+            // Add edit history tags to all the RTabs and pack images
+            boolean pack = mode != MODES.BLUETOOTH || checkout.getStatus() == HandoffStatus.COMPLETED;
+            if(pack) {
+                tagEdits(checkout);
+                for(RTab tab : checkout.getTeam().getTabs()) packImages(tab.getMetrics());
+            }
+
+            mapper.writeValue(generator, checkout);
+
+            if(pack) for(RTab tab : checkout.getTeam().getTabs()) releaseImages(tab.getMetrics());
+        }
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    /**
+     * Packages only the changes made to a list of checkouts since the server last acknowledged them.
+     * Checkouts that the server has never acknowledged are packaged in full.
+     *
+     * The server must support delta uploads, see RSettings.deltaUploads
+     * @param checkouts the checkouts to package
+     * @param cloudSettings contains the fingerprints of what the server acknowledged
+     * @throws Exception if no checkouts are received or a error occurred when serializing them
+     * @return a string containing a list of RCheckoutDelta
+     */
+    public String packCheckoutDeltas(ArrayList<RCheckout> checkouts, RSyncSettings cloudSettings) throws Exception {
+        if(checkouts == null || checkouts.size() == 0) {
+            throw new NullPointerException("No checkouts were found to package.");
+        }
+
+        ArrayList<RCheckoutDelta> deltas = new ArrayList<>();
+        int changedMetrics = 0;
+
+        for(RCheckout checkout : checkouts) {
+            LinkedHashMap<String, Long> acknowledged = cloudSettings.getUploadedFingerprints().get(checkout.getID());
+            LinkedHashMap<String, Long> fingerprints = fingerprint(checkout);
+
+            RCheckoutDelta delta = new RCheckoutDelta();
+            delta.setID(checkout.getID());
+            delta.setBaseSyncID(cloudSettings.getCheckoutSyncIDs().get(checkout.getID(), 0));
+            delta.setFull(acknowledged == null);
+            delta.setStatus(checkout.getStatus());
+            delta.setNameTag(checkout.getNameTag());
+            delta.setTime(checkout.getTime());
+            delta.setLastEdit(checkout.getTeam().getLastEdit());
+            delta.setTabs(new ArrayList<RCheckoutDelta.TabDelta>());
+            delta.setImages(new LinkedHashMap<String, byte[]>());
+
+            tagEdits(checkout);
+
+            for(RTab tab : checkout.getTeam().getTabs()) {
+                String tabKey = "tab/"+tab.getTitle();
+                ArrayList<RMetric> changed = new ArrayList<>();
+                for(int i = 0; tab.getMetrics() != null && i < tab.getMetrics().size(); i++) {
+                    String metricKey = tabKey+"/"+tab.getMetrics().get(i).getID();
+                    if(acknowledged == null || !fingerprints.get(metricKey).equals(acknowledged.get(metricKey))) changed.add(tab.getMetrics().get(i));
+                }
+
+                if(changed.size() == 0 && acknowledged != null && fingerprints.get(tabKey).equals(acknowledged.get(tabKey))) continue;
 
-                if(checkout.getStatus() == HandoffStatus.COMPLETED && checkout.getTeam().getLastEdit() > 0) {
-                    for(RTab t : checkout.getTeam().getTabs()) {
-                        LinkedHashMap<String, Long> edits = t.getEdits();
-                        if(edits == null) edits = new LinkedHashMap<>();
-                        edits.put(settings.getName(), System.currentTimeMillis());
-                        t.setEdits(edits);
+                changedMetrics += changed.size();
+
+                RCheckoutDelta.TabDelta tabDelta = new RCheckoutDelta.TabDelta();
+                tabDelta.setTitle(tab.getTitle());
+                tabDelta.setWon(tab.isWon());
+                tabDelta.setEdits(tab.getEdits());
+                tabDelta.setMetrics(changed);
+                tabDelta.setGalleries(packImageHashes(changed, delta.getImages(), cloudSettings));
+                delta.getTabs().add(tabDelta);
+            }
+
+            deltas.add(delta);
+        }
+
+        Log.d("RSBS", "Packed deltas for "+deltas.size()+" checkouts with "+changedMetrics+" changed metrics.");
+
+        return mapper.writeValueAsString(deltas);
+    }
+
+    /**
+     * Records the contents of checkouts that were successfully uploaded, so the next delta upload
+     * only has to include changes made after this point
+     * @param checkouts the checkouts that were uploaded
+     * @param cloudSettings the settings to store the fingerprints in, make sure to save them
+     */
+    public void acknowledgeCheckouts(ArrayList<RCheckout> checkouts, RSyncSettings cloudSettings) {
+        for(RCheckout checkout : checkouts) {
+            // Completed checkouts won't be uploaded again, and fingerprints are only needed for delta uploads
+            if(checkout.getStatus() == HandoffStatus.COMPLETED || !settings.isDeltaUploads()) cloudSettings.getUploadedFingerprints().remove(checkout.getID());
+            else cloudSettings.getUploadedFingerprints().put(checkout.getID(), fingerprint(checkout));
+
+            // Every picture was either uploaded or already on the server
+            for(RTab tab : checkout.getTeam().getTabs()) {
+                for(int i = 0; tab.getMetrics() != null && i < tab.getMetrics().size(); i++) {
+                    if(!(tab.getMetrics().get(i) instanceof RGallery) || ((RGallery) tab.getMetrics().get(i)).getPictureIDs() == null) continue;
+                    for(int pictureID : ((RGallery) tab.getMetrics().get(i)).getPictureIDs()) {
+                        String hash = io.getPictureHash(pictureID);
+                        if(hash != null) cloudSettings.getUploadedImageHashes().add(hash);
                     }
                 }
+            }
+        }
+    }
 
-                    /*
-                     * Pack images
-                     */
-                for(RTab tab : checkout.getTeam().getTabs()) {
-                    for(int i = 0; tab.getMetrics() != null && i < tab.getMetrics().size(); i++) {
-                        if(!(tab.getMetrics().get(i) instanceof RGallery)) continue;
+    /**
+     * Removes the fingerprints of checkouts that will never be uploaded again, so they don't pile up in the cloud settings,
+     * which are re-written every service loop
+     * @param cloudSettings the settings to remove the fingerprints from, make sure to save them
+     * @param myCheckouts the checkouts that are still in /mycheckouts/, may be null
+     */
+    public void pruneFingerprints(RSyncSettings cloudSettings, ArrayList<RCheckout> myCheckouts) {
+        if(!settings.isDeltaUploads() || myCheckouts == null) {
+            cloudSettings.getUploadedFingerprints().clear();
+            return;
+        }
+        HashSet<Integer> IDs = new HashSet<>();
+        for(RCheckout checkout : myCheckouts) IDs.add(checkout.getID());
+        cloudSettings.getUploadedFingerprints().keySet().retainAll(IDs);
+    }
 
-                        ((RGallery)tab.getMetrics().get(i)).setImages(new ArrayList<byte[]>());
-                        for(int j = 0; ((RGallery)tab.getMetrics().get(i)).getPictureIDs() != null && j < ((RGallery)tab.getMetrics().get(i)).getPictureIDs().size(); j++) {
-                            ((RGallery)tab.getMetrics().get(i)).getImages().add(io.loadPicture(((RGallery)tab.getMetrics().get(i)).getPictureIDs().get(j)));
-                        }
+    /**
+     * Fingerprints the parts of a checkout that can be uploaded as deltas.
+     *
+     * Keys:
+     * -"checkout": status, name tag, and time
+     * -"tab/[title]": tab fields
+     * -"tab/[title]/[metric ID]": a metric
+     * @param checkout the checkout to fingerprint
+     * @return map of part -> fingerprint
+     */
+    private LinkedHashMap<String, Long> fingerprint(RCheckout checkout) {
+        LinkedHashMap<String, Long> fingerprints = new LinkedHashMap<>();
+        fingerprints.put("checkout", fnv(checkout.getStatus()+"|"+checkout.getNameTag()+"|"+checkout.getTime()));
+        for(RTab tab : checkout.getTeam().getTabs()) {
+            String tabKey = "tab/"+tab.getTitle();
+            fingerprints.put(tabKey, fnv(String.valueOf(tab.isWon())));
+            for(int i = 0; tab.getMetrics() != null && i < tab.getMetrics().size(); i++) {
+                RMetric metric = tab.getMetrics().get(i);
+                String contents;
+                // Image bytes are only attached while packing, so they're left out
+                if(metric instanceof RGallery) contents = "RGallery|"+metric.getID()+"|"+metric.getTitle()+"|"+metric.isModified()+"|"+((RGallery) metric).getPictureIDs();
+                else {
+                    try {
+                        contents = mapper.writeValueAsString(metric);
+                    } catch(Exception e) {
+                        contents = String.valueOf(System.nanoTime()); // can't fingerprint it, so it'll always be uploaded
                     }
                 }
+                fingerprints.put(tabKey+"/"+metric.getID(), fnv(contents));
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * 64-bit FNV-1a hash
+     */
+    private static long fnv(String string) {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < string.length(); i++) {
+            hash ^= string.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Adds edit history tags to all the RTabs of a completed checkout
+     * @param checkout the checkout to tag
+     */
+    private void tagEdits(RCheckout checkout) {
+        if(checkout.getStatus() == HandoffStatus.COMPLETED && checkout.getTeam().getLastEdit() > 0) {
+            for(RTab t : checkout.getTeam().getTabs()) {
+                LinkedHashMap<String, Long> edits = t.getEdits();
+                if(edits == null) edits = new LinkedHashMap<>();
+                edits.put(settings.getName(), System.currentTimeMillis());
+                t.setEdits(edits);
             }
+        }
+    }
 
+    /**
+     * Loads the pictures of any RGallery metrics into the metrics so they can be transferred
+     * @param metrics the metrics to pack images for, may be null
+     */
+    private void packImages(ArrayList<RMetric> metrics) {
+        for(int i = 0; metrics != null && i < metrics.size(); i++) {
+            if(!(metrics.get(i) instanceof RGallery)) continue;
+
+            ((RGallery)metrics.get(i)).setImages(new ArrayList<byte[]>());
+            for(int j = 0; ((RGallery)metrics.get(i)).getPictureIDs() != null && j < ((RGallery)metrics.get(i)).getPictureIDs().size(); j++) {
+                byte[] picture = io.loadPicture(((RGallery)metrics.get(i)).getPictureIDs().get(j));
+                if(picture != null) ((RGallery)metrics.get(i)).getImages().add(picture);
+            }
+        }
+    }
+
+    /**
+     * Lists the pictures of any RGallery metrics by their content hash, instead of attaching the pictures to the metrics.
+     * Only pictures the server hasn't acknowledged yet are added to images.
+     * @param metrics the metrics to pack picture hashes for
+     * @param images the pictures to upload, hash -> picture
+     * @param cloudSettings contains the hashes of the pictures the server acknowledged
+     * @return map of gallery metric ID -> ordered picture hashes, null if there aren't any galleries
+     */
+    private LinkedHashMap<Integer, ArrayList<String>> packImageHashes(ArrayList<RMetric> metrics, LinkedHashMap<String, byte[]> images, RSyncSettings cloudSettings) {
+        LinkedHashMap<Integer, ArrayList<String>> galleries = null;
+        for(RMetric metric : metrics) {
+            if(!(metric instanceof RGallery)) continue;
+
+            ((RGallery) metric).setImages(null);
+            if(galleries == null) galleries = new LinkedHashMap<>();
+            ArrayList<String> hashes = new ArrayList<>();
+            for(int j = 0; ((RGallery) metric).getPictureIDs() != null && j < ((RGallery) metric).getPictureIDs().size(); j++) {
+                int pictureID = ((RGallery) metric).getPictureIDs().get(j);
+                String hash = io.getPictureHash(pictureID);
+                if(hash == null) continue;
+                hashes.add(hash);
+                if(images.containsKey(hash) || cloudSettings.getUploadedImageHashes().contains(hash)) continue;
+                byte[] picture = io.loadPicture(pictureID);
+                if(picture != null) images.put(hash, picture);
+            }
+            galleries.put(metric.getID(), hashes);
+        }
+        return galleries;
+    }
 
-        return mapper.writeValueAsString(checkouts);
+    /**
+     * Releases the pictures that were loaded into any RGallery metrics by {@link #packImages(ArrayList)}
+     * @param metrics the metrics to release images for, may be null
+     */
+    private void releaseImages(ArrayList<RMetric> metrics) {
+        for(int i = 0; metrics != null && i < metrics.size(); i++) {
+            if(metrics.get(i) instanceof RGallery) ((RGallery) metrics.get(i)).setImages(null);
+        }
     }
 
     public void unpackCheckouts(ArrayList<RCheckout> checkouts, RSyncSettings cloudSettings) {
@@ -115,8 +354,52 @@ public class SyncHelper {
             }
         }
 
+        checkoutsUnpacked(refList, cloudSettings);
+    }
+
+    /**
+     * Deserializes and merges a JSON array of checkouts from a stream. Each checkout is merged as soon as it's
+     * parsed, and its pictures are moved to the disk, so the whole array is never in memory at once.
+     * @param in the stream to read from, it won't be closed
+     * @param cloudSettings the sync settings
+     * @throws IOException if the stream couldn't be read or doesn't contain a JSON array
+     */
+    public void unpackCheckouts(InputStream in, RSyncSettings cloudSettings) throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        if(parser.nextToken() != JsonToken.START_ARRAY) throw new IOException("Expected an array of checkouts.");
+
+        ArrayList<RCheckout> refList = new ArrayList<>();
+
+        while(parser.nextToken() == JsonToken.START_OBJECT) {
+            try {
+                RCheckout checkout = mapper.readValue(parser, RCheckout.class);
+                refList.add(checkout);
+
+                // Merge the checkout
+                mergeCheckout(checkout);
+            } catch(JsonProcessingException e) {
+                throw e;
+            } catch(Exception e) {
+                Log.d("RBS", "Failed to unpack checkout");
+            }
+        }
+
+        if(refList.size() == 0) {
+            throw new NullPointerException("No checkouts to unpack.");
+        }
+
+        checkoutsUnpacked(refList, cloudSettings);
+    }
+
+    /**
+     * Called after a list of checkouts has been merged
+     * @param checkouts the checkouts that were merged
+     * @param cloudSettings the sync settings
+     */
+    private void checkoutsUnpacked(ArrayList<RCheckout> checkouts, RSyncSettings cloudSettings) {
         if(mode != MODES.BLUETOOTH) {
-            new AutoCheckoutTask(null, io, settings, refList, false).start();
+            new AutoCheckoutTask(null, io, repository, settings, checkouts, false).start();
         }
 
         if(mode == MODES.BLUETOOTH) {
@@ -162,7 +445,7 @@ public class SyncHelper {
             }
         }
 
-        new AutoCheckoutTask(null, io, settings, refList, false).start();
+        new AutoCheckoutTask(null, io, repository, settings, refList, false).start();
 
         // Send a multi-notification instead of spamming the user if they received 6 or more checkouts at once
         if(mode == MODES.NETWORK) {
@@ -198,17 +481,19 @@ public class SyncHelper {
                         for(int i = 0; i < ((RGallery) metric).getImages().size(); i++) {
                             ((RGallery) metric).getPictureIDs().add(io.savePicture(((RGallery) metric).getImages().get(i)));
                         }
+                        // The pictures are on the disk now, don't keep a second copy of them inside the checkout
+                        ((RGallery) metric).setImages(null);
                     }
                 }
             }
         }
 
-        io.saveCheckout(checkout);
+        repository.saveCheckout(checkout);
 
         Log.d("RBS-Service", "Merged the team: "+checkout.getTeam().getName());
     }
 
-    public String packSyncIDs(LinkedHashMap<Integer, Long> checkoutSyncIDs) throws Exception {
+    public String packSyncIDs(IntLongMap checkoutSyncIDs) throws Exception {
 
         // This is how the current sync IDs will be packaged to the server
         @Data
@@ -222,9 +507,9 @@ public class SyncHelper {
             }
         }
 
-        ArrayList<CheckoutSyncID> checkoutSyncPacks = new ArrayList<>();
-        for(Object key : checkoutSyncIDs.keySet()) {
-            checkoutSyncPacks.add(new CheckoutSyncID(Integer.parseInt(key.toString()), checkoutSyncIDs.get(key)));
+        ArrayList<CheckoutSyncID> checkoutSyncPacks = new ArrayList<>(checkoutSyncIDs.size());
+        for(int i = 0; i < checkoutSyncIDs.size(); i++) {
+            checkoutSyncPacks.add(new CheckoutSyncID(checkoutSyncIDs.keyAt(i), checkoutSyncIDs.valueAt(i)));
         }
 
         return mapper.writeValueAsString(checkoutSyncPacks);
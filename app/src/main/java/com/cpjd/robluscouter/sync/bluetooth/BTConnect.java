@@ -6,6 +6,7 @@ import android.bluetooth.BluetoothDevice;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RForm;
@@ -13,16 +14,22 @@ import com.cpjd.robluscouter.models.RSettings;
 import com.cpjd.robluscouter.models.RSyncSettings;
 import com.cpjd.robluscouter.models.RUI;
 import com.cpjd.robluscouter.notifications.Notify;
+import com.cpjd.robluscouter.sync.FormVerifyTask;
 import com.cpjd.robluscouter.sync.SyncHelper;
 import com.cpjd.robluscouter.utils.HandoffStatus;
 import com.cpjd.robluscouter.utils.Utils;
 
 import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.type.TypeFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * Manages a Bluetooth connection with the server and sending data to it.
@@ -48,12 +55,15 @@ import java.util.List;
  * -"scoutingData" - Received by Master, the following string should be deserialized as a RCheckouts array and merged
  * -"checkouts" - Received by Scouter, the following string should be deserialized as a RCheckouts array and merged
  * -"success-<original tag>" - signifies that the device we are connected to successfully processed our request and data
+ * -"PROTOCOL" - asks the server to switch to the framed protocol, servers that support it answer with the same message
+ *
+ * If the server supports it, messages are sent with the framed protocol instead, see {@link FramedTransport}.
  *
  * @version 1
  * @since 4.0.0
  * @author Will Davies
  */
-public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
+public class BTConnect extends Thread implements Bluetooth.BluetoothListener, Bluetooth.MessageStreamListener, Bluetooth.TransferListener {
 
     /**
      * Roblu uses a Bluetooth wrapper library to simplify connections and lessen the amount of bugs.
@@ -101,6 +111,35 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
 
     private ProgressDialog pd;
 
+    /**
+     * How long to wait for the server to agree to the framed protocol, older versions of Roblu Master don't answer
+     */
+    private static final long NEGOTIATION_TIMEOUT = 3000;
+    /**
+     * How many times to reconnect to the server if the connection drops in the middle of a framed transfer
+     */
+    private static final int MAX_RECONNECTS = 3;
+
+    /**
+     * The MAC address of the device that's currently connected to
+     */
+    private String currentMAC;
+    private boolean framed;
+    private int reconnects;
+    private boolean done;
+    private boolean scoutingDataSent;
+    /**
+     * Headers of the messages that have been received from the server, requests that already have a response aren't sent again after reconnecting
+     */
+    private final Set<String> responses = Collections.synchronizedSet(new HashSet<String>());
+
+    /*
+     * Progress reporting
+     */
+    private String progressHeader;
+    private long progressStarted;
+    private long progressUpdated;
+
     /**
      * Creates a BTConnect object for syncing to a Bluetooth device
      * @param bluetooth {@link #bluetooth}
@@ -111,6 +150,8 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
         this.settings = settings;
 
         this.bluetooth.setListener(this);
+        this.bluetooth.setStreamListener(this);
+        this.bluetooth.setTransferListener(this);
     }
 
     /**
@@ -149,7 +190,8 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
     private boolean connectToNextDevice() {
         if(index >= bluetoothServerMACs.size()) return false;
         Log.d("RSBS", "Attempting to connect to device: "+bluetoothServerMACs.get(index));
-        bluetooth.connectToDevice(bluetoothServerMACs.get(index));
+        currentMAC = bluetoothServerMACs.get(index);
+        bluetooth.connectToDevice(currentMAC);
         index++;
         return true;
     }
@@ -157,46 +199,71 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
     /**
      * This method should be called after a successful connection, it will perform the actual syncing of data
      *
+     * If the server supports the framed protocol and the connection drops, this is called again after reconnecting,
+     * and only the parts of the sync that haven't completed yet are repeated.
+     *
      * This code is loosely mirrored from
      * @see com.cpjd.robluscouter.sync.cloud.Service
      */
     private void transfer() {
+        framed = bluetooth.negotiateFraming(NEGOTIATION_TIMEOUT);
+        Log.d("RSBS", framed ? "Using the framed Bluetooth protocol." : "The server doesn't support the framed Bluetooth protocol, using text messages.");
+
         // Send completed
         IO io = new IO(bluetooth.getActivity());
-        ArrayList<RCheckout> checkouts = io.loadPendingCheckouts();
-        if(checkouts != null) {
+        final ArrayList<RCheckout> checkouts = scoutingDataSent ? null : io.loadPendingCheckouts();
+        if(scoutingDataSent) Log.d("RSBS", "Scouting data was already sent before reconnecting.");
+        else if(checkouts != null) {
             try {
-                bluetooth.send("SCOUTING_DATA", new SyncHelper(bluetooth.getActivity(), SyncHelper.MODES.BLUETOOTH).packCheckouts(checkouts));
+                final SyncHelper syncHelper = new SyncHelper(bluetooth.getActivity(), SyncHelper.MODES.BLUETOOTH);
+                bluetooth.send("SCOUTING_DATA", new Bluetooth.MessageWriter() {
+                    @Override
+                    public void write(OutputStream out) throws Exception {
+                        syncHelper.packCheckouts(checkouts, out);
+                    }
+                });
                 /*
                  * Delete the checkouts from "MyCheckouts"
                  */
+                CheckoutRepository repository = CheckoutRepository.getInstance(bluetooth.getActivity());
                 for(RCheckout ch : checkouts) {
-                    io.saveCheckout(ch);
+                    repository.saveCheckout(ch);
 
-                    if(ch.getStatus() == HandoffStatus.COMPLETED) io.deleteMyCheckout(ch.getID());
+                    if(ch.getStatus() == HandoffStatus.COMPLETED) repository.deleteMyCheckout(ch.getID());
                 }
 
+                scoutingDataSent = true;
+
                 Notify.notifyNoAction(bluetooth.getActivity(), "Sent checkouts successfully", "Successfully sent "+checkouts.size()+" checkouts to target device over Bluetooth.");
             } catch(Exception e) {
                 Log.d("RSBS", "Failed to send completed checkouts. "+e.getMessage());
+                // The connection dropped, the checkouts will be resumed after reconnecting
+                if(framed && !bluetooth.isFramed()) return;
             }
-        } else bluetooth.send("SCOUTING_DATA", "noParams");
+        } else {
+            bluetooth.send("SCOUTING_DATA", "noParams");
+            scoutingDataSent = true;
+        }
 
-        bluetooth.send("requestForm", "noParams");
-        bluetooth.send("requestUI", "noParams");
-        bluetooth.send("requestCheckouts", "time:"+new IO(bluetooth.getActivity()).loadCloudSettings().getLastBluetoothCheckoutSync());
-        bluetooth.send("requestNumber", "noParams");
-        bluetooth.send("requestEventName", "noParams");
+        if(!responses.contains("FORM")) bluetooth.send("requestForm", "noParams");
+        if(!responses.contains("UI")) bluetooth.send("requestUI", "noParams");
+        if(!responses.contains("CHECKOUTS")) bluetooth.send("requestCheckouts", "time:"+new IO(bluetooth.getActivity()).loadCloudSettings().getLastBluetoothCheckoutSync());
+        if(!responses.contains("NUMBER")) bluetooth.send("requestNumber", "noParams");
+        if(!responses.contains("EVENT_NAME")) bluetooth.send("requestEventName", "noParams");
     }
 
     @Override
     public void messageReceived(String header, String message) {
         IO io = new IO(bluetooth.getActivity());
+        responses.add(header);
 
         if(header.equals("FORM")) {
             try {
                 RForm form = mapper.readValue(message, RForm.class);
+                RForm previousForm = io.loadForm();
                 io.saveForm(form);
+                // Re-verify the stored checkouts now, instead of when they're opened
+                if(!form.equals(previousForm)) new FormVerifyTask(CheckoutRepository.getInstance(bluetooth.getActivity()), form).start();
 
                 Log.d("RSBS", "Received form from Bluetooth");
             } catch(Exception e) {
@@ -213,21 +280,6 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
                 Log.d("RSBS", "Failed to deserialized UI from Bluetooth.");
             }
         }
-        else if(header.equals("CHECKOUTS")) {
-            Log.d("RBS", "Received checkouts list from Roblu Master");
-
-            try {
-                TypeFactory typeFactory = mapper.getTypeFactory();
-                List<RCheckout> items = mapper.readValue(message, typeFactory.constructCollectionType(List.class, RCheckout.class));
-                SyncHelper syncHelper = new SyncHelper(bluetooth.getActivity(), SyncHelper.MODES.BLUETOOTH);
-                ArrayList<RCheckout> checks = new ArrayList<>();
-                checks.addAll(items);
-                syncHelper.unpackCheckouts(checks, io.loadCloudSettings());
-            } catch(Exception e) {
-                e.printStackTrace();
-                Log.d("RSBS", "Failed to process checkouts received over Bluetooth: "+e.getMessage());
-            }
-        }
         else if(header.equals("NUMBER")) {
             RSyncSettings cloudSettings = io.loadCloudSettings();
             cloudSettings.setTeamNumber(Integer.parseInt(message));
@@ -250,6 +302,7 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
         }
         else if(header.equals("DONE")) {
             Log.d("RSBS", "Received done header from Roblu Master. Terminating connection.");
+            done = true;
 
             Utils.requestUIRefresh(bluetooth.getActivity(), true, false);
 
@@ -257,6 +310,29 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
         }
     }
 
+    @Override
+    public boolean isStreamed(String header) {
+        return header.equals("CHECKOUTS");
+    }
+
+    /**
+     * The checkouts list is the largest message, so it's merged one checkout at a time as it's received
+     */
+    @Override
+    public void messageReceived(String header, InputStream message) throws IOException {
+        if(header.equals("CHECKOUTS")) {
+            Log.d("RBS", "Received checkouts list from Roblu Master");
+            responses.add(header);
+
+            try {
+                new SyncHelper(bluetooth.getActivity(), SyncHelper.MODES.BLUETOOTH).unpackCheckouts(message, new IO(bluetooth.getActivity()).loadCloudSettings());
+            } catch(Exception e) {
+                e.printStackTrace();
+                Log.d("RSBS", "Failed to process checkouts received over Bluetooth: "+e.getMessage());
+            }
+        }
+    }
+
     @Override
     public void deviceConnected(final BluetoothDevice device) {
         Log.d("RSBS", "Connected to "+device.getName());
@@ -268,12 +344,46 @@ public class BTConnect extends Thread implements Bluetooth.BluetoothListener {
             }
         });
 
-        transfer();
+        // Framed transfers wait for acknowledgements, so they can't run on the UI thread
+        new Thread() {
+            @Override
+            public void run() {
+                transfer();
+            }
+        }.start();
     }
 
     @Override
     public void deviceDisconnected(BluetoothDevice device, String reason) {
+        if(done || !framed || !Bluetooth.CONNECTION_LOST.equals(reason) || reconnects >= MAX_RECONNECTS) return;
 
+        reconnects++;
+        Log.d("RSBS", "Lost connection to "+currentMAC+", reconnecting ("+reconnects+"/"+MAX_RECONNECTS+")...");
+        pd.setMessage("Connection lost, reconnecting...");
+        bluetooth.connectToDevice(currentMAC);
+    }
+
+    @Override
+    public void transferProgress(String header, long transferred, long total, boolean sending) {
+        long now = System.currentTimeMillis();
+        if(!header.equals(progressHeader)) {
+            progressHeader = header;
+            progressStarted = now;
+            progressUpdated = 0;
+        }
+        // Don't flood the UI thread, the dialog is updated at most 4 times a second
+        if(transferred < total && now - progressUpdated < 250) return;
+        progressUpdated = now;
+
+        long elapsed = Math.max(1, now - progressStarted);
+        final String message = (sending ? "Sending " : "Receiving ")+header.toLowerCase().replace('_', ' ')+"... "+(total == 0 ? 100 : transferred * 100 / total)+"% ("+
+                String.format(Locale.US, "%.1f", transferred / 1.024 / elapsed)+" KB/s)";
+        bluetooth.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                pd.setMessage(message);
+            }
+        });
     }
 
     @Override
@@ -9,11 +9,15 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.support.annotation.NonNull;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.UUID;
@@ -78,6 +82,34 @@ public class Bluetooth {
      */
     private OutputStream out;
 
+    /**
+     * Optional listener that receives certain messages as a stream instead of a String
+     */
+    private MessageStreamListener streamListener;
+
+    /**
+     * Optional listener that receives progress updates for messages sent with the framed protocol
+     */
+    private TransferListener transferListener;
+
+    /**
+     * Reason given to {@link BluetoothListener#deviceDisconnected(BluetoothDevice, String)} when the connection
+     * drops unexpectedly, as opposed to being disconnected with {@link #disconnect()}
+     */
+    public static final String CONNECTION_LOST = "Connection lost.";
+
+    /**
+     * Transfers messages once both devices agree to the framed protocol, it's kept across
+     * connections so interrupted messages can be resumed
+     */
+    private volatile FramedTransport transport;
+    /**
+     * True if the current connection uses the framed protocol, read by the sending and connection threads
+     */
+    private volatile boolean framed;
+    private boolean negotiating;
+    private boolean disconnecting;
+
     /**
      * This if(listener != null) listener can be attached to a calling activity and will receive status updates
      * about what is going on in this class
@@ -92,6 +124,47 @@ public class Bluetooth {
         void discoveryStopped();
     }
 
+    /**
+     * A MessageStreamListener receives the content of certain messages as a stream, instead of as one String.
+     * Large messages, like a list of checkouts, can be processed as they arrive without ever holding the whole message in memory.
+     */
+    public interface MessageStreamListener {
+        /**
+         * @param header the header of the message that's being received
+         * @return true if the message should be passed to {@link #messageReceived(String, InputStream)}
+         */
+        boolean isStreamed(String header);
+
+        /**
+         * Called on the connection thread, the stream ends at the end of the message
+         * @param header the header of the message
+         * @param message the content of the message
+         * @throws IOException if the message couldn't be read, the rest of the message will be skipped
+         */
+        void messageReceived(String header, InputStream message) throws IOException;
+    }
+
+    /**
+     * Writes the content of a message directly to the connection
+     */
+    public interface MessageWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+    /**
+     * Receives progress updates about messages, only available with the framed protocol
+     */
+    public interface TransferListener {
+        /**
+         * Called on a background thread every time a chunk is sent or received
+         * @param header the header of the message
+         * @param transferred the number of bytes transferred so far
+         * @param total the size of the message in bytes
+         * @param sending true if this device is sending the message, false if it's receiving it
+         */
+        void transferProgress(String header, long transferred, long total, boolean sending);
+    }
+
     /**
      * Creates a Bluetooth Object
      * @param activity reference to the parent activity where IntentFilter should be registered to
@@ -169,12 +242,21 @@ public class Bluetooth {
      * Disconnects from the current connection if one is found
      */
     public void disconnect() {
+        disconnecting = true;
         if(acceptThread != null) {
             acceptThread.cancel();
         }
         if(connectThread != null) {
             connectThread.cancel();
         }
+        // Nothing is resumed after a deliberate disconnect, so the transport and its delivery thread are discarded
+        synchronized(this) {
+            framed = false;
+            if(transport != null) {
+                transport.close();
+                transport = null;
+            }
+        }
         device = null;
     }
 
@@ -225,6 +307,7 @@ public class Bluetooth {
      * @param macAddress the Bluetooth MAC address of the target device
      */
     public void connectToDevice(String macAddress) {
+        disconnecting = false;
         ConnectThread connectThread = new ConnectThread(bluetoothAdapter.getRemoteDevice(macAddress));
         connectThread.start();
     }
@@ -243,6 +326,25 @@ public class Bluetooth {
      * @param message the message to send to the server
      */
     public void send(final String header,final String message) {
+        if(framed) {
+            try {
+                send(header, new MessageWriter() {
+                    @Override
+                    public void write(OutputStream out) throws Exception {
+                        out.write(message.getBytes("UTF-8"));
+                    }
+                });
+            } catch(Exception e) {
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(listener != null) listener.deviceDisconnected(device, "Bluetooth: Failed to send message "+message+" with header "+header+".");
+                    }
+                });
+            }
+            return;
+        }
+
         try {
             String toSend = header+":"+message+"\n";
             if(out != null) out.write(toSend.getBytes());
@@ -256,6 +358,226 @@ public class Bluetooth {
         }
     }
 
+    /**
+     * Sends a message to the target device, the content of the message is written straight to the connection
+     * instead of being built as a String first. The content must not contain any new lines.
+     *
+     * With the framed protocol, this blocks until the other device has received the entire message, so it must not be called from the UI thread.
+     * If the connection drops, sending a message with the same header after reconnecting resumes it.
+     * @param header the tag of the message, sort of a Meta identifier
+     * @param writer writes the content of the message
+     * @throws Exception if the message couldn't be written, the message is still terminated so the next message can be read
+     */
+    public void send(final String header, MessageWriter writer) throws Exception {
+        if(out == null) return;
+        FramedTransport transport = this.transport;
+        if(framed && transport != null) {
+            transport.send(header, writer);
+            return;
+        }
+        OutputStream stream = new BufferedOutputStream(out) {
+            @Override
+            public void close() throws IOException {
+                flush(); // the writer must not close the connection
+            }
+        };
+        try {
+            stream.write((header+":").getBytes());
+            writer.write(stream);
+        } finally {
+            stream.write('\n');
+            stream.flush();
+        }
+    }
+
+    /**
+     * Asks the connected device to switch to the framed protocol (see {@link FramedTransport}), which transfers large messages in
+     * acknowledged chunks, reports progress, and can resume after a dropped connection. Devices that don't support it
+     * won't answer, in which case the newline terminated text protocol keeps being used.
+     *
+     * Nothing else may be sent while this is waiting, and it must not be called from the UI thread.
+     * @param timeout how long to wait for the other device to agree, in milliseconds
+     * @return true if the framed protocol is now being used
+     */
+    public boolean negotiateFraming(long timeout) {
+        if(out == null) return false;
+        synchronized(this) {
+            if(framed) return true;
+            if(transport == null) transport = new FramedTransport(new File(activity.getCacheDir(), "bluetooth"), new FramedTransport.Listener() {
+                @Override
+                public void messageReceived(String header, File content) {
+                    framedMessageReceived(header, content);
+                }
+
+                @Override
+                public void transferProgress(String header, long transferred, long total, boolean sending) {
+                    if(transferListener != null) transferListener.transferProgress(header, transferred, total, sending);
+                }
+            });
+            negotiating = true;
+        }
+
+        send("PROTOCOL", FramedTransport.VERSION);
+
+        synchronized(this) {
+            long deadline = System.currentTimeMillis() + timeout;
+            while(!framed && System.currentTimeMillis() < deadline) {
+                try {
+                    wait(Math.max(1, deadline - System.currentTimeMillis()));
+                } catch(InterruptedException e) {
+                    break;
+                }
+            }
+            negotiating = false;
+            return framed;
+        }
+    }
+
+    /**
+     * Passes a message received with the framed protocol to the listeners
+     */
+    private void framedMessageReceived(String header, File content) {
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(content));
+            try {
+                if(streamListener != null && streamListener.isStreamed(header)) streamListener.messageReceived(header, in);
+                else if(listener != null) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    byte[] bytes = new byte[8192];
+                    int read;
+                    while((read = in.read(bytes)) != -1) buffer.write(bytes, 0, read);
+                    listener.messageReceived(header, buffer.toString("UTF-8"));
+                }
+            } finally {
+                in.close();
+            }
+        } catch(IOException e) {
+            if(listener != null) listener.errorOccurred("Bluetooth: Failed to read message "+header+".");
+        }
+    }
+
+    /**
+     * Must be called by the connection threads when a connection ends
+     * @param device the device that was connected
+     */
+    private void connectionClosed(final BluetoothDevice device) {
+        synchronized(this) {
+            framed = false;
+            if(transport != null) transport.detach();
+        }
+        if(disconnecting) return;
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if(listener != null) listener.deviceDisconnected(device, CONNECTION_LOST);
+            }
+        });
+    }
+
+    /**
+     * Reads messages from a connection until it's closed. Each message is "[header]:[content]\n".
+     * @param socketIn the input stream of the connection
+     * @throws IOException if the connection couldn't be read
+     */
+    private void readMessages(InputStream socketIn) throws IOException {
+        InputStream in = new BufferedInputStream(socketIn);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int b;
+        while(true) {
+            buffer.reset();
+            while((b = in.read()) != -1 && b != ':' && b != '\n') buffer.write(b);
+            if(b == -1) return;
+            String header = buffer.toString("UTF-8");
+
+            if(b == ':' && streamListener != null && streamListener.isStreamed(header)) {
+                MessageInputStream message = new MessageInputStream(in);
+                try {
+                    streamListener.messageReceived(header, message);
+                } catch(IOException ignored) {
+                    // The rest of the message is skipped below, if the connection itself failed, that will throw too
+                }
+                if(message.skipRest()) return;
+                continue;
+            }
+
+            buffer.reset();
+            if(b == ':') {
+                while((b = in.read()) != -1 && b != '\n') buffer.write(b);
+            }
+            String content = buffer.toString("UTF-8");
+            if(content.endsWith("\r")) content = content.substring(0, content.length() - 1);
+
+            // The other device agreed to the framed protocol, everything after this is frames
+            if(header.equals("PROTOCOL") && content.equals(FramedTransport.VERSION)) {
+                FramedTransport transport = null;
+                synchronized(this) {
+                    if(negotiating && this.transport != null) {
+                        transport = this.transport;
+                        transport.attach(out);
+                        framed = true;
+                        notifyAll();
+                    }
+                }
+                if(transport != null) {
+                    transport.read(in);
+                    return;
+                }
+                continue;
+            }
+
+            if(listener != null) listener.messageReceived(header, content);
+
+            if(b == -1) return;
+        }
+    }
+
+    /**
+     * Reads the content of one message, ends at the new line that terminates the message
+     */
+    private static class MessageInputStream extends InputStream {
+        private final InputStream in;
+        private boolean ended;
+        private boolean sourceEnded;
+
+        MessageInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(ended) return -1;
+            int b = in.read();
+            if(b == -1 || b == '\n') {
+                ended = true;
+                sourceEnded = b == -1;
+                return -1;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) throws IOException {
+            if(length == 0) return 0;
+            int count = 0;
+            while(count < length) {
+                int b = read();
+                if(b == -1) break;
+                bytes[offset + count++] = (byte) b;
+                if(in.available() == 0) break;
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        /**
+         * Skips whatever is left of the message
+         * @return true if the connection was closed
+         */
+        boolean skipRest() throws IOException {
+            while(read() != -1);
+            return sourceEnded;
+        }
+    }
+
     /**
      * AcceptThread acts as the server method for obtaining a connection.
      */
@@ -314,14 +636,7 @@ public class Bluetooth {
                     try {
                         in = socket.getInputStream();
 
-                        BufferedReader br = new BufferedReader(new InputStreamReader(in));
-                        String msg;
-                        while((msg = br.readLine()) != null) {
-                            final String header = msg.split(":")[0];
-                            final String content = msg.substring(header.length() + 1);
-
-                            if(listener != null) listener.messageReceived(header, content);
-                        }
+                        readMessages(in);
                     } catch(IOException e) {
                         activity.runOnUiThread(new Runnable() {
                             @Override
@@ -433,14 +748,7 @@ public class Bluetooth {
             try {
                 in = socket.getInputStream();
 
-                BufferedReader br = new BufferedReader(new InputStreamReader(in));
-                String msg;
-                while((msg = br.readLine()) != null) {
-                    final String header = msg.split(":")[0];
-                    final String content = msg.substring(header.length() + 1);
-
-                    listener.messageReceived(header, content);
-                }
+                readMessages(in);
             } catch(IOException e) {
                 activity.runOnUiThread(new Runnable() {
                     @Override
@@ -449,6 +757,8 @@ public class Bluetooth {
                     }
                 });
             }
+
+            connectionClosed(mmDevice);
         }
 
         // Closes the client socket and causes the thread to finish.
@@ -0,0 +1,420 @@
+package com.cpjd.robluscouter.sync.bluetooth;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * FramedTransport is the binary protocol that's used over a Bluetooth connection once both devices agree to it
+ * (see {@link Bluetooth#negotiateFraming(long)}). It replaces newline terminated text messages, which had to be held
+ * in memory in their entirety and couldn't report progress or survive a dropped connection.
+ *
+ * Every message is split into chunks, and each frame is:
+ * [byte type][long message ID][int payload length][payload][int CRC32 of the payload]
+ *
+ * Frame types:
+ * -START [long total length][UTF header] - a message is about to be sent, the receiver answers with RESUME
+ * -RESUME [long offset] - the receiver already has everything before offset, the sender continues from there
+ * -DATA [long offset][bytes] - a chunk of a message
+ * -ACK [long offset] - the receiver has everything before offset
+ *
+ * Both sides spool messages to the cache directory. If the connection drops, the sender keeps the interrupted message,
+ * and sending a message with the same header after reconnecting resumes it from wherever the receiver left off.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+class FramedTransport {
+
+    /**
+     * Sent with the "PROTOCOL" header to agree to use this protocol
+     */
+    static final String VERSION = "framed-1";
+
+    private static final byte START = 1;
+    private static final byte RESUME = 2;
+    private static final byte DATA = 3;
+    private static final byte ACK = 4;
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    /**
+     * Number of chunks that can be sent without being acknowledged
+     */
+    private static final int WINDOW = 4;
+    private static final long TIMEOUT = 15000;
+    /**
+     * How long to wait before asking for the same offset again, long enough for the chunks already in flight to arrive
+     */
+    private static final long RESUME_INTERVAL = 1000;
+    /**
+     * If nothing is acknowledged for this long, the sender re-sends everything after the last acknowledged offset, in case
+     * the last chunks of a message were lost and there are no later chunks to make the receiver ask for them
+     */
+    private static final long RETRANSMIT_INTERVAL = 3000;
+
+    interface Listener {
+        /**
+         * Called on a background thread, in the order messages were received
+         * @param header the header of the message
+         * @param content file containing the content of the message, it's deleted after this returns
+         */
+        void messageReceived(String header, File content);
+        void transferProgress(String header, long transferred, long total, boolean sending);
+    }
+
+    private final File directory;
+    private final Listener listener;
+    private final Random random = new Random();
+    /**
+     * Received messages are processed here, so the reading thread can keep processing acknowledgements in the meantime
+     */
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor();
+
+    private final Object sendLock = new Object();
+    private DataOutputStream out;
+    private boolean closed = true;
+
+    /**
+     * The message that's currently being sent, guarded by this
+     */
+    private Outgoing outgoing;
+    /**
+     * A message that was interrupted by a dropped connection, guarded by sendLock
+     */
+    private Outgoing interrupted;
+    /**
+     * Messages that are being received, keyed by message ID, only accessed by the reading thread
+     */
+    private final HashMap<Long, Incoming> incoming = new HashMap<>();
+
+    private static class Outgoing {
+        long ID;
+        String header;
+        File file;
+        long total;
+        long acked = -1;
+        long rewind = -1;
+    }
+
+    private static class Incoming {
+        String header;
+        File file;
+        long total;
+        long received;
+        long requested = -1;
+        long requestedAt;
+    }
+
+    FramedTransport(File directory, Listener listener) {
+        this.directory = directory;
+        this.listener = listener;
+        if(!directory.exists()) if(directory.mkdirs()) Log.d("RSBS", "Successfully created Bluetooth transfer directory.");
+    }
+
+    /**
+     * Starts using a new connection
+     * @param out the output stream of the connection
+     */
+    synchronized void attach(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        closed = false;
+    }
+
+    /**
+     * Must be called when the connection is lost, so any waiting sender fails quickly
+     */
+    synchronized void detach() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Detaches the connection and stops the delivery thread once the messages that were already received are processed,
+     * the transport can't be used after this
+     */
+    synchronized void close() {
+        detach();
+        delivery.shutdown();
+    }
+
+    /**
+     * Sends a message and waits until the receiver has acknowledged all of it
+     * @param header the header of the message
+     * @param writer writes the content of the message
+     * @throws Exception if the message couldn't be written or sent, if the connection dropped, the message can be resumed
+     */
+    void send(String header, Bluetooth.MessageWriter writer) throws Exception {
+        synchronized(sendLock) {
+            Outgoing message;
+            if(interrupted != null && interrupted.header.equals(header)) {
+                message = interrupted;
+                Log.d("RSBS", "Resuming interrupted Bluetooth message "+header+".");
+            } else {
+                if(interrupted != null) delete(interrupted.file);
+                message = spool(header, writer);
+            }
+            interrupted = null;
+
+            try {
+                transmit(message);
+                delete(message.file);
+            } catch(IOException e) {
+                interrupted = message;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads frames from the connection until it's closed
+     * @param in the input stream of the connection
+     * @throws IOException if the connection couldn't be read
+     */
+    void read(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        int type;
+        while((type = din.read()) != -1) {
+            long ID = din.readLong();
+            int length = din.readInt();
+            if(length < 0 || length > CHUNK_SIZE + 8) throw new IOException("Received an invalid frame.");
+            byte[] payload = new byte[length];
+            din.readFully(payload);
+            int crc = din.readInt();
+            DataInputStream frame = new DataInputStream(new ByteArrayInputStream(payload));
+
+            if(crc != crc(payload, 0, length)) {
+                Log.d("RSBS", "Received a corrupted Bluetooth frame.");
+                Incoming message = incoming.get(ID);
+                if(type == DATA && message != null) requestResume(ID, message);
+                continue;
+            }
+
+            if(type == START) {
+                long total = frame.readLong();
+                String header = frame.readUTF();
+                Incoming message = incoming.get(ID);
+                if(message == null || message.total != total || !message.header.equals(header)) {
+                    message = new Incoming();
+                    message.header = header;
+                    message.total = total;
+                    message.file = new File(directory, "in-"+ID+".part");
+                    delete(message.file);
+                    incoming.put(ID, message);
+                }
+                message.requested = message.received;
+                message.requestedAt = System.currentTimeMillis();
+                writeFrame(RESUME, ID, offsetPayload(message.received));
+                if(message.received == message.total) received(ID, message);
+            }
+            else if(type == DATA) {
+                Incoming message = incoming.get(ID);
+                if(message == null) continue;
+                long offset = frame.readLong();
+                if(offset != message.received) {
+                    // A chunk was lost or corrupted, duplicates of chunks that were already received are ignored
+                    if(offset > message.received) requestResume(ID, message);
+                    continue;
+                }
+                FileOutputStream fos = new FileOutputStream(message.file, true);
+                fos.write(payload, 8, length - 8);
+                fos.close();
+                message.received += length - 8;
+                writeFrame(ACK, ID, offsetPayload(message.received));
+                listener.transferProgress(message.header, message.received, message.total, false);
+                if(message.received == message.total) received(ID, message);
+            }
+            else if(type == RESUME || type == ACK) {
+                long offset = frame.readLong();
+                synchronized(this) {
+                    if(outgoing == null || outgoing.ID != ID) continue;
+                    if(type == RESUME) {
+                        if(outgoing.acked < 0) outgoing.acked = offset;
+                        else outgoing.rewind = offset;
+                    }
+                    if(offset > outgoing.acked) outgoing.acked = offset;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Writes the content of a message to a file, so it can be sent in chunks and resumed
+     */
+    private Outgoing spool(String header, Bluetooth.MessageWriter writer) throws Exception {
+        Outgoing message = new Outgoing();
+        message.ID = random.nextLong();
+        message.header = header;
+        message.file = new File(directory, "out-"+message.ID+".tmp");
+        OutputStream fos = new BufferedOutputStream(new FileOutputStream(message.file));
+        try {
+            writer.write(fos);
+        } finally {
+            fos.close();
+        }
+        message.total = message.file.length();
+        return message;
+    }
+
+    private void transmit(Outgoing message) throws IOException {
+        synchronized(this) {
+            if(closed) throw new IOException("Not connected.");
+            message.acked = -1;
+            message.rewind = -1;
+            outgoing = message;
+        }
+
+        try {
+            ByteArrayOutputStream start = new ByteArrayOutputStream();
+            DataOutputStream startOut = new DataOutputStream(start);
+            startOut.writeLong(message.total);
+            startOut.writeUTF(message.header);
+            writeFrame(START, message.ID, start.toByteArray());
+
+            long sent = -1;
+            long started = System.currentTimeMillis();
+            long progress = -1, progressAt = started, retransmittedAt = started;
+            RandomAccessFile file = new RandomAccessFile(message.file, "r");
+            try {
+                while(true) {
+                    synchronized(this) {
+                        // Wait for RESUME, then until there is room in the window
+                        while(message.rewind < 0 && (message.acked < 0 || (message.acked < message.total &&
+                                (sent >= message.total || sent - message.acked >= WINDOW * CHUNK_SIZE)))) {
+                            long now = System.currentTimeMillis();
+                            if(message.acked != progress) {
+                                progress = message.acked;
+                                progressAt = now;
+                            }
+                            long remaining = progressAt + TIMEOUT - now;
+                            if(closed || remaining <= 0) throw new IOException("Timed out waiting for the receiving device.");
+                            long retransmitAt = Math.max(progressAt, retransmittedAt) + RETRANSMIT_INTERVAL;
+                            if(message.acked >= 0 && sent > message.acked && now >= retransmitAt) {
+                                message.rewind = message.acked;
+                                retransmittedAt = now;
+                                break;
+                            }
+                            try {
+                                wait(Math.max(1, Math.min(remaining, retransmitAt - now)));
+                            } catch(InterruptedException e) {
+                                throw new IOException("Interrupted while sending.");
+                            }
+                        }
+                        if(sent < 0) sent = message.acked;
+                        if(message.rewind >= 0) {
+                            sent = message.rewind;
+                            message.rewind = -1;
+                        }
+                        if(message.acked >= message.total) break;
+                    }
+
+                    int length = (int) Math.min(CHUNK_SIZE, message.total - sent);
+                    byte[] payload = new byte[length + 8];
+                    writeLong(payload, sent);
+                    file.seek(sent);
+                    file.readFully(payload, 8, length);
+                    writeFrame(DATA, message.ID, payload);
+                    sent += length;
+
+                    listener.transferProgress(message.header, sent, message.total, true);
+                }
+            } finally {
+                file.close();
+            }
+            Log.d("RSBS", "Sent "+message.total+" bytes with header "+message.header+" in "+(System.currentTimeMillis() - started)+"ms.");
+        } finally {
+            synchronized(this) {
+                outgoing = null;
+            }
+        }
+    }
+
+    /**
+     * Asks the sender to rewind after a lost or corrupted chunk. The chunks that were already in flight arrive out of order
+     * too, so the same offset is only asked for again after RESUME_INTERVAL, for example, if the re-sent chunk was corrupted as well.
+     */
+    private void requestResume(long ID, Incoming message) throws IOException {
+        long now = System.currentTimeMillis();
+        if(message.requested == message.received && now - message.requestedAt < RESUME_INTERVAL) return; // already asked for this offset
+        message.requested = message.received;
+        message.requestedAt = now;
+        writeFrame(RESUME, ID, offsetPayload(message.received));
+    }
+
+    private void received(final long ID, final Incoming message) {
+        incoming.remove(ID);
+        try {
+            delivery.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        listener.messageReceived(message.header, message.file);
+                    } catch(Exception e) {
+                        Log.d("RSBS", "Failed to process Bluetooth message "+message.header+". err msg: "+e.getMessage());
+                    } finally {
+                        delete(message.file);
+                    }
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            Log.d("RSBS", "Discarding Bluetooth message "+message.header+", the transport was closed.");
+            delete(message.file);
+        }
+    }
+
+    private void writeFrame(byte type, long ID, byte[] payload) throws IOException {
+        DataOutputStream out;
+        synchronized(this) {
+            if(closed) throw new IOException("Not connected.");
+            out = this.out;
+        }
+        synchronized(out) {
+            out.writeByte(type);
+            out.writeLong(ID);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt(crc(payload, 0, payload.length));
+            out.flush();
+        }
+    }
+
+    private static byte[] offsetPayload(long offset) {
+        byte[] payload = new byte[8];
+        writeLong(payload, offset);
+        return payload;
+    }
+
+    private static void writeLong(byte[] bytes, long value) {
+        for(int i = 0; i < 8; i++) bytes[i] = (byte) (value >>> (56 - i * 8));
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void delete(File file) {
+        if(file != null && file.exists() && !file.delete()) Log.d("RSBS", "Failed to delete "+file.getAbsolutePath());
+    }
+}
@@ -2,6 +2,7 @@ package com.cpjd.robluscouter.sync.cloud;
 
 import android.util.Log;
 
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RSettings;
@@ -27,11 +28,13 @@ public class AutoCheckoutTask extends Thread {
 
     /**
      * Allows the user to preload checkouts if they want to, if this
-     * is received as null, AutoCheckoutTask will re-load them from the
-     * disk.
+     * is received as null, AutoCheckoutTask will get them from the
+     * checkout repository.
      */
     private ArrayList<RCheckout> checkouts;
 
+    private CheckoutRepository repository;
+
     private RSettings settings;
 
     private WeakReference<IO> ioWeakReference;
@@ -47,8 +50,9 @@ public class AutoCheckoutTask extends Thread {
         void done();
     }
 
-    public AutoCheckoutTask(AutoCheckoutTaskListener listener, IO io, RSettings settings, ArrayList<RCheckout> checkouts, boolean uncheckout) {
+    public AutoCheckoutTask(AutoCheckoutTaskListener listener, IO io, CheckoutRepository repository, RSettings settings, ArrayList<RCheckout> checkouts, boolean uncheckout) {
         this.checkouts = checkouts;
+        this.repository = repository;
         this.settings = settings;
         this.ioWeakReference = new WeakReference<>(io);
         this.listener = listener;
@@ -88,8 +92,8 @@ public class AutoCheckoutTask extends Thread {
 
                     if(shouldCheckout) {
                         checkout.setStatus(HandoffStatus.AVAILABLE);
-                        io.deleteMyCheckout(checkout.getID());
-                        io.saveCheckout(checkout);
+                        repository.deleteMyCheckout(checkout.getID());
+                        repository.saveCheckout(checkout);
                         io.savePendingCheckout(checkout); // For the status
                     }
 
@@ -100,7 +104,7 @@ public class AutoCheckoutTask extends Thread {
         }
 
         if(checkouts == null) {
-            checkouts = io.loadCheckouts();
+            checkouts = repository.getCheckouts();
         }
 
         if(checkouts == null || checkouts.size() == 0) {
@@ -134,8 +138,8 @@ public class AutoCheckoutTask extends Thread {
 
                 if(shouldCheckout) {
                     checkout.setStatus(HandoffStatus.AVAILABLE);
-                    io.deleteMyCheckout(checkout.getID());
-                    io.saveCheckout(checkout);
+                    repository.deleteMyCheckout(checkout.getID());
+                    repository.saveCheckout(checkout);
                     io.savePendingCheckout(checkout); // For the status
                 }
 
@@ -178,8 +182,8 @@ public class AutoCheckoutTask extends Thread {
         checkout.setStatus(HandoffStatus.CHECKED_OUT);
         checkout.setTime(System.currentTimeMillis());
         checkout.setNameTag(settings.getName());
-        io.saveCheckout(checkout);
-        io.saveMyCheckout(checkout);
+        repository.saveCheckout(checkout);
+        repository.saveMyCheckout(checkout);
         io.savePendingCheckout(checkout); // For the status
     }
 
@@ -17,6 +17,7 @@ import com.cpjd.models.CloudTeam;
 import com.cpjd.requests.CloudCheckoutRequest;
 import com.cpjd.requests.CloudTeamRequest;
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RForm;
@@ -24,6 +25,7 @@ import com.cpjd.robluscouter.models.RSettings;
 import com.cpjd.robluscouter.models.RSyncSettings;
 import com.cpjd.robluscouter.models.RUI;
 import com.cpjd.robluscouter.notifications.Notify;
+import com.cpjd.robluscouter.sync.FormVerifyTask;
 import com.cpjd.robluscouter.sync.SyncHelper;
 import com.cpjd.robluscouter.ui.checkouts.CheckoutsView;
 import com.cpjd.robluscouter.utils.HandoffStatus;
@@ -33,6 +35,9 @@ import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -45,6 +50,11 @@ import java.util.TimerTask;
  */
 public class Service extends android.app.Service {
 
+    /**
+     * Listed in the server's capabilities if it applies delta uploads, see {@link SyncHelper#packCheckoutDeltas(ArrayList, RSyncSettings)}
+     */
+    private static final String DELTA_UPLOADS = "delta-uploads";
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -139,12 +149,7 @@ public class Service extends android.app.Service {
 
         if(!teamRequest.isActive() && settings.getCode() != null && !settings.getCode().equals("")) {
             Log.d("Service-RSBS", "No active event found. Terminating loop early.");
-            io.clearCheckouts();
-            cloudSettings.setEventName("");
-            cloudSettings.setTeamSyncID(0);
-            cloudSettings.getCheckoutSyncIDs().clear();
-            io.saveCloudSettings(cloudSettings);
-            Utils.requestUIRefresh(getApplicationContext(), true, true);
+            resetEvent(io);
             return;
         }
 
@@ -156,7 +161,10 @@ public class Service extends android.app.Service {
             CloudTeam cloudTeam = teamRequest.getTeam(cloudSettings.getTeamSyncID());
             if(cloudTeam != null) {
                 RForm form = mapper.readValue(cloudTeam.getForm(), RForm.class);
+                RForm previousForm = io.loadForm();
                 io.saveForm(form);
+                // Re-verify the stored checkouts now, instead of when they're opened
+                if(!form.equals(previousForm)) new FormVerifyTask(CheckoutRepository.getInstance(getApplicationContext()), form).start();
                 settings.setRui(mapper.readValue(cloudTeam.getUi(), RUI.class));
                 io.saveSettings(settings);
 
@@ -167,12 +175,7 @@ public class Service extends android.app.Service {
                         && !cloudSettings.getEventName().equals("") && (cloudTeam.getActiveEventName().toLowerCase().trim().equalsIgnoreCase(
                                 cloudSettings.getEventName().toLowerCase().trim()))) {
                     Log.d("Service-RSBS", "No active event found. Terminating loop early.");
-                    io.clearCheckouts();
-                    cloudSettings.setEventName("");
-                    cloudSettings.setTeamSyncID(0);
-                    cloudSettings.getCheckoutSyncIDs().clear();
-                    io.saveCloudSettings(cloudSettings);
-                    Utils.requestUIRefresh(getApplicationContext(), true, true);
+                    cloudSettings = resetEvent(io);
                 }
 
                 cloudSettings.setEventName(cloudTeam.getActiveEventName());
@@ -188,7 +191,7 @@ public class Service extends android.app.Service {
         }
 
         // Upload completed checkouts
-        uploadCompletedCheckouts(io, settings, checkoutRequest, mapper);
+        uploadCompletedCheckouts(io, settings, cloudSettings, r, checkoutRequest, mapper);
 
         /*
          * Fetch checkouts
@@ -211,15 +214,57 @@ public class Service extends android.app.Service {
 
     }
 
-    private void uploadCompletedCheckouts(IO io, RSettings settings, CloudCheckoutRequest checkoutRequest, ObjectMapper mapper) {
+    /**
+     * Deletes all checkouts and resets the sync state of the event, see {@link IO#clearCheckouts()}
+     * @param io the IO instance
+     * @return the cloud settings after the reset, any previously loaded copy is stale and must not be saved
+     */
+    private RSyncSettings resetEvent(IO io) {
+        CheckoutRepository.getInstance(getApplicationContext()).clear();
+        Utils.requestUIRefresh(getApplicationContext(), true, true);
+        return io.loadCloudSettings();
+    }
+
+    /**
+     * Asks the server whether it applies delta uploads. Servers that don't support them share the same upload endpoint,
+     * and would store a delta as if it was the whole checkout instead of rejecting it, so a delta is never sent without asking.
+     * @param request the request to the server
+     * @param settings settings containing the team code
+     * @return true if the server listed delta uploads as a capability
+     */
+    private boolean supportsDeltaUploads(Request request, RSettings settings) {
+        try {
+            HashMap<String, String> params = new HashMap<>();
+            params.put("code", settings.getCode());
+            Object response = request.doRequest(Request.RequestType.GET, "checkouts/capabilities", params);
+            if(!(response instanceof Map)) return false;
+            Object capabilities = ((Map<?, ?>) response).get("data");
+            return capabilities instanceof List && ((List<?>) capabilities).contains(DELTA_UPLOADS);
+        } catch(Exception e) {
+            Log.d("Service-RSBS", "Failed to check the server's capabilities: "+e.getMessage());
+            return false;
+        }
+    }
+
+    private void uploadCompletedCheckouts(IO io, RSettings settings, RSyncSettings cloudSettings, Request request, CloudCheckoutRequest checkoutRequest, ObjectMapper mapper) {
         /*
          * Upload completed checkouts
          */
         try {
             Log.d("Service-RSBS", "Checking for pending checkout uploads...");
             ArrayList<RCheckout> checkouts = io.loadPendingCheckouts();
-            boolean success = checkoutRequest.pushCheckouts(new SyncHelper(getApplicationContext(), SyncHelper.MODES.NETWORK).packCheckouts(checkouts));
+            SyncHelper syncHelper = new SyncHelper(getApplicationContext(), SyncHelper.MODES.NETWORK);
+            boolean success = false;
+            if(settings.isDeltaUploads()) {
+                if(supportsDeltaUploads(request, settings)) {
+                    success = checkoutRequest.pushCheckouts(syncHelper.packCheckoutDeltas(checkouts, cloudSettings));
+                    if(!success) Log.d("Service-RSBS", "Delta upload was rejected, uploading full checkouts instead.");
+                } else Log.d("Service-RSBS", "The server doesn't support delta uploads, uploading full checkouts instead.");
+            }
+            if(!success) success = checkoutRequest.pushCheckouts(syncHelper.packCheckouts(checkouts));
             if(success) {
+                syncHelper.acknowledgeCheckouts(checkouts, cloudSettings);
+
                 boolean anyCompleted = false;
                 for(RCheckout checkout : checkouts) {
                     io.deletePendingCheckout(checkout.getID());
@@ -229,13 +274,15 @@ public class Service extends android.app.Service {
                          * this doesn't have access to completed checkouts in the 'checkouts' array
                          */
                     if(checkout.getStatus() == HandoffStatus.COMPLETED) {
-                        io.deleteMyCheckout(checkout.getID());
+                        CheckoutRepository.getInstance(getApplicationContext()).deleteMyCheckout(checkout.getID());
                         anyCompleted = true;
                     }
                 }
                     /*
                      * Only notify the user if checkouts with status == completed where uploaded
                      */
+                syncHelper.pruneFingerprints(cloudSettings, CheckoutRepository.getInstance(getApplicationContext()).getMyCheckouts());
+
                 Log.d("Service-RSBS", "Successfully uploaded "+checkouts.size()+" checkouts.");
                 Utils.requestUIRefresh(getApplicationContext(), true, false);
                 if(anyCompleted) Notify.notifyNoAction(getApplication(), "Uploaded checkouts successfully", "Successfully uploaded "+checkouts.size()+" checkouts.");
@@ -4,6 +4,7 @@ import android.util.Log;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RTab;
 import com.cpjd.robluscouter.models.RTeam;
+import com.cpjd.robluscouter.models.metrics.CheckboxValues;
 import com.cpjd.robluscouter.models.metrics.RBoolean;
 import com.cpjd.robluscouter.models.metrics.RCheckbox;
 import com.cpjd.robluscouter.models.metrics.RChooser;
@@ -13,6 +14,7 @@ import com.cpjd.robluscouter.models.metrics.RMetric;
 import com.cpjd.robluscouter.models.metrics.RSlider;
 import com.cpjd.robluscouter.models.metrics.RStopwatch;
 import com.cpjd.robluscouter.models.metrics.RTextfield;
+import com.cpjd.robluscouter.utils.DoubleList;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -29,6 +31,8 @@ import java.util.LinkedHashMap;
  * Now you might be thinking, Will, why didn't you just compressed the JSON. I TRIED okay? QR codes don't handle non-alphanumeric
  * compression well. So here I am.
  *
+ * QR codes are now generated with {@link QRCheckoutCodec}, this format is only kept for reading codes from older versions.
+ *
  * This encoder is a BARE minimum encoder. So PLEASE account for that.
  * -RGalleries and RFieldDiagrams are IGNORED. They are simply too big to fit in a QR code
  * -RDividers and RCalculation are IGNORED. They can't be modified by scouters, so yeah.
@@ -93,8 +97,9 @@ public class CheckoutEncoder {
                 if(metric instanceof RBoolean) builder.append(((RBoolean) metric).isValue());
                 else if(metric instanceof RCheckbox) {
                     if(((RCheckbox) metric).getValues() != null) {
-                        for(Object o : ((RCheckbox) metric).getValues().keySet()) {
-                            builder.append("(").append(o.toString()).append(",").append(((RCheckbox) metric).getValues().get(o.toString())).append(")").append(DELIMITER); //:(title,value):(title,value):
+                        CheckboxValues values = ((RCheckbox) metric).getValues();
+                        for(int l = 0; l < values.size(); l++) {
+                            builder.append("(").append(values.getLabel(l)).append(",").append(values.isChecked(l)).append(")").append(DELIMITER); //:(title,value):(title,value):
                         }
                     }
                 }
@@ -111,8 +116,9 @@ public class CheckoutEncoder {
                 else if(metric instanceof RStopwatch) {
                     builder.append(((RStopwatch) metric).getTime()).append(DELIMITER);
                     if(((RStopwatch) metric).getTimes() != null) {
-                        for(Double t : ((RStopwatch) metric).getTimes()) {
-                            builder.append(t).append(DELIMITER); // :curr:1:2:3:
+                        DoubleList times = ((RStopwatch) metric).getTimes();
+                        for(int l = 0; l < times.size(); l++) {
+                            builder.append(times.get(l)).append(DELIMITER); // :curr:1:2:3:
                         }
                     }
                 }
@@ -183,7 +189,7 @@ public class CheckoutEncoder {
                             for(int l = 4; l < mTokens.length; l += 2) {
                                 values.put(mTokens[l].split(",")[0].substring(1), Boolean.parseBoolean(mTokens[l].split(",")[2].replace(")", "")));
                             }
-                            ((RCheckbox) metric).setValues(values);
+                            ((RCheckbox) metric).setValues(CheckboxValues.of(values));
                             break;
                         }
                         case "CO": { // chooser
@@ -212,7 +218,7 @@ public class CheckoutEncoder {
                         case "ST":  // stopwatch
                             metric = new RStopwatch();
                             ((RStopwatch) metric).setTime(Double.parseDouble(mTokens[4]));
-                            ((RStopwatch) metric).setTimes(new ArrayList<Double>());
+                            ((RStopwatch) metric).setTimes(new DoubleList());
                             for(int l = 5; l < mTokens.length; l++) {
                                 if(!mTokens[l].equals("")) ((RStopwatch) metric).getTimes().add(Double.parseDouble(mTokens[5]));
                             }
@@ -1,34 +1,80 @@
 package com.cpjd.robluscouter.sync.qr;
 
-import android.app.ProgressDialog;
-import android.graphics.Bitmap;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.MenuItem;
+import android.view.View;
 import android.widget.ImageView;
+import android.widget.Toast;
 
 import com.cpjd.robluscouter.R;
-import com.cpjd.robluscouter.io.IO;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.models.RCheckout;
-import com.cpjd.robluscouter.models.RSettings;
-import com.cpjd.robluscouter.models.RTab;
-import com.cpjd.robluscouter.models.metrics.RFieldDiagram;
-import com.cpjd.robluscouter.models.metrics.RGallery;
-import com.cpjd.robluscouter.models.metrics.RMetric;
-import com.cpjd.robluscouter.utils.HandoffStatus;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 
 /**
  * Packages 1 checkout into a QR code and displays it.
  *
+ * The checkout is encoded with {@link QRCheckoutCodec} and cached by {@link QRCache}, so it's usually ready by the time
+ * this opens. If it's too big for one QR code, it's split into a sequence of frames (see {@link QRFrames}) that are
+ * shown one after another, in a loop, until they've all been scanned.
+ *
+ * By default, the schemas of metrics are left out against the local form, which keeps the code small. If Roblu Master
+ * has a different form, tapping the QR code regenerates it with the full schema of every metric.
+ *
  * @since 4.3.0
  * @author Will Davies
  */
 public class PackageQRCheckout extends AppCompatActivity {
 
+    /**
+     * How long each frame of a QR sequence is shown for, in milliseconds
+     */
+    private static final long FRAME_DURATION = 800;
+
+    private final Handler handler = new Handler();
+
+    private Runnable showNextFrame;
+
+    private RCheckout checkout;
+    /**
+     * True if the full schema of every metric is written, instead of leaving them out against the local form
+     */
+    private boolean full;
+
+    /**
+     * Splits the payload into frames and encodes them, on the QR cache's thread
+     */
+    private final QRCache.QRCacheListener payloadReady = new QRCache.QRCacheListener() {
+        @Override
+        public void payloadReady(int checkoutID, byte[] payload) {
+            if(payload == null) {
+                Log.d("RSBS", "Failed to generate QR code.");
+                return;
+            }
+            // the code with elided schemas might finish after the full one was requested
+            if(full && QRCheckoutCodec.getFingerprint(payload) != -1) return;
+
+            ArrayList<byte[]> frames = QRFrames.split(payload);
+            Log.d("RSBS", "Encoded checkout "+checkoutID+" into "+payload.length+" bytes, "+frames.size()+" QR frame(s).");
+
+            final QrDrawable[] codes = new QrDrawable[frames.size()];
+            for(int i = 0; i < codes.length; i++) codes[i] = new QrDrawable(QrCode.encodeBinary(frames.get(i), QrCode.Ecc.LOW), 4);
+
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if(isFinishing()) return;
+                    showFrames(codes, checkout.getTeam().getName());
+                }
+            });
+        }
+    };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -43,79 +89,62 @@ public class PackageQRCheckout extends AppCompatActivity {
 
         int checkoutID = getIntent().getIntExtra("checkoutID", 0);
 
-        RSettings settings = new IO(getApplicationContext()).loadSettings();
-
-        final RCheckout checkout = new IO(getApplicationContext()).loadMyCheckout(checkoutID);
+        checkout = CheckoutRepository.getInstance(getApplicationContext()).getMyCheckout(checkoutID);
 
         if(getSupportActionBar() != null) {
-            getSupportActionBar().setSubtitle(checkout.getTeam().getName());
+            getSupportActionBar().setSubtitle(checkout.getTeam().getName()+" - generating...");
         }
 
-        /*
-         * A few parsing operations need to occur:
-         * -All galleries  need to be removed, a QR code quite simply isn't
-         * big enough to store them.
-         * -All team TBA data should be removed (again, size constraints)
-         *
-         */
-        checkout.getTeam().setFullName("");
-        checkout.getTeam().setMotto("");
-        checkout.getTeam().setWebsite("");
-        checkout.getTeam().setLocation("");
-        checkout.getTeam().setRookieYear(0);
-
-        for(RTab tab : checkout.getTeam().getTabs()) {
-            for(RMetric metric : tab.getMetrics()) {
-                if(metric instanceof RGallery) {
-                    ((RGallery) metric).setPictureIDs(null);
-                    ((RGallery) metric).setImages(null);
-                } else if(metric instanceof RFieldDiagram) {
-                    ((RFieldDiagram) metric).setDrawings(null);
-                }
+        // QRCache packages a copy of the checkout, this one is shared with the rest of the app, so it isn't modified here
+
+        findViewById(R.id.qr).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if(full) return;
+                full = true;
+                Toast.makeText(getApplicationContext(), "Generating the full QR code, for when Roblu Master has a different form.", Toast.LENGTH_LONG).show();
+                QRCache.getInstance(getApplicationContext()).get(checkout, true, payloadReady);
             }
+        });
 
-            LinkedHashMap<String, Long> edits = tab.getEdits();
-            if(edits == null) edits = new LinkedHashMap<>();
-            edits.put(settings.getName(), System.currentTimeMillis());
-            tab.setEdits(edits);
-        }
+        QRCache.getInstance(getApplicationContext()).get(checkout, false, payloadReady);
+    }
 
-        /*
-         * Flag all the status parameters and prepare the checkout for upload
-         */
-        checkout.setStatus(HandoffStatus.COMPLETED);
-        checkout.setNameTag(settings.getName());
-        checkout.setTime(System.currentTimeMillis());
+    /**
+     * Displays the QR code, or loops through the frames if there's more than one
+     * @param codes the QR code frames
+     * @param teamName the name of the team, shown in the subtitle
+     */
+    private void showFrames(final QrDrawable[] codes, final String teamName) {
+        if(showNextFrame != null) handler.removeCallbacks(showNextFrame);
+        showNextFrame = null;
+
+        final ImageView image = findViewById(R.id.qr);
+        if(codes.length == 1) {
+            image.setImageDrawable(codes[0]);
+            if(getSupportActionBar() != null) getSupportActionBar().setSubtitle(teamName);
+            return;
+        }
 
-        final ProgressDialog pd = ProgressDialog.show(PackageQRCheckout.this, "Generating...", "Roblu Scouter is generating a QR code. This might take a bit.");
-        pd.setCancelable(true);
-        pd.show();
+        showNextFrame = new Runnable() {
+            int frame;
 
-        new Thread(new Runnable() {
             @Override
             public void run() {
-                try {
-                    // Compress string
-                    String serial = new CheckoutEncoder().encodeCheckout(new IO(getApplicationContext()).loadSettings().getName(), checkout);
-
-                    Log.d("RSBS", serial);
-
-                    QrCode code = QrCode.encodeText(serial, QrCode.Ecc.LOW);
-
-                    final Bitmap b = code.toImage(5, 5);
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            pd.dismiss();
-                            ((ImageView) findViewById(R.id.qr)).setImageBitmap(b);
-                        }
-                    });
-                } catch(Exception e) {
-                    Log.d("RSBS", "Failed to generate QR code. "+e.getMessage());
-                }
+                image.setImageDrawable(codes[frame]);
+                if(getSupportActionBar() != null) getSupportActionBar().setSubtitle(teamName+" - frame "+(frame + 1)+" of "+codes.length);
+                frame = (frame + 1) % codes.length;
+                handler.postDelayed(this, FRAME_DURATION);
             }
-        }).start();
+        };
+        handler.post(showNextFrame);
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        QRCache.getInstance(getApplicationContext()).removeListener(payloadReady);
+        if(showNextFrame != null) handler.removeCallbacks(showNextFrame);
     }
 
     @Override
@@ -0,0 +1,264 @@
+package com.cpjd.robluscouter.sync.qr;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.cpjd.robluscouter.io.CheckoutCodec;
+import com.cpjd.robluscouter.io.IO;
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RForm;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.metrics.RFieldDiagram;
+import com.cpjd.robluscouter.models.metrics.RGallery;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.utils.HandoffStatus;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * QRCache generates the QR payloads of checkouts in the background, and caches them on the disk, so that the QR exporter
+ * doesn't have to package and encode the checkout every time it's opened.
+ *
+ * -Checkouts are prepared with {@link #prepare(RCheckout)} as soon as they're completed
+ * -Payloads are cached by checkout ID, {@link com.cpjd.robluscouter.models.RTeam#getLastEdit()}, and the scouter's name,
+ * editing the checkout again or changing the name in settings changes the key, and the old payloads are deleted when the new one is generated
+ * -Payloads with elided schemas are also checked against the fingerprint of the current form, and regenerated if the form changed
+ * -Requesting a payload that's already being generated doesn't start another job, the listener is notified when the first one finishes
+ *
+ * Payloads are generated one at a time on a single background thread.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class QRCache {
+
+    private static QRCache instance;
+
+    private final IO io;
+
+    private final ExecutorService generator = Executors.newSingleThreadExecutor();
+    /**
+     * The listeners waiting for each payload that's being generated, by checkout version, guarded by this
+     */
+    private final HashMap<String, ArrayList<QRCacheListener>> jobs = new HashMap<>();
+
+    public interface QRCacheListener {
+        /**
+         * Called from the generator thread
+         * @param checkoutID the ID of the checkout
+         * @param payload the payload, see {@link QRCheckoutCodec}, null if it couldn't be generated
+         */
+        void payloadReady(int checkoutID, byte[] payload);
+    }
+
+    private QRCache(Context context) {
+        this.io = new IO(context);
+    }
+
+    /**
+     * Gets the shared cache
+     * @param context any context, the application context will be used
+     * @return the cache instance
+     */
+    public static synchronized QRCache getInstance(Context context) {
+        if(instance == null) instance = new QRCache(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Generates the payload of a checkout in the background, if it isn't cached already
+     * @param checkout the completed checkout
+     */
+    public void prepare(RCheckout checkout) {
+        get(checkout, false, null);
+    }
+
+    /**
+     * Gets the payload of a checkout, from the cache if it's there, otherwise, it's generated in the background
+     * @param checkout the checkout, it's copied before it's packaged and flagged as completed, so it isn't modified
+     * @param full true to write the full schema of every metric, false to leave them out against the local form
+     * @param listener notified when the payload is ready, may be null
+     */
+    public void get(RCheckout checkout, final boolean full, QRCacheListener listener) {
+        final int ID = checkout.getID();
+        final long lastEdit = checkout.getTeam().getLastEdit();
+        final String key = ID+"_"+lastEdit+(full ? "_full" : "");
+
+        synchronized(this) {
+            ArrayList<QRCacheListener> waiting = jobs.get(key);
+            if(waiting != null) {
+                if(listener != null) waiting.add(listener);
+                return;
+            }
+            waiting = new ArrayList<>();
+            if(listener != null) waiting.add(listener);
+            jobs.put(key, waiting);
+        }
+
+        final RCheckout copy;
+        try {
+            copy = CheckoutCodec.copy(checkout);
+        } catch(IOException e) {
+            Log.d("RSBS", "Failed to copy checkout "+ID+" for the QR cache. err msg: "+e.getMessage());
+            finish(key, ID, null);
+            return;
+        }
+
+        generator.submit(new Runnable() {
+            @Override
+            public void run() {
+                byte[] payload = null;
+                try {
+                    RForm form = full ? null : io.loadForm();
+                    String name = io.loadSettings().getName();
+                    String file = getFileKey(ID, lastEdit, name, full);
+                    payload = load(file, form);
+                    if(payload == null) payload = generate(file, copy, form, name);
+                } catch(Exception e) {
+                    Log.d("RSBS", "Failed to generate the QR payload of checkout "+ID+". err msg: "+e.getMessage());
+                }
+                finish(key, ID, payload);
+            }
+        });
+    }
+
+    /**
+     * Stops notifying a listener, for example, when the activity that's waiting for a payload is closed
+     * @param listener the listener to remove
+     */
+    public synchronized void removeListener(QRCacheListener listener) {
+        for(ArrayList<QRCacheListener> waiting : jobs.values()) waiting.remove(listener);
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Loads a cached payload
+     * @param key the cache key, see {@link #getFileKey(int, long, String, boolean)}
+     * @param form the current form, null if the payload has full schemas or the form hasn't been synced
+     * @return the payload, or null if it isn't cached or it was left out against a different form
+     */
+    private byte[] load(String key, RForm form) throws IOException {
+        File file = new File(io.getQRCacheDir(), key+".qr");
+        if(!file.exists()) return null;
+
+        byte[] payload = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(payload);
+        } finally {
+            in.close();
+        }
+
+        long fingerprint = QRCheckoutCodec.getFingerprint(payload);
+        boolean valid = fingerprint == -1 ? form == null : form != null && fingerprint == QRCheckoutCodec.fingerprint(form);
+        if(!valid) Log.d("RSBS", "The form changed since the QR payload "+key+" was cached, regenerating it.");
+        return valid ? payload : null;
+    }
+
+    /**
+     * Packages, encodes, and caches a checkout
+     * @param key the cache key, see {@link #getFileKey(int, long, String, boolean)}
+     * @param checkout a copy of the checkout, it's modified
+     * @param form the form to leave schemas out against, null to write the full schemas
+     * @param name the scouter's name, stamped on the checkout
+     * @return the payload
+     */
+    private byte[] generate(String key, RCheckout checkout, RForm form, String name) throws IOException {
+        pack(checkout, name);
+
+        byte[] payload = QRCheckoutCodec.encode(name, checkout, form);
+
+        // written to a temporary file first, so a partially written payload is never read back
+        File dir = io.getQRCacheDir();
+        File temp = new File(dir, key+".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(payload);
+        } finally {
+            out.close();
+        }
+        if(!temp.renameTo(new File(dir, key+".qr"))) Log.d("RSBS", "Failed to save the QR payload "+key+" to the cache.");
+
+        // delete the payloads of older versions of the checkout, or ones stamped with an old name
+        String version = getFileKey(checkout.getID(), checkout.getTeam().getLastEdit(), name, false);
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                String fileName = file.getName();
+                if(!fileName.startsWith(checkout.getID()+"_") || fileName.equals(version+".qr") || fileName.equals(version+"_full.qr")) continue;
+                if(!file.delete()) Log.d("RSBS", "Failed to delete the old QR payload "+fileName);
+            }
+        }
+
+        Log.d("RSBS", "Generated the QR payload of checkout "+checkout.getID()+", "+payload.length+" bytes.");
+        return payload;
+    }
+
+    /**
+     * Removes everything that QR codes quite simply aren't big enough to store (galleries, field diagram drawings, and
+     * team TBA data), adds an edit by the scouter, and flags the checkout as completed by the scouter
+     */
+    private static void pack(RCheckout checkout, String name) {
+        checkout.setStatus(HandoffStatus.COMPLETED);
+        checkout.setNameTag(name);
+        checkout.setTime(System.currentTimeMillis());
+
+        checkout.getTeam().setFullName("");
+        checkout.getTeam().setMotto("");
+        checkout.getTeam().setWebsite("");
+        checkout.getTeam().setLocation("");
+        checkout.getTeam().setRookieYear(0);
+
+        for(RTab tab : checkout.getTeam().getTabs()) {
+            if(tab.getMetrics() != null) {
+                for(RMetric metric : tab.getMetrics()) {
+                    if(metric instanceof RGallery) {
+                        ((RGallery) metric).setPictureIDs(null);
+                        ((RGallery) metric).setImages(null);
+                    } else if(metric instanceof RFieldDiagram) {
+                        ((RFieldDiagram) metric).setDrawings(null);
+                    }
+                }
+            }
+
+            LinkedHashMap<String, Long> edits = tab.getEdits();
+            if(edits == null) edits = new LinkedHashMap<>();
+            edits.put(name, System.currentTimeMillis());
+            tab.setEdits(edits);
+        }
+    }
+
+    /**
+     * Gets the key that a payload is cached on the disk with. The scouter's name is part of it, because it's stamped on
+     * the packaged checkout, so a payload generated before the name was changed isn't exported under the old name.
+     * @param ID the ID of the checkout
+     * @param lastEdit the last edit time of the checkout's team
+     * @param name the scouter's name
+     * @param full true if the payload has the full schemas
+     * @return the cache key
+     */
+    private static String getFileKey(int ID, long lastEdit, String name, boolean full) {
+        return ID+"_"+lastEdit+"_"+Integer.toHexString(name == null ? 0 : name.hashCode())+(full ? "_full" : "");
+    }
+
+    private void finish(String key, int ID, byte[] payload) {
+        ArrayList<QRCacheListener> waiting;
+        synchronized(this) {
+            waiting = jobs.remove(key);
+        }
+        if(waiting == null) return;
+        for(QRCacheListener listener : waiting) listener.payloadReady(ID, payload);
+    }
+}
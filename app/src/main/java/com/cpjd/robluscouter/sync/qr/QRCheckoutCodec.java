@@ -0,0 +1,609 @@
+package com.cpjd.robluscouter.sync.qr;
+
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RForm;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.RTeam;
+import com.cpjd.robluscouter.models.metrics.CheckboxValues;
+import com.cpjd.robluscouter.models.metrics.RBoolean;
+import com.cpjd.robluscouter.models.metrics.RCheckbox;
+import com.cpjd.robluscouter.models.metrics.RChooser;
+import com.cpjd.robluscouter.models.metrics.RCounter;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.models.metrics.RSlider;
+import com.cpjd.robluscouter.models.metrics.RStopwatch;
+import com.cpjd.robluscouter.models.metrics.RTextfield;
+import com.cpjd.robluscouter.utils.DoubleList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * QRCheckoutCodec is the binary replacement for {@link CheckoutEncoder}'s text format, it carries the same
+ * information, but is fed to {@link QrCode#encodeBinary(byte[], QrCode.Ecc)} instead of being encoded as text.
+ *
+ * -Integers are zig-zag varints, strings are a varint length followed by UTF-8
+ * -Each metric starts with a header byte, the type is the low nibble and the high nibble holds flags
+ * (modified, and the value of a boolean or counter's verbose input)
+ * -Doubles that are whole numbers (most counter values and increments) are written as varints
+ * -The body is deflated if that makes it smaller, titles and labels repeat in every tab, so it usually does
+ *
+ * Like CheckoutEncoder, galleries, field diagrams, dividers, calculations, and one line text fields are left out.
+ * If the payload doesn't fit in one QR code, it's split up with {@link QRFrames}.
+ *
+ * Since version 2, the schema of a metric (title, chooser items, checkbox labels, counter increment, slider range)
+ * can be left out, since Roblu Master already has the form. The payload then carries a fingerprint of the form
+ * (see {@link #fingerprint(RForm)}), and each metric whose schema matches the form is written as only its type, ID,
+ * modified flag and value. Metrics that don't match the form are still written in full. Decoding an elided payload
+ * requires the same form, otherwise {@link UnknownFormException} is thrown and the full encoding should be used instead.
+ *
+ * Payload format:
+ * [1 byte version][1 byte flags][4 bytes form fingerprint, if elided][body, possibly deflated]
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class QRCheckoutCodec {
+
+    private static final int VERSION = 2;
+
+    private static final int FLAG_DEFLATED = 1;
+    private static final int FLAG_ELIDED = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /*
+     * Metric types, the low nibble of the metric header
+     */
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_CHECKBOX = 2;
+    private static final int TYPE_CHOOSER = 3;
+    private static final int TYPE_COUNTER = 4;
+    private static final int TYPE_SLIDER = 5;
+    private static final int TYPE_STOPWATCH = 6;
+    private static final int TYPE_TEXTFIELD = 7;
+
+    /*
+     * Metric flags, the high nibble of the metric header
+     */
+    private static final int MODIFIED = 0x10;
+    /**
+     * The value of a boolean, or whether a counter uses verbose input
+     */
+    private static final int BIT = 0x20;
+    /**
+     * The schema of the metric was left out, it's the same as on the form
+     */
+    private static final int ELIDED = 0x40;
+
+    /**
+     * Thrown if a payload with elided schemas is decoded with a different form than it was encoded with
+     */
+    public static class UnknownFormException extends IOException {
+        UnknownFormException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Encodes a checkout with the full schema of every metric
+     * @param nameTag the name of the scouter
+     * @param checkout the checkout to encode
+     * @return the payload
+     */
+    public static byte[] encode(String nameTag, RCheckout checkout) throws IOException {
+        return encode(nameTag, checkout, null);
+    }
+
+    /**
+     * Encodes a checkout
+     * @param nameTag the name of the scouter
+     * @param checkout the checkout to encode
+     * @param form the form the schemas are left out against, null to write the full schema of every metric
+     * @return the payload
+     */
+    public static byte[] encode(String nameTag, RCheckout checkout, RForm form) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        new Writer(new DataOutputStream(bytes), form).writeCheckout(nameTag, checkout);
+        byte[] body = bytes.toByteArray();
+
+        byte[] deflated = deflate(body);
+        boolean useDeflated = deflated.length < body.length;
+        int header = form == null ? 2 : 6;
+        byte[] payload = new byte[header + (useDeflated ? deflated.length : body.length)];
+        payload[0] = VERSION;
+        payload[1] = (byte) ((useDeflated ? FLAG_DEFLATED : 0) | (form == null ? 0 : FLAG_ELIDED));
+        if(form != null) {
+            long fingerprint = fingerprint(form);
+            for(int i = 0; i < 4; i++) payload[2 + i] = (byte) (fingerprint >>> (24 - i * 8));
+        }
+        System.arraycopy(useDeflated ? deflated : body, 0, payload, header, payload.length - header);
+        return payload;
+    }
+
+    /**
+     * Decodes a checkout that was encoded with the full schema of every metric
+     * @param payload the payload created by {@link #encode(String, RCheckout)}
+     * @return the checkout
+     */
+    public static RCheckout decode(byte[] payload) throws IOException {
+        return decode(payload, null);
+    }
+
+    /**
+     * Decodes a checkout
+     * @param payload the payload created by {@link #encode(String, RCheckout, RForm)}
+     * @param form the form, required if the schemas were left out
+     * @return the checkout
+     * @throws UnknownFormException if the schemas were left out against a different form
+     */
+    public static RCheckout decode(byte[] payload, RForm form) throws IOException {
+        if(payload.length < 2) throw new IOException("QR checkout payload is too short.");
+        if((payload[0] & 0xFF) > VERSION) throw new IOException("Unsupported QR checkout version "+(payload[0] & 0xFF));
+
+        boolean elided = (payload[1] & FLAG_ELIDED) != 0;
+        int header = elided ? 6 : 2;
+        if(payload.length < header) throw new IOException("QR checkout payload is too short.");
+        if(elided) {
+            if(form == null || getFingerprint(payload) != fingerprint(form)) throw new UnknownFormException("The QR code was created with a different form, use the full QR code instead.");
+        }
+
+        byte[] body = new byte[payload.length - header];
+        System.arraycopy(payload, header, body, 0, body.length);
+        if((payload[1] & FLAG_DEFLATED) != 0) body = inflate(body);
+
+        return new Reader(new DataInputStream(new ByteArrayInputStream(body)), elided ? form : null).readCheckout();
+    }
+
+    /**
+     * @param payload the payload created by {@link #encode(String, RCheckout, RForm)}
+     * @return the fingerprint of the form the schemas were left out against, -1 if the payload has the full schemas
+     */
+    public static long getFingerprint(byte[] payload) {
+        if(payload.length < 6 || (payload[1] & FLAG_ELIDED) == 0) return -1;
+        long fingerprint = 0;
+        for(int i = 0; i < 4; i++) fingerprint = (fingerprint << 8) | (payload[2 + i] & 0xFF);
+        return fingerprint;
+    }
+
+    /**
+     * Identifies the schema of a form. It's a CRC32 of the ID, type and schema of every pit metric, then every match metric,
+     * written the same way as full metrics in a payload (with their default values left out), so that Roblu Master can compute it too.
+     * @param form the form
+     * @return the fingerprint of the form
+     */
+    public static long fingerprint(RForm form) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Writer writer = new Writer(new DataOutputStream(bytes), null);
+        writer.writeSchemas(form.getPit());
+        writer.writeSchemas(form.getMatch());
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        return crc.getValue();
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+        private final HashMap<Integer, RMetric> pit, match;
+
+        private Writer(DataOutputStream out, RForm form) {
+            this.out = out;
+            this.pit = form == null ? null : index(form.getPit());
+            this.match = form == null ? null : index(form.getMatch());
+        }
+
+        private void writeCheckout(String nameTag, RCheckout checkout) throws IOException {
+            writeInt(checkout.getID());
+            writeString(nameTag);
+            writeInt(checkout.getTeam().getID());
+            writeLong(checkout.getTeam().getLastEdit());
+
+            ArrayList<RTab> tabs = checkout.getTeam().getTabs();
+            writeInt(tabs.size());
+            for(RTab tab : tabs) writeTab(tab);
+        }
+
+        private void writeTab(RTab tab) throws IOException {
+            writeString(tab.getTitle());
+            out.writeBoolean(tab.isWon());
+
+            LinkedHashMap<String, Long> edits = tab.getEdits();
+            writeInt(edits == null ? 0 : edits.size());
+            if(edits != null) {
+                for(Map.Entry<String, Long> edit : edits.entrySet()) {
+                    writeString(edit.getKey() == null || edit.getKey().equals("") ? "Unknown" : edit.getKey());
+                    writeLong(edit.getValue() == null ? 0 : edit.getValue());
+                }
+            }
+
+            HashMap<Integer, RMetric> form = tab.getTitle().equalsIgnoreCase("Pit") ? pit : match;
+            ArrayList<RMetric> metrics = new ArrayList<>();
+            if(tab.getMetrics() != null) for(RMetric metric : tab.getMetrics()) if(getType(metric) != 0) metrics.add(metric);
+            writeInt(metrics.size());
+            for(RMetric metric : metrics) writeMetric(metric, form == null ? null : form.get(metric.getID()));
+        }
+
+        /**
+         * Writes the schema of each metric that's included in QR codes, used for fingerprints
+         */
+        private void writeSchemas(ArrayList<RMetric> metrics) throws IOException {
+            if(metrics == null) return;
+            for(RMetric metric : metrics) {
+                int type = getType(metric);
+                if(type == 0) continue;
+                out.writeByte(type);
+                writeInt(metric.getID());
+                writeSchema(metric);
+            }
+        }
+
+        /**
+         * @param metric the metric to write
+         * @param schema the metric with the same ID on the form, null if there isn't one, or the schema shouldn't be left out
+         */
+        private void writeMetric(RMetric metric, RMetric schema) throws IOException {
+            boolean elided = schema != null && sameSchema(schema, metric);
+            int header = getType(metric);
+            if(elided) header |= ELIDED;
+            if(metric.isModified()) header |= MODIFIED;
+            if(metric instanceof RBoolean && ((RBoolean) metric).isValue()) header |= BIT;
+            if(metric instanceof RCounter && ((RCounter) metric).isVerboseInput()) header |= BIT;
+            out.writeByte(header);
+            writeInt(metric.getID());
+            if(!elided) writeSchema(metric);
+
+            if(metric instanceof RCheckbox) {
+                CheckboxValues values = ((RCheckbox) metric).getValues();
+                int size = values == null ? 0 : values.size();
+                // the checked states packed into bytes
+                for(int i = 0; i < size; i += 8) {
+                    int bits = 0;
+                    for(int j = i; j < Math.min(size, i + 8); j++) if(values.isChecked(j)) bits |= 1 << (j - i);
+                    out.writeByte(bits);
+                }
+            } else if(metric instanceof RChooser) {
+                writeInt(((RChooser) metric).getSelectedIndex());
+            } else if(metric instanceof RCounter) {
+                writeDouble(((RCounter) metric).getValue());
+            } else if(metric instanceof RSlider) {
+                writeInt(((RSlider) metric).getValue());
+            } else if(metric instanceof RStopwatch) {
+                writeDouble(((RStopwatch) metric).getTime());
+                DoubleList times = ((RStopwatch) metric).getTimes();
+                writeInt(times == null ? 0 : times.size());
+                if(times != null) for(int i = 0; i < times.size(); i++) writeDouble(times.get(i));
+            } else if(metric instanceof RTextfield) {
+                writeString(((RTextfield) metric).getText());
+            }
+        }
+
+        /**
+         * Writes the parts of a metric that come from the form
+         */
+        private void writeSchema(RMetric metric) throws IOException {
+            writeString(metric.getTitle());
+            if(metric instanceof RCheckbox) {
+                CheckboxValues values = ((RCheckbox) metric).getValues();
+                int size = values == null ? 0 : values.size();
+                writeInt(size);
+                for(int i = 0; i < size; i++) writeString(values.getLabel(i));
+            } else if(metric instanceof RChooser) {
+                String[] values = ((RChooser) metric).getValues();
+                writeInt(values == null ? 0 : values.length);
+                if(values != null) for(String value : values) writeString(value);
+            } else if(metric instanceof RCounter) {
+                writeDouble(((RCounter) metric).getIncrement());
+            } else if(metric instanceof RSlider) {
+                writeInt(((RSlider) metric).getMin());
+                writeInt(((RSlider) metric).getMax());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string == null ? new byte[0] : string.getBytes(UTF8);
+            writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * Whole numbers are written as (value << 1), anything else as 1 followed by the 8 byte double
+         */
+        private void writeDouble(double value) throws IOException {
+            long whole = (long) value;
+            if(whole == value && Math.abs(whole) < (1L << 60)) writeLong(whole << 1);
+            else {
+                writeLong(1);
+                out.writeDouble(value);
+            }
+        }
+
+        private void writeInt(int value) throws IOException {
+            writeLong(value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.writeByte((int) zigzag);
+        }
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final HashMap<Integer, RMetric> pit, match;
+
+        /**
+         * @param form the form to fill in left out schemas from, null if there aren't any
+         */
+        private Reader(DataInputStream in, RForm form) {
+            this.in = in;
+            this.pit = form == null ? null : index(form.getPit());
+            this.match = form == null ? null : index(form.getMatch());
+        }
+
+        private RCheckout readCheckout() throws IOException {
+            RCheckout checkout = new RCheckout();
+            checkout.setID(readInt());
+            checkout.setNameTag(readString());
+
+            RTeam team = new RTeam();
+            team.setID(readInt());
+            team.setLastEdit(readLong());
+            int size = readSize();
+            ArrayList<RTab> tabs = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) tabs.add(readTab());
+            team.setTabs(tabs);
+
+            checkout.setTeam(team);
+            return checkout;
+        }
+
+        private RTab readTab() throws IOException {
+            RTab tab = new RTab();
+            tab.setTitle(readString());
+            tab.setWon(in.readBoolean());
+
+            int size = readSize();
+            LinkedHashMap<String, Long> edits = new LinkedHashMap<>();
+            for(int i = 0; i < size; i++) edits.put(readString(), readLong());
+            tab.setEdits(edits);
+
+            HashMap<Integer, RMetric> form = tab.getTitle().equalsIgnoreCase("Pit") ? pit : match;
+            size = readSize();
+            ArrayList<RMetric> metrics = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) metrics.add(readMetric(form));
+            tab.setMetrics(metrics);
+            return tab;
+        }
+
+        private RMetric readMetric(HashMap<Integer, RMetric> form) throws IOException {
+            int header = in.readUnsignedByte();
+            boolean bit = (header & BIT) != 0;
+
+            if((header & ELIDED) != 0) {
+                // the schema (and the default values) come from the form
+                int ID = readInt();
+                RMetric schema = form == null ? null : form.get(ID);
+                if(schema == null || getType(schema) != (header & 0x0F)) throw new UnknownFormException("Metric "+ID+" isn't on the form.");
+                RMetric metric = schema.clone();
+                metric.setModified((header & MODIFIED) != 0);
+                readValue(metric, bit);
+                return metric;
+            }
+
+            RMetric metric;
+            switch(header & 0x0F) {
+                case TYPE_BOOLEAN:
+                    metric = new RBoolean();
+                    break;
+                case TYPE_CHECKBOX:
+                    metric = new RCheckbox();
+                    break;
+                case TYPE_CHOOSER:
+                    metric = new RChooser();
+                    break;
+                case TYPE_COUNTER:
+                    metric = new RCounter();
+                    break;
+                case TYPE_SLIDER:
+                    metric = new RSlider();
+                    break;
+                case TYPE_STOPWATCH:
+                    metric = new RStopwatch();
+                    break;
+                case TYPE_TEXTFIELD:
+                    metric = new RTextfield();
+                    break;
+                default:
+                    throw new IOException("Unknown metric type "+(header & 0x0F));
+            }
+            metric.setModified((header & MODIFIED) != 0);
+            metric.setID(readInt());
+            readSchema(metric);
+            readValue(metric, bit);
+            return metric;
+        }
+
+        private void readSchema(RMetric metric) throws IOException {
+            metric.setTitle(readString());
+            if(metric instanceof RCheckbox) {
+                String[] labels = new String[readSize()];
+                for(int i = 0; i < labels.length; i++) labels[i] = readString();
+                ((RCheckbox) metric).setValues(new CheckboxValues(labels));
+            } else if(metric instanceof RChooser) {
+                String[] values = new String[readSize()];
+                for(int i = 0; i < values.length; i++) values[i] = readString();
+                ((RChooser) metric).setValues(values);
+            } else if(metric instanceof RCounter) {
+                ((RCounter) metric).setIncrement(readDouble());
+            } else if(metric instanceof RSlider) {
+                ((RSlider) metric).setMin(readInt());
+                ((RSlider) metric).setMax(readInt());
+            }
+        }
+
+        /**
+         * Reads the value of a metric, the schema must already be set
+         * @param bit the bit flag from the metric header
+         */
+        private void readValue(RMetric metric, boolean bit) throws IOException {
+            if(metric instanceof RBoolean) {
+                ((RBoolean) metric).setValue(bit);
+            } else if(metric instanceof RCheckbox) {
+                CheckboxValues values = ((RCheckbox) metric).getValues();
+                int size = values == null ? 0 : values.size();
+                for(int i = 0; i < size; i += 8) {
+                    int bits = in.readUnsignedByte();
+                    for(int j = i; j < Math.min(size, i + 8); j++) values.setChecked(j, (bits & (1 << (j - i))) != 0);
+                }
+            } else if(metric instanceof RChooser) {
+                ((RChooser) metric).setSelectedIndex(readInt());
+            } else if(metric instanceof RCounter) {
+                ((RCounter) metric).setVerboseInput(bit);
+                ((RCounter) metric).setValue(readDouble());
+            } else if(metric instanceof RSlider) {
+                ((RSlider) metric).setValue(readInt());
+            } else if(metric instanceof RStopwatch) {
+                ((RStopwatch) metric).setTime(readDouble());
+                int size = readSize();
+                DoubleList times = new DoubleList(size);
+                for(int i = 0; i < size; i++) times.add(readDouble());
+                ((RStopwatch) metric).setTimes(times);
+            } else if(metric instanceof RTextfield) {
+                ((RTextfield) metric).setText(readString());
+            }
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readSize()];
+            in.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        private double readDouble() throws IOException {
+            long value = readLong();
+            if((value & 1) == 0) return value >> 1;
+            return in.readDouble();
+        }
+
+        /**
+         * Reads a length, guarding against corrupt payloads that would allocate huge arrays
+         */
+        private int readSize() throws IOException {
+            int size = readInt();
+            if(size < 0 || size > in.available()) throw new IOException("Invalid size "+size);
+            return size;
+        }
+
+        private int readInt() throws IOException {
+            return (int) readLong();
+        }
+
+        private long readLong() throws IOException {
+            long zigzag = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            throw new IOException("Malformed varint.");
+        }
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * @return true if the parts of the metrics that are written by {@link Writer#writeSchema(RMetric)} are the same
+     */
+    private static boolean sameSchema(RMetric schema, RMetric metric) {
+        if(getType(schema) != getType(metric) || !equal(schema.getTitle(), metric.getTitle())) return false;
+        if(metric instanceof RCheckbox) {
+            CheckboxValues a = ((RCheckbox) schema).getValues(), b = ((RCheckbox) metric).getValues();
+            return a == null || b == null ? a == b : Arrays.equals(a.getLabels(), b.getLabels());
+        } else if(metric instanceof RChooser) {
+            return Arrays.equals(((RChooser) schema).getValues(), ((RChooser) metric).getValues());
+        } else if(metric instanceof RCounter) {
+            return ((RCounter) schema).getIncrement() == ((RCounter) metric).getIncrement();
+        } else if(metric instanceof RSlider) {
+            return ((RSlider) schema).getMin() == ((RSlider) metric).getMin() && ((RSlider) schema).getMax() == ((RSlider) metric).getMax();
+        }
+        return true;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static HashMap<Integer, RMetric> index(ArrayList<RMetric> metrics) {
+        HashMap<Integer, RMetric> map = new HashMap<>();
+        if(metrics != null) for(RMetric metric : metrics) if(!map.containsKey(metric.getID())) map.put(metric.getID(), metric);
+        return map;
+    }
+
+    /**
+     * @return the type of the metric, 0 if it isn't included in QR codes
+     */
+    private static int getType(RMetric metric) {
+        if(metric instanceof RBoolean) return TYPE_BOOLEAN;
+        else if(metric instanceof RCheckbox) return TYPE_CHECKBOX;
+        else if(metric instanceof RChooser) return TYPE_CHOOSER;
+        else if(metric instanceof RCounter) return TYPE_COUNTER;
+        else if(metric instanceof RSlider) return TYPE_SLIDER;
+        else if(metric instanceof RStopwatch) return TYPE_STOPWATCH;
+        else if(metric instanceof RTextfield && !((RTextfield) metric).isOneLine()) return TYPE_TEXTFIELD;
+        return 0;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            byte[] buffer = new byte[1024];
+            while(!deflater.finished()) out.write(buffer, 0, deflater.deflate(buffer));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            // raw deflate streams need an extra dummy byte at the end of the input
+            inflater.setInput(Arrays.copyOf(bytes, bytes.length + 1));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[1024];
+            while(!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if(count == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IOException("Truncated QR checkout payload.");
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch(DataFormatException e) {
+            throw new IOException("Corrupt QR checkout payload. "+e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.cpjd.robluscouter.sync.qr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * QRFrames splits a payload that's too big for one QR code into a numbered sequence of frames, and reassembles them.
+ *
+ * Every frame carries the number of frames and a CRC32 of the whole payload, so frames can be scanned in any order,
+ * frames from a different payload are rejected, and the reassembled payload is verified before it's decoded.
+ * Each QR code already corrects errors within itself, the checksum catches frames that were mixed up or dropped.
+ *
+ * Frame format:
+ * [2 bytes magic "RQ"][1 byte version][1 byte index][1 byte count][4 bytes CRC32 of the payload][chunk of the payload]
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class QRFrames {
+
+    private static final byte[] MAGIC = {'R', 'Q'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 9;
+
+    /**
+     * The most payload bytes per frame. Smaller QR codes are much easier for a camera to focus on than one huge code,
+     * this fits in a version 25 QR code at low error correction.
+     */
+    public static final int MAX_CHUNK_SIZE = 1200;
+
+    private static final int MAX_FRAMES = 255;
+
+    /**
+     * Splits a payload into frames
+     * @param payload the payload to split
+     * @return the frames, in order, there's always at least one
+     */
+    public static ArrayList<byte[]> split(byte[] payload) {
+        int count = Math.max(1, (payload.length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        if(count > MAX_FRAMES) throw new IllegalArgumentException("Payload is too big for a QR sequence ("+payload.length+" bytes)");
+        long crc = crc(payload, payload.length);
+
+        ArrayList<byte[]> frames = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            int offset = i * MAX_CHUNK_SIZE;
+            int length = Math.min(MAX_CHUNK_SIZE, payload.length - offset);
+            byte[] frame = new byte[HEADER_SIZE + length];
+            frame[0] = MAGIC[0];
+            frame[1] = MAGIC[1];
+            frame[2] = VERSION;
+            frame[3] = (byte) i;
+            frame[4] = (byte) count;
+            frame[5] = (byte) (crc >>> 24);
+            frame[6] = (byte) (crc >>> 16);
+            frame[7] = (byte) (crc >>> 8);
+            frame[8] = (byte) crc;
+            System.arraycopy(payload, offset, frame, HEADER_SIZE, length);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Collects scanned frames until the payload is complete. Scanning the same frame twice is harmless.
+     */
+    public static class Assembler {
+        private byte[][] chunks;
+        private long crc;
+        private int received;
+
+        /**
+         * Adds a scanned frame
+         * @param frame the bytes of the QR code
+         * @return true if all the frames have been received, the payload can be retrieved with {@link #getPayload()}
+         * @throws IOException if the frame isn't a QR frame, or belongs to a different payload than the previous frames
+         */
+        public boolean add(byte[] frame) throws IOException {
+            if(frame.length < HEADER_SIZE || frame[0] != MAGIC[0] || frame[1] != MAGIC[1]) throw new IOException("Not a QR frame.");
+            if((frame[2] & 0xFF) > VERSION) throw new IOException("Unsupported QR frame version "+(frame[2] & 0xFF));
+
+            int index = frame[3] & 0xFF, count = frame[4] & 0xFF;
+            long crc = ((frame[5] & 0xFFL) << 24) | ((frame[6] & 0xFFL) << 16) | ((frame[7] & 0xFFL) << 8) | (frame[8] & 0xFFL);
+            if(count == 0 || index >= count) throw new IOException("Invalid QR frame "+index+" of "+count);
+
+            if(chunks == null) {
+                chunks = new byte[count][];
+                this.crc = crc;
+            } else if(count != chunks.length || crc != this.crc) throw new IOException("QR frame belongs to a different checkout.");
+
+            if(chunks[index] == null) {
+                chunks[index] = new byte[frame.length - HEADER_SIZE];
+                System.arraycopy(frame, HEADER_SIZE, chunks[index], 0, chunks[index].length);
+                received++;
+            }
+            return isComplete();
+        }
+
+        public boolean isComplete() {
+            return chunks != null && received == chunks.length;
+        }
+
+        /**
+         * @return the number of frames received so far
+         */
+        public int getReceived() {
+            return received;
+        }
+
+        /**
+         * @return the number of frames in the sequence, 0 if no frames have been received
+         */
+        public int getCount() {
+            return chunks == null ? 0 : chunks.length;
+        }
+
+        /**
+         * @return the reassembled payload
+         * @throws IOException if frames are missing, or the payload doesn't match its checksum
+         */
+        public byte[] getPayload() throws IOException {
+            if(!isComplete()) throw new IOException("Missing QR frames, received "+received+" of "+getCount());
+            int length = 0;
+            for(byte[] chunk : chunks) length += chunk.length;
+            byte[] payload = new byte[length];
+            int offset = 0;
+            for(byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, payload, offset, chunk.length);
+                offset += chunk.length;
+            }
+            if(crc(payload, payload.length) != crc) throw new IOException("QR payload checksum mismatch.");
+            return payload;
+        }
+    }
+
+    private static long crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+}
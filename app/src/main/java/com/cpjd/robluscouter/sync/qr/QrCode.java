@@ -45,7 +45,8 @@ public final class QrCode {
 	 * As a conservative upper bound, this function is guaranteed to succeed for strings that have 738 or fewer
 	 * Unicode code points (not UTF-16 code units) if the low error correction level is used. The smallest possible
 	 * QR Code version is automatically chosen for the output. The ECC level of the result may be higher than the
-	 * ecl argument if it can be done without increasing the version.
+	 * ecl argument if it can be done without increasing the version. The text is split into segments of different
+	 * modes to minimize the length of the bit stream, see {@link QrSegment#makeSegmentsOptimally(String, Ecc, int, int)}.
 	 * @param text the text to be encoded, which can be any Unicode string
 	 * @param ecl the error correction level to use (will be boosted)
 	 * @return a QR Code representing the text
@@ -55,7 +56,7 @@ public final class QrCode {
 	public static QrCode encodeText(String text, Ecc ecl) {
 		Objects.requireNonNull(text);
 		Objects.requireNonNull(ecl);
-		List<QrSegment> segs = QrSegment.makeSegments(text);
+		List<QrSegment> segs = QrSegment.makeSegmentsOptimally(text, ecl, MIN_VERSION, MAX_VERSION);
 		return encodeSegments(segs, ecl);
 	}
 	
@@ -193,6 +194,10 @@ public final class QrCode {
 	private boolean[][] modules;     // The modules of this QR Code symbol (false = white, true = black)
 	private boolean[][] isFunction;  // Indicates function modules that are not subjected to masking
 	
+	// Opaque pixel colors for toImage()
+	private static final int BLACK = 0xFF000000;
+	private static final int WHITE = 0xFFFFFFFF;
+	
 	
 	
 	/*---- Constructors ----*/
@@ -251,6 +256,9 @@ public final class QrCode {
 	 * of border modules. For example, the arguments scale=10, border=4 means to pad the QR Code symbol
 	 * with 4 white border modules on all four edges, then use 10*10 pixels to represent each module.
 	 * The resulting image only contains the hex colors 000000 and FFFFFF.
+	 * <p>Each row of modules is rendered into one row of pixels, which is copied for the rest of the
+	 * module's height, and the whole image is written with a single {@code setPixels} call.
+	 * To display the symbol without allocating a bitmap at all, use {@link QrDrawable}.</p>
 	 * @param scale the module scale factor, which must be positive
 	 * @param border the number of border modules to add, which must be non-negative
 	 * @return an image representing this QR Code, with padding and scaling
@@ -261,14 +269,27 @@ public final class QrCode {
 			throw new IllegalArgumentException("Value out of range");
 		if (border > Integer.MAX_VALUE / 2 || size + border * 2L > Integer.MAX_VALUE / scale)
 			throw new IllegalArgumentException("Scale or border too large");
-
-        Bitmap result = Bitmap.createBitmap((size + border * 2) * scale, (size + border * 2) * scale, Bitmap.Config.RGB_565);
-		for (int y = 0; y < result.getHeight(); y++) {
-			for (int x = 0; x < result.getWidth(); x++) {
-				boolean val = getModule(x / scale - border, y / scale - border);
-				result.setPixel(x, y, val ? 0x000000 : 0xFFFFFF);
-			}
+		int width = (size + border * 2) * scale;
+		if ((long)width * width > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Scale or border too large");
+		
+		int[] pixels = new int[width * width];
+		Arrays.fill(pixels, 0, border * scale * width, WHITE);  // Top border
+		for (int y = 0; y < size; y++) {
+			int row = (border + y) * scale * width;
+			boolean[] moduleRow = modules[y];
+			Arrays.fill(pixels, row, row + border * scale, WHITE);
+			int x = row + border * scale;
+			for (int i = 0; i < size; i++, x += scale)
+				Arrays.fill(pixels, x, x + scale, moduleRow[i] ? BLACK : WHITE);
+			Arrays.fill(pixels, x, row + width, WHITE);
+			for (int i = 1; i < scale; i++)
+				System.arraycopy(pixels, row, pixels, row + i * width, width);
 		}
+		Arrays.fill(pixels, (border + size) * scale * width, pixels.length, WHITE);  // Bottom border
+		
+		Bitmap result = Bitmap.createBitmap(width, width, Bitmap.Config.RGB_565);
+		result.setPixels(pixels, 0, width, 0, 0, width, width);
 		return result;
 	}
 	
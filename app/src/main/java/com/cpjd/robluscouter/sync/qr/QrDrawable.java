@@ -0,0 +1,93 @@
+package com.cpjd.robluscouter.sync.qr;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * QrDrawable draws a QR code directly onto the canvas, as rectangles, instead of rendering it into a bitmap first.
+ *
+ * No bitmap is allocated, and the code is drawn at the resolution of the display, so it's sharp at any screen density
+ * and any size it's stretched to. Each horizontal run of dark modules is drawn as one rectangle. If the bounds are
+ * at least as big as the code, modules are snapped to a whole number of pixels so their edges aren't blurred.
+ *
+ * The code is centered in the bounds, as a square, with a white background.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class QrDrawable extends Drawable {
+
+    private final QrCode qr;
+    private final int border;
+    private final Paint dark, light;
+
+    /**
+     * @param qr the QR code to draw
+     * @param border the number of white border modules around the code, which must be non-negative
+     */
+    public QrDrawable(QrCode qr, int border) {
+        if(border < 0) throw new IllegalArgumentException("Value out of range");
+        this.qr = qr;
+        this.border = border;
+
+        dark = new Paint();
+        dark.setColor(0xFF000000);
+        dark.setStyle(Paint.Style.FILL);
+        light = new Paint();
+        light.setColor(0xFFFFFFFF);
+        light.setStyle(Paint.Style.FILL);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        int modules = qr.size + border * 2;
+        int available = Math.min(bounds.width(), bounds.height());
+        if(available <= 0) return;
+
+        float scale = available >= modules ? available / modules : (float) available / modules;
+        float left = bounds.left + (bounds.width() - scale * modules) / 2;
+        float top = bounds.top + (bounds.height() - scale * modules) / 2;
+
+        canvas.drawRect(left, top, left + scale * modules, top + scale * modules, light);
+        for(int y = 0; y < qr.size; y++) {
+            float rowTop = top + (border + y) * scale;
+            for(int x = 0; x < qr.size; x++) {
+                if(!qr.getModule(x, y)) continue;
+                int start = x;
+                while(x + 1 < qr.size && qr.getModule(x + 1, y)) x++;
+                canvas.drawRect(left + (border + start) * scale, rowTop, left + (border + x + 1) * scale, rowTop + scale, dark);
+            }
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        dark.setAlpha(alpha);
+        light.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        dark.setColorFilter(colorFilter);
+        light.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.OPAQUE;
+    }
+
+    /**
+     * @return the QR code being drawn
+     */
+    public QrCode getQrCode() {
+        return qr;
+    }
+}
@@ -25,6 +25,7 @@ package com.cpjd.robluscouter.sync.qr;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.regex.Pattern;
@@ -109,7 +110,8 @@ public final class QrSegment {
 	
 	/**
 	 * Returns a new mutable list of zero or more segments to represent the specified Unicode text string.
-	 * The result may use various segment modes and switch modes to optimize the length of the bit stream.
+	 * The whole string is put in a single segment, in the most efficient mode that can encode all of it.
+	 * To split the string into segments of different modes, see {@link #makeSegmentsOptimally(String, QrCode.Ecc, int, int)}.
 	 * @param text the text to be encoded, which can be any Unicode string
 	 * @return a list of segments containing the text
 	 * @throws NullPointerException if the text is {@code null}
@@ -130,6 +132,146 @@ public final class QrSegment {
 	}
 	
 	
+	/**
+	 * Returns a new mutable list of zero or more segments to represent the specified Unicode text string,
+	 * split into the sequence of numeric, alphanumeric and byte mode segments that takes the fewest bits.
+	 * <p>For example, text that's mostly digits with a few separators is put in long numeric segments
+	 * (3.33 bits per digit) instead of one byte segment (8 bits per digit). The best split depends on the
+	 * width of the character count fields, which changes at versions 10 and 27, so it's computed for the
+	 * smallest version range that the text fits in. Kanji mode isn't used, since it needs a Shift JIS table,
+	 * characters outside of the other modes are written as UTF-8 bytes.</p>
+	 * @param text the text to be encoded, which can be any Unicode string
+	 * @param ecl the error correction level the segments will be encoded at
+	 * @param minVersion the minimum allowed version of the QR symbol (at least 1)
+	 * @param maxVersion the maximum allowed version of the QR symbol (at most 40)
+	 * @return a list of segments containing the text, that fits in a QR Code within the version range
+	 * @throws NullPointerException if the text or error correction level is {@code null}
+	 * @throws IllegalArgumentException if 1 &le; minVersion &le; maxVersion &le; 40 is violated,
+	 * or if the text is too long to fit in a QR Code at maxVersion at the ECL
+	 */
+	public static List<QrSegment> makeSegmentsOptimally(String text, QrCode.Ecc ecl, int minVersion, int maxVersion) {
+		Objects.requireNonNull(text);
+		Objects.requireNonNull(ecl);
+		if (!(QrCode.MIN_VERSION <= minVersion && minVersion <= maxVersion && maxVersion <= QrCode.MAX_VERSION))
+			throw new IllegalArgumentException("Invalid value");
+		
+		int[] codePoints = toCodePoints(text);
+		List<QrSegment> segs = null;
+		for (int version = minVersion; ; version++) {
+			// The character count widths only change at versions 10 and 27
+			if (version == minVersion || version == 10 || version == 27)
+				segs = splitIntoSegments(codePoints, computeCharacterModes(codePoints, version));
+			int dataUsedBits = getTotalBits(segs, version);
+			if (dataUsedBits != -1 && dataUsedBits <= QrCode.getNumDataCodewords(version, ecl) * 8)
+				return segs;  // This version number is found to be suitable
+			if (version >= maxVersion)  // All versions in the range could not fit the given data
+				throw new IllegalArgumentException("Data too long");
+		}
+	}
+	
+	
+	// Returns the mode to encode each code point in, so that the total number of bits is minimal
+	// at the given version. Costs are counted in sixths of a bit, so that alphanumeric (5.5 bits per
+	// character) and numeric (3.33 bits per digit) characters have whole number costs.
+	private static Mode[] computeCharacterModes(int[] codePoints, int version) {
+		if (codePoints.length == 0)
+			return new Mode[0];
+		Mode[] modes = {Mode.BYTE, Mode.ALPHANUMERIC, Mode.NUMERIC};
+		
+		// The cost of starting a segment of each mode: the mode indicator and the character count
+		int[] headCosts = new int[modes.length];
+		for (int i = 0; i < modes.length; i++)
+			headCosts[i] = (4 + modes[i].numCharCountBits(version)) * 6;
+		
+		// charModes[i][j] is the mode of code point i in the cheapest encoding of the first i + 1 code points
+		// that ends with a segment of mode j, null if there isn't one
+		Mode[][] charModes = new Mode[codePoints.length][modes.length];
+		int[] prevCosts = headCosts.clone();
+		for (int i = 0; i < codePoints.length; i++) {
+			int c = codePoints[i];
+			int[] curCosts = new int[modes.length];
+			
+			// Extend the segment of each mode with this code point, if it can be encoded in the mode
+			curCosts[0] = prevCosts[0] + countUtf8Bytes(c) * 8 * 6;
+			charModes[i][0] = modes[0];
+			if (c < 128 && ALPHANUMERIC_CHARSET.indexOf(c) != -1) {
+				curCosts[1] = prevCosts[1] + 33;  // 5.5 bits per character
+				charModes[i][1] = modes[1];
+			}
+			if ('0' <= c && c <= '9') {
+				curCosts[2] = prevCosts[2] + 20;  // 3.33 bits per digit
+				charModes[i][2] = modes[2];
+			}
+			
+			// Or end the segment after this code point, and start a segment of a different mode
+			for (int j = 0; j < modes.length; j++) {
+				for (int k = 0; k < modes.length; k++) {
+					if (charModes[i][k] == null)
+						continue;
+					int newCost = (curCosts[k] + 5) / 6 * 6 + headCosts[j];  // Rounded up to a whole bit
+					if (charModes[i][j] == null || newCost < curCosts[j]) {
+						curCosts[j] = newCost;
+						charModes[i][j] = modes[k];
+					}
+				}
+			}
+			prevCosts = curCosts;
+		}
+		
+		// Find the cheapest mode to end in, and trace the modes back from there
+		int curMode = 0;
+		for (int i = 1; i < modes.length; i++) {
+			if (prevCosts[i] < prevCosts[curMode])
+				curMode = i;
+		}
+		Mode[] result = new Mode[codePoints.length];
+		for (int i = codePoints.length - 1; i >= 0; i--) {
+			Mode mode = charModes[i][curMode];
+			result[i] = mode;
+			curMode = Arrays.asList(modes).indexOf(mode);
+		}
+		return result;
+	}
+	
+	
+	// Groups runs of code points with the same mode into segments
+	private static List<QrSegment> splitIntoSegments(int[] codePoints, Mode[] charModes) {
+		List<QrSegment> result = new ArrayList<>();
+		int start = 0;
+		for (int i = 1; i <= codePoints.length; i++) {
+			if (i < codePoints.length && charModes[i] == charModes[start])
+				continue;
+			String run = new String(codePoints, start, i - start);
+			if (charModes[start] == Mode.NUMERIC)
+				result.add(makeNumeric(run));
+			else if (charModes[start] == Mode.ALPHANUMERIC)
+				result.add(makeAlphanumeric(run));
+			else
+				result.add(makeBytes(run.getBytes(StandardCharsets.UTF_8)));
+			start = i;
+		}
+		return result;
+	}
+	
+	
+	private static int[] toCodePoints(String text) {
+		int[] result = new int[text.codePointCount(0, text.length())];
+		for (int i = 0, j = 0; i < text.length(); j++) {
+			result[j] = text.codePointAt(i);
+			i += Character.charCount(result[j]);
+		}
+		return result;
+	}
+	
+	
+	private static int countUtf8Bytes(int c) {
+		if      (c <     0x80)  return 1;
+		else if (c <    0x800)  return 2;
+		else if (c <  0x10000)  return 3;
+		else                    return 4;
+	}
+	
+	
 	/**
 	 * Returns a segment representing an Extended Channel Interpretation
 	 * (ECI) designator with the specified assignment value.
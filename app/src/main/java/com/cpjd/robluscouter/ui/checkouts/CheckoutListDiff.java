@@ -0,0 +1,81 @@
+package com.cpjd.robluscouter.ui.checkouts;
+
+import android.support.v7.util.DiffUtil;
+
+import com.cpjd.robluscouter.models.RCheckout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * CheckoutListDiff computes the difference between the checkouts currently displayed by a RecyclerViewAdapter and
+ * a freshly loaded list, so that only the rows that actually changed are re-bound.
+ *
+ * Rows are matched by checkout ID. Since CheckoutRepository shares checkout instances, the old and new lists usually contain
+ * the same objects, so rows can't be compared directly. Instead, a "contents" hash of everything a row displays is
+ * recorded when the row is displayed, and compared against the hash of the new list.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+class CheckoutListDiff extends DiffUtil.Callback {
+
+    private final ArrayList<RCheckout> oldCheckouts;
+    private final int[] oldContents;
+    private final ArrayList<RCheckout> newCheckouts;
+    private final int[] newContents;
+
+    CheckoutListDiff(ArrayList<RCheckout> oldCheckouts, int[] oldContents, ArrayList<RCheckout> newCheckouts, int[] newContents) {
+        this.oldCheckouts = oldCheckouts;
+        this.oldContents = oldContents;
+        this.newCheckouts = newCheckouts;
+        this.newContents = newContents;
+    }
+
+    /**
+     * Hashes the fields of a checkout that are displayed in its row
+     * @param checkout the checkout to hash
+     * @return hash of the displayed contents
+     */
+    static int contentsOf(RCheckout checkout) {
+        if(checkout == null) return 0;
+        Object[] fields;
+        if(checkout.getTeam() == null || checkout.getTeam().getTabs() == null || checkout.getTeam().getTabs().size() == 0) {
+            fields = new Object[] {checkout.getID(), checkout.getStatus(), checkout.getTime(), checkout.getNameTag()};
+        } else {
+            fields = new Object[] {checkout.getID(), checkout.getStatus(), checkout.getTime(), checkout.getNameTag(), checkout.getTeam().getLastEdit(),
+                    checkout.getTeam().getName(), checkout.getTeam().getNumber(), checkout.getTeam().getTabs().get(0).getTitle(),
+                    checkout.getTeam().getTabs().get(0).isRedAlliance(), checkout.getTeam().getTabs().get(0).getTime()};
+        }
+        return Arrays.hashCode(fields);
+    }
+
+    static int[] contentsOf(ArrayList<RCheckout> checkouts) {
+        if(checkouts == null) return new int[0];
+        int[] contents = new int[checkouts.size()];
+        for(int i = 0; i < contents.length; i++) contents[i] = contentsOf(checkouts.get(i));
+        return contents;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldCheckouts.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newCheckouts.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        RCheckout oldCheckout = oldCheckouts.get(oldItemPosition);
+        RCheckout newCheckout = newCheckouts.get(newItemPosition);
+        return oldCheckout != null && newCheckout != null && oldCheckout.getID() == newCheckout.getID();
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldContents[oldItemPosition] == newContents[newItemPosition];
+    }
+}
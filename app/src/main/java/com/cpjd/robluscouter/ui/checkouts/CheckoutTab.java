@@ -5,6 +5,7 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SimpleItemAnimator;
@@ -16,6 +17,7 @@ import android.view.ViewGroup;
 import android.widget.ProgressBar;
 
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RSettings;
@@ -31,7 +33,7 @@ import lombok.Getter;
  * Abstract class that acts as a checkouts container. Manages a list of checkouts in a nice recycler view setup.
  *
  * @since 1.0.0
- * @version 2
+ * @version 3
  * @author Will Davies
  */
 public class CheckoutTab extends Fragment implements CheckoutClickListener, LoadCheckouts.LoadCheckoutsListener {
@@ -63,6 +65,11 @@ public class CheckoutTab extends Fragment implements CheckoutClickListener, Load
 
     private LoadCheckouts loadCheckouts;
 
+    /**
+     * True once the first load has been displayed, after that, updates are applied without hiding the list
+     */
+    private boolean loaded;
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         view = inflater.inflate(R.layout.checkout_tab, container, false);
@@ -126,7 +133,8 @@ public class CheckoutTab extends Fragment implements CheckoutClickListener, Load
     }
 
     /**
-     * Forces this tab to re-sort it checkouts from CheckoutView.checkouts
+     * Forces this tab to re-sort its checkouts from CheckoutRepository. Only rows that changed are updated, the progress bar
+     * is only shown for the first load.
      */
     public void forceUpdate() {
         if(view == null) return;
@@ -135,28 +143,34 @@ public class CheckoutTab extends Fragment implements CheckoutClickListener, Load
             loadCheckouts.quit();
         }
 
-        recyclerView.setVisibility(View.GONE);
-        progressBar.setVisibility(View.VISIBLE);
+        if(!loaded) {
+            recyclerView.setVisibility(View.GONE);
+            progressBar.setVisibility(View.VISIBLE);
+        }
 
-        loadCheckouts = new LoadCheckouts(new IO(view.getContext()), CheckoutTab.this, mode);
+        loadCheckouts = new LoadCheckouts(new IO(view.getContext()), CheckoutRepository.getInstance(view.getContext()), CheckoutTab.this, mode,
+                adapter.snapshot(), adapter.snapshotContents(), adapter.getGeneration());
         loadCheckouts.start();
     }
 
     @Override
-    public void checkoutsLoaded(final ArrayList<RCheckout> checkouts, final boolean hideZeroRelevanceCheckouts) {
+    public void checkoutsLoaded(final ArrayList<RCheckout> checkouts, final int[] contents, final DiffUtil.DiffResult diff, final int generation) {
         Log.d("RSBS", "Checkouts loaded.");
 
         if(getActivity() != null) {
             getActivity().runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
+                    // The adapter was modified while the checkouts were loading, the diff is out of date
+                    if(!adapter.setCheckouts(checkouts, contents, diff, generation)) {
+                        forceUpdate();
+                        return;
+                    }
+                    loaded = true;
                     progressBar.setVisibility(View.INVISIBLE);
                     recyclerView.setVisibility(View.VISIBLE);
-                    adapter.setCheckouts(checkouts, hideZeroRelevanceCheckouts);
                 }
             });
         }
     }
 }
-
-
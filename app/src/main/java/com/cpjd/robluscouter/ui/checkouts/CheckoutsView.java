@@ -6,6 +6,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.StrictMode;
 import android.support.design.widget.TabLayout;
 import android.support.v4.view.ViewPager;
@@ -16,6 +17,7 @@ import android.view.MenuItem;
 
 import com.cpjd.http.Request;
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RSettings;
@@ -134,12 +136,7 @@ public class CheckoutsView extends AppCompatActivity {
     private BroadcastReceiver uiRefreshRequestReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if(intent.getBooleanExtra("mycheckouts", false) && tabAdapter.getMyCheckouts() != null) {
-                tabAdapter.getMyCheckouts().forceUpdate();
-            }
-            if(intent.getBooleanExtra("checkouts", false) && tabAdapter.getCheckouts() != null) {
-                tabAdapter.getCheckouts().forceUpdate();
-            }
+            // Checkout changes are received from CheckoutRepository, see repositoryListener
 
             // Make sure data is persistent
             settings = new IO(getApplicationContext()).loadSettings();
@@ -152,6 +149,36 @@ public class CheckoutsView extends AppCompatActivity {
         }
     };
 
+    /**
+     * Refreshes the checkout tabs when checkouts are changed by the background service, Bluetooth, or another activity.
+     * Changes are usually received in bursts (a sync can save hundreds of checkouts), so the refresh is delayed slightly
+     * and only done once per burst.
+     */
+    private final Handler refreshHandler = new Handler();
+
+    private final Runnable refreshMyCheckouts = new Runnable() {
+        @Override
+        public void run() {
+            if(tabAdapter.getMyCheckouts() != null) tabAdapter.getMyCheckouts().forceUpdate();
+        }
+    };
+
+    private final Runnable refreshCheckouts = new Runnable() {
+        @Override
+        public void run() {
+            if(tabAdapter.getCheckouts() != null) tabAdapter.getCheckouts().forceUpdate();
+        }
+    };
+
+    private final CheckoutRepository.CheckoutRepositoryListener repositoryListener = new CheckoutRepository.CheckoutRepositoryListener() {
+        @Override
+        public void checkoutsChanged(int mode, ArrayList<Integer> IDs) {
+            Runnable refresh = mode == Constants.MY_CHECKOUTS ? refreshMyCheckouts : refreshCheckouts;
+            refreshHandler.removeCallbacks(refresh);
+            refreshHandler.postDelayed(refresh, 250);
+        }
+    };
+
     /**
      * Manages the mini drop down settings menu
      */
@@ -212,6 +239,7 @@ public class CheckoutsView extends AppCompatActivity {
     public void onResume() {
         super.onResume();
         registerReceiver(uiRefreshRequestReceiver, serviceFilter);
+        CheckoutRepository.getInstance(getApplicationContext()).addListener(repositoryListener);
         tabAdapter.getMyCheckouts().forceUpdate();
         tabAdapter.getCheckouts().forceUpdate();
     }
@@ -220,6 +248,9 @@ public class CheckoutsView extends AppCompatActivity {
     public void onPause() {
         super.onPause();
         unregisterReceiver(uiRefreshRequestReceiver);
+        CheckoutRepository.getInstance(getApplicationContext()).removeListener(repositoryListener);
+        refreshHandler.removeCallbacks(refreshMyCheckouts);
+        refreshHandler.removeCallbacks(refreshCheckouts);
     }
 
     @Override
@@ -227,7 +258,7 @@ public class CheckoutsView extends AppCompatActivity {
         // CheckoutsView will received activity results from all children fragments, so handle the "TEAM_EDITED" event here
         if(resultCode == Constants.TEAM_EDITED) {
             int ID = data.getIntExtra("checkout", 0);
-            tabAdapter.getMyCheckouts().getAdapter().reAdd(new IO(getApplicationContext()).loadMyCheckout(ID));
+            tabAdapter.getMyCheckouts().getAdapter().reAdd(CheckoutRepository.getInstance(getApplicationContext()).getMyCheckout(ID));
         }
 
         settings = new IO(getApplicationContext()).loadSettings();
@@ -1,5 +1,8 @@
 package com.cpjd.robluscouter.ui.checkouts;
 
+import android.support.v7.util.DiffUtil;
+
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RSettings;
@@ -8,29 +11,53 @@ import com.cpjd.robluscouter.utils.HandoffStatus;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
- * Load checkouts sorts through CheckoutsView.checkouts and finds checkouts that this particular CheckoutTab
- * is interested in.
+ * Load checkouts sorts through the checkouts in CheckoutRepository and finds checkouts that this particular CheckoutTab
+ * is interested in. It also computes the changes from the checkouts that are currently displayed, so that
+ * the RecyclerViewAdapter only has to update rows that changed.
  *
- * @version 2
+ * @version 3
  */
 public class LoadCheckouts extends Thread {
 
     private int mode;
     private WeakReference<IO> ioWeakReference;
+    private CheckoutRepository repository;
+
+    /**
+     * The checkouts that are currently displayed, and their contents hashes
+     */
+    private ArrayList<RCheckout> displayed;
+    private int[] displayedContents;
+    private int generation;
+
+    /**
+     * Set if this thread was stopped by a newer load, its results shouldn't be delivered
+     */
+    private volatile boolean cancelled;
 
     private LoadCheckoutsListener listener;
 
     public interface LoadCheckoutsListener {
-        void checkoutsLoaded(ArrayList<RCheckout> checkouts, boolean hideZeroRelevanceCheckouts);
+        /**
+         * Called from the LoadCheckouts thread
+         * @param checkouts the checkouts to display, never null
+         * @param contents contents hashes of the checkouts
+         * @param diff the changes from the displayed checkouts
+         * @param generation the generation of the adapter's checkouts array the diff was computed against
+         */
+        void checkoutsLoaded(ArrayList<RCheckout> checkouts, int[] contents, DiffUtil.DiffResult diff, int generation);
     }
 
-    LoadCheckouts(IO io, LoadCheckoutsListener listener, int mode) {
+    LoadCheckouts(IO io, CheckoutRepository repository, LoadCheckoutsListener listener, int mode, ArrayList<RCheckout> displayed, int[] displayedContents, int generation) {
         this.ioWeakReference = new WeakReference<>(io);
+        this.repository = repository;
         this.mode = mode;
         this.listener = listener;
+        this.displayed = displayed;
+        this.displayedContents = displayedContents;
+        this.generation = generation;
     }
 
     @Override
@@ -40,19 +67,15 @@ public class LoadCheckouts extends Thread {
             return;
         }
 
-            /*
-             * Load from file system if necessary
-             */
+        /*
+         * Load from the repository, it will only hit the file system the first time, the checkouts are already sorted
+         */
         ArrayList<RCheckout> checkouts;
-        if(mode == Constants.CHECKOUTS) checkouts = ioWeakReference.get().loadCheckouts();
-        else checkouts = ioWeakReference.get().loadMyCheckouts();
+        if(mode == Constants.CHECKOUTS) checkouts = repository.getCheckouts();
+        else checkouts = repository.getMyCheckouts();
 
-        // If they're equal to null, return early
-        if(checkouts == null || checkouts.size() == 0) {
-            quit();
-            listener.checkoutsLoaded(null, false);
-            return;
-        }
+        // If they're equal to null, there's nothing to display
+        if(checkouts == null) checkouts = new ArrayList<>();
 
         // Error prevention
         for(RCheckout checkout : checkouts) {
@@ -60,31 +83,34 @@ public class LoadCheckouts extends Thread {
         }
 
         /*
-         * Remove items that shouldn't be listed
+         * Remove items that shouldn't be listed. The checkouts are shared with the rest of the app by CheckoutRepository,
+         * so they're only read here, never modified
          */
         RSettings settings = ioWeakReference.get().loadSettings();
         if(mode == Constants.CHECKOUTS) {
+            ArrayList<RCheckout> relevant = new ArrayList<>();
             for(RCheckout checkout : checkouts) {
-                checkout.setCustomRelevance(0);
-
                 if(!settings.isShowPit() && checkout.getTeam().getTabs().get(0).getTitle().equalsIgnoreCase("PIT")) continue;
                 if(!settings.isShowCompleted() && checkout.getStatus() == HandoffStatus.COMPLETED) continue;
                 if(!settings.isShowCheckedOut() && checkout.getStatus() == HandoffStatus.CHECKED_OUT) continue;
 
-                checkout.setCustomRelevance(1);
+                relevant.add(checkout);
             }
-
-            Collections.sort(checkouts);
-            listener.checkoutsLoaded(checkouts, true);
-            quit();
-        } else {
-            Collections.sort(checkouts);
-            listener.checkoutsLoaded(checkouts, false);
-            quit();
+            checkouts = relevant;
         }
+
+        /*
+         * Compute the changes from what's currently displayed
+         */
+        int[] contents = CheckoutListDiff.contentsOf(checkouts);
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new CheckoutListDiff(displayed, displayedContents, checkouts, contents), false);
+
+        if(!cancelled) listener.checkoutsLoaded(checkouts, contents, diff, generation);
+        quit();
     }
 
     void quit() {
+        cancelled = true;
         interrupt();
     }
 }
@@ -2,6 +2,7 @@ package com.cpjd.robluscouter.ui.checkouts;
 
 import android.content.Context;
 import android.graphics.Color;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -26,7 +27,7 @@ import lombok.EqualsAndHashCode;
  * Think of this as the backend of the RecyclerView. It's what's actually handling RCheckout loading and insertion, removal, etc.
  *
  * @since 1.0.1
- * @version 3
+ * @version 4
  * @author Will Davies
  */
 @EqualsAndHashCode(callSuper = true)
@@ -41,6 +42,15 @@ public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
      * This is the array of checkouts that this recycler view will manage.
      */
     private ArrayList<RCheckout> checkouts;
+    /**
+     * Hash of what's displayed for each checkout, used for computing the changes between loads
+     * @see CheckoutListDiff
+     */
+    private int[] contents;
+    /**
+     * Incremented every time the checkouts array is modified, a diff computed against an older generation can't be applied
+     */
+    private int generation;
     /**
      * Stores the mode to operate under, defined by "RecyclerViewAdapter" constants in
      * @see com.cpjd.robluscouter.utils.Constants
@@ -62,24 +72,50 @@ public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     }
 
     /**
-     * Loads the checkouts into the array to be managed
+     * Replaces all the checkouts being managed, every row is re-bound
      * @param checkouts the checkouts to pass control off to the array
-     * @param hideZeroRelevanceItems if checkouts with 0 relevance should be visible
-     */
-    public void setCheckouts(ArrayList<RCheckout> checkouts, boolean hideZeroRelevanceItems) {
-        if(hideZeroRelevanceItems) {
-            this.checkouts = new ArrayList<>(checkouts); // clones the array
-            for(int i = 0; i < this.checkouts.size(); i++) {
-                if(this.checkouts.get(i).getCustomRelevance() == 0) {
-                    this.checkouts.remove(i);
-                    i--;
-                }
-            }
-        } else this.checkouts = checkouts;
-
+     */
+    public void setCheckouts(ArrayList<RCheckout> checkouts) {
+        this.checkouts = checkouts;
+        this.contents = CheckoutListDiff.contentsOf(checkouts);
+        this.generation++;
         notifyDataSetChanged();
     }
 
+    /**
+     * Loads the checkouts into the array to be managed, only the rows that changed are updated
+     * @param checkouts the checkouts to pass control off to the array
+     * @param contents the contents hashes of the checkouts
+     * @param diff the changes from the previously displayed checkouts, computed by LoadCheckouts
+     * @param generation the generation of the checkouts array that the diff was computed against
+     * @return false if the checkouts array was modified after the diff was computed, the checkouts should be re-loaded
+     */
+    boolean setCheckouts(ArrayList<RCheckout> checkouts, int[] contents, DiffUtil.DiffResult diff, int generation) {
+        if(generation != this.generation) return false;
+
+        this.checkouts = checkouts;
+        this.contents = contents;
+        this.generation++;
+        diff.dispatchUpdatesTo(this);
+        return true;
+    }
+
+    /**
+     * @return a copy of the checkouts array that can be safely diffed on another thread
+     */
+    ArrayList<RCheckout> snapshot() {
+        if(checkouts == null) return new ArrayList<>();
+        return new ArrayList<>(checkouts);
+    }
+
+    /**
+     * @return the contents hashes of the checkouts array
+     */
+    int[] snapshotContents() {
+        if(contents == null || checkouts == null || contents.length != checkouts.size()) contents = CheckoutListDiff.contentsOf(checkouts);
+        return contents.clone();
+    }
+
     /**
      * Okay, so essentially certain UI actions will remove the card from the recycler view.
      * Sometimes a dialog prompt will allow the user to reverse their decision, so, we have a method
@@ -87,16 +123,19 @@ public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
      * @param handoff the handoff to reinsert, position will be restored automatically
      */
     public void reAdd(RCheckout handoff) {
+        if(checkouts == null || handoff == null) return;
+
         for(int i = 0; i < checkouts.size(); i++) {
             if(checkouts.get(i) == null) continue;
 
             if(checkouts.get(i).getID() == handoff.getID()) {
-                checkouts.remove(i);
-                checkouts.add(i, handoff);
+                checkouts.set(i, handoff);
+                if(contents != null && i < contents.length) contents[i] = CheckoutListDiff.contentsOf(handoff);
+                generation++;
+                notifyItemChanged(i);
                 break;
             }
         }
-        notifyDataSetChanged();
     }
 
     /**
@@ -105,6 +144,8 @@ public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     public void removeAll() {
         if(checkouts == null) return;
         this.checkouts.clear();
+        contents = null;
+        generation++;
         notifyDataSetChanged();
     }
 
@@ -114,6 +155,13 @@ public class RecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
      */
     void remove(int position) {
         checkouts.remove(position);
+        if(contents != null && position < contents.length) {
+            int[] temp = new int[contents.length - 1];
+            System.arraycopy(contents, 0, temp, 0, position);
+            System.arraycopy(contents, position + 1, temp, position, temp.length - position);
+            contents = temp;
+        }
+        generation++;
         notifyItemRemoved(position);
     }
 
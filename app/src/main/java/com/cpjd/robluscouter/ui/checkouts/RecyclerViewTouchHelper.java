@@ -9,9 +9,11 @@ import android.support.v7.widget.helper.ItemTouchHelper;
 import android.view.View;
 
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RSettings;
+import com.cpjd.robluscouter.sync.qr.QRCache;
 import com.cpjd.robluscouter.ui.dialogs.FastDialogBuilder;
 import com.cpjd.robluscouter.utils.Constants;
 import com.cpjd.robluscouter.utils.HandoffStatus;
@@ -73,8 +75,8 @@ public class RecyclerViewTouchHelper extends ItemTouchHelper.SimpleCallback {
             checkout.setStatus(HandoffStatus.CHECKED_OUT);
             checkout.setNameTag(settings.getName());
             checkout.setTime(System.currentTimeMillis());
-            io.saveMyCheckout(checkout);
-            io.saveCheckout(checkout);
+            CheckoutRepository.getInstance(checkoutsAdapter.getContext()).saveMyCheckout(checkout);
+            CheckoutRepository.getInstance(checkoutsAdapter.getContext()).saveCheckout(checkout);
             io.savePendingCheckout(checkout);
 
             // If the user doesn't want to see currently checked out items, remove this from the list
@@ -137,8 +139,10 @@ public class RecyclerViewTouchHelper extends ItemTouchHelper.SimpleCallback {
         checkout.setStatus(HandoffStatus.COMPLETED);
         checkout.setNameTag(settings.getName());
         checkout.setTime(System.currentTimeMillis());
-        io.saveMyCheckout(checkout);
+        CheckoutRepository.getInstance(checkoutsAdapter.getContext()).saveMyCheckout(checkout);
         io.savePendingCheckout(checkout);
+        // Generate the QR code now, so it's ready if the user wants to export it
+        QRCache.getInstance(checkoutsAdapter.getContext()).prepare(checkout);
         // The checkouts adapter will need to reload status in the my checkouts tab
         checkoutsAdapter.reAdd(checkout);
     }
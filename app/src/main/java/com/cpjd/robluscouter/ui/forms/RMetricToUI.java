@@ -47,6 +47,7 @@ import android.widget.TextView;
 import com.cpjd.robluscouter.R;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RUI;
+import com.cpjd.robluscouter.models.metrics.CalculationGraph;
 import com.cpjd.robluscouter.models.metrics.RBoolean;
 import com.cpjd.robluscouter.models.metrics.RCalculation;
 import com.cpjd.robluscouter.models.metrics.RCheckbox;
@@ -66,6 +67,7 @@ import com.cpjd.robluscouter.ui.images.FullScreenImageGalleryAdapter;
 import com.cpjd.robluscouter.ui.images.ImageGalleryActivity;
 import com.cpjd.robluscouter.ui.images.ImageGalleryAdapter;
 import com.cpjd.robluscouter.utils.Constants;
+import com.cpjd.robluscouter.utils.DoubleList;
 import com.cpjd.robluscouter.utils.Utils;
 
 import java.util.ArrayList;
@@ -652,17 +654,16 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
         RelativeLayout.LayoutParams oParams = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
         if(checkbox.getValues() != null) {
             final AppCompatCheckBox[] boxes = new AppCompatCheckBox[checkbox.getValues().size()];
-            int i = 0;
-            for(Object o : checkbox.getValues().keySet()) {
+            for(int i = 0; i < boxes.length; i++) {
                 params = new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
                 params.addRule(RelativeLayout.RIGHT_OF, title.getId());
                 if (i > 0) params.addRule(RelativeLayout.BELOW, boxes[i - 1].getId());
                 AppCompatCheckBox box = new AppCompatCheckBox(activity);
-                box.setText(o.toString());
-                box.setTag(o.toString());
+                box.setText(checkbox.getValues().getLabel(i));
+                box.setTag(i);
                 box.setId(Utils.generateViewId());
                 box.setTextColor(rui.getText());
-                box.setChecked(checkbox.getValues().get(o.toString()));
+                box.setChecked(checkbox.getValues().isChecked(i));
                 box.setEnabled(editable);
                 box.setLayoutParams(params);
                 ColorStateList colorStateList = new ColorStateList(
@@ -680,13 +681,12 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
                     @Override
                     public void onCheckedChanged(CompoundButton compoundButton, boolean b) {
                         layout.removeView(observed);
-                        checkbox.getValues().put(compoundButton.getTag().toString(), b);
+                        checkbox.getValues().setChecked((Integer) compoundButton.getTag(), b);
                         listener.changeMade(checkbox);
                     }
                 });
                 boxes[i] = box;
                 layout.addView(boxes[i]);
-                i++;
             }
             oParams.addRule(RelativeLayout.BELOW, boxes[boxes.length - 1].getId());
         }
@@ -877,7 +877,7 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
 
         // Load times into the thing
         if(stopwatch.getTimes() != null) {
-            for(double d : stopwatch.getTimes()) addStopwatchLapButton(stopwatch, layout, playButton, laps, d);
+            for(int i = 0; i < stopwatch.getTimes().size(); i++) addStopwatchLapButton(stopwatch, layout, playButton, laps, stopwatch.getTimes().get(i));
         }
 
         lapButton.setOnClickListener(new View.OnClickListener() {
@@ -887,8 +887,8 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
                 layout.removeView(observed);
                 // Add the current time on the stopwatch to the view
                 double t = Double.parseDouble(timer.getText().toString().replace("s", ""));
-                ArrayList<Double> times = stopwatch.getTimes();
-                if(times == null) times = new ArrayList<>();
+                DoubleList times = stopwatch.getTimes();
+                if(times == null) times = new DoubleList();
                 times.add(t);
                 stopwatch.setTimes(times);
                 addStopwatchLapButton(stopwatch, layout, playButton, laps, t);
@@ -1016,9 +1016,15 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
     }
 
 
-    public CardView getCalculationMetric(ArrayList<RMetric> metrics, RCalculation calculation) {
+    /**
+     * Gets the Calculation UI card from an RCalculation reference
+     * @param calculations the evaluated calculations of the tab, null to not display a value
+     * @param calculation RCalculation reference to be set to the UI
+     * @return a UI CardView
+     */
+    public CardView getCalculationMetric(CalculationGraph calculations, RCalculation calculation) {
         String value;
-        if(metrics != null) value = calculation.getTitle()+"\nValue: "+calculation.getValue(metrics);
+        if(calculations != null) value = calculation.getTitle()+"\nValue: "+calculations.getValue(calculation);
         else value = calculation.getTitle()+"\nValue:";
 
         RelativeLayout layout = new RelativeLayout(activity);
@@ -1037,9 +1043,7 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
         et.setLayoutParams(params);
         layout.addView(et);
 
-        CardView card = getCard(layout);
-        card.setTag("CALC:"+calculation.getID());
-        return card;
+        return getCard(layout);
     }
 
 
@@ -1148,10 +1152,19 @@ public class RMetricToUI implements ImageGalleryAdapter.ImageThumbnailLoader, Fu
                  */
                 IO io = new IO(activity);
                 ImageGalleryActivity.IMAGES = new ArrayList<>();
+                boolean removed = false;
                 for(int i = 0; gallery.getPictureIDs() != null && i < gallery.getPictureIDs().size(); i++) {
                     Log.d("RSBS", "Loading picture into checkout...");
-                    ImageGalleryActivity.IMAGES.add(io.loadPicture(gallery.getPictureIDs().get(i)));
+                    byte[] picture = io.loadPicture(gallery.getPictureIDs().get(i));
+                    if(picture != null) ImageGalleryActivity.IMAGES.add(picture);
+                    else if(editable) {
+                        // IMAGES must line up with the picture IDs, the gallery deletes and edits pictures by position
+                        Log.d("RSBS", "Picture "+gallery.getPictureIDs().get(i)+" is missing, removing it from the gallery.");
+                        gallery.getPictureIDs().remove(i--);
+                        removed = true;
+                    }
                 }
+                if(removed && listener != null) listener.changeMade(gallery);
 
                 ImageGalleryActivity.setImageThumbnailLoader(RMetricToUI.this);
                 FullScreenImageGalleryActivity.setFullScreenImageLoader(RMetricToUI.this);
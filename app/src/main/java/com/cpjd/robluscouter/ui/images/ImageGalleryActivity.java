@@ -23,6 +23,7 @@ import android.widget.ImageView;
 import android.widget.RelativeLayout;
 
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.metrics.RGallery;
 import com.cpjd.robluscouter.ui.team.TeamViewer;
@@ -216,18 +217,14 @@ public class ImageGalleryActivity extends AppCompatActivity implements ImageGall
             IMAGES.add(array);
             
             // save the ID to the gallery
-            for(int i = 0; i < TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().size(); i++) {
-                if(TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i).getID() == galleryID) {
-                    if(((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).getPictureIDs() == null) {
-                        ((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).setPictureIDs(new ArrayList<Integer>());
-                    }
-                    ((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).getPictureIDs().add(newID);
-                    break;
-                }
+            RGallery gallery = (RGallery) TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetric(galleryID);
+            if(gallery != null) {
+                if(gallery.getPictureIDs() == null) gallery.setPictureIDs(new ArrayList<Integer>());
+                gallery.getPictureIDs().add(newID);
             }
             TeamViewer.checkout.getTeam().setLastEdit(System.currentTimeMillis());
 
-            new IO(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
+            CheckoutRepository.getInstance(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
             imageGalleryAdapter.notifyDataSetChanged();
         }
         /*
@@ -237,18 +234,13 @@ public class ImageGalleryActivity extends AppCompatActivity implements ImageGall
             TeamViewer.checkout.getTeam().setLastEdit(System.currentTimeMillis());
 
             // save the ID to the gallery
-            for(int i = 0; i < TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().size(); i++) {
-                if(TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i).getID() == galleryID) {
-                    if(((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).getPictureIDs() == null) {
-                        ((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).setPictureIDs(new ArrayList<Integer>());
-                    }
-                    ((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).getPictureIDs().add(
-                            new IO(getApplicationContext()).savePicture(IMAGES.get(data.getIntExtra("position", 0))));
-                    break;
-                }
+            RGallery gallery = (RGallery) TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetric(galleryID);
+            if(gallery != null) {
+                if(gallery.getPictureIDs() == null) gallery.setPictureIDs(new ArrayList<Integer>());
+                gallery.getPictureIDs().add(new IO(getApplicationContext()).savePicture(IMAGES.get(data.getIntExtra("position", 0))));
             }
 
-            new IO(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
+            CheckoutRepository.getInstance(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
             imageGalleryAdapter.notifyDataSetChanged();
         }
         /*
@@ -256,14 +248,9 @@ public class ImageGalleryActivity extends AppCompatActivity implements ImageGall
          */
         else if(resultCode == Constants.IMAGE_DELETED) {
             // Remove the image from the gallery ID list
-            for(int i = 0; i < TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().size(); i++) {
-                if(TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i).getID() == galleryID) {
-                    int pictureID = ((RGallery)TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetrics().get(i)).getPictureIDs().remove(data.getIntExtra("position", 0));
-                    // delete from file system
-                    new IO(getApplicationContext()).deletePicture(pictureID);
-                    break;
-                }
-            }
+            int pictureID = -1;
+            RGallery gallery = (RGallery) TeamViewer.checkout.getTeam().getTabs().get(rTabIndex).getMetric(galleryID);
+            if(gallery != null) pictureID = gallery.getPictureIDs().remove(data.getIntExtra("position", 0));
             
             IMAGES.remove(data.getIntExtra("position", 0));
             imageGalleryAdapter.notifyDataSetChanged();
@@ -271,8 +258,11 @@ public class ImageGalleryActivity extends AppCompatActivity implements ImageGall
             // the gallery object reference actually gets removed automatically because IMAGES contains a reference to it
             TeamViewer.checkout.getTeam().setLastEdit(System.currentTimeMillis());
 
-            new IO(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
+            CheckoutRepository repository = CheckoutRepository.getInstance(getApplicationContext());
+            repository.saveMyCheckout(TeamViewer.checkout);
 
+            // delete from file system, unless another gallery contains the same picture
+            if(pictureID != -1 && !repository.isPictureReferenced(pictureID)) new IO(getApplicationContext()).deletePicture(pictureID);
         }
     }
 
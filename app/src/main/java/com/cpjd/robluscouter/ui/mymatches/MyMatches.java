@@ -15,8 +15,11 @@ import android.view.View;
 import android.widget.ProgressBar;
 
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
+import com.cpjd.robluscouter.io.MatchIndex;
 import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RTab;
 import com.cpjd.robluscouter.models.RTeam;
 import com.cpjd.robluscouter.ui.UIHandler;
 import com.cpjd.robluscouter.ui.checkouts.RecyclerViewAdapter;
@@ -24,14 +27,13 @@ import com.cpjd.robluscouter.utils.Constants;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Displays the matches that the team is currently in.
  *
  * For this class to work, we need access to:
  * -FRC team number
- * -Checkouts list (we have to reload it since we're starting a new activity)
+ * -Checkouts list (from CheckoutRepository)
  *
  * @version 2
  * @since 1.0.1
@@ -75,7 +77,7 @@ public class MyMatches extends AppCompatActivity {
         //ItemTouchHelper helper = new ItemTouchHelper(callback);
        // helper.attachToRecyclerView(recyclerView);
 
-        loader = new LoadMyMatches(new IO(getApplicationContext()), recyclerView, progressBar, adapter);
+        loader = new LoadMyMatches(new IO(getApplicationContext()), CheckoutRepository.getInstance(getApplicationContext()), recyclerView, progressBar, adapter);
         loader.execute();
 
         new UIHandler(this, toolbar).update();
@@ -89,12 +91,14 @@ public class MyMatches extends AppCompatActivity {
     private static class LoadMyMatches extends AsyncTask<Void, Void, ArrayList<RCheckout>> {
 
         private IO io;
+        private CheckoutRepository repository;
         private final WeakReference<RecyclerView> recyclerViewWeakReference;
         private final WeakReference<ProgressBar> progressBarWeakReference;
         private final WeakReference<RecyclerViewAdapter> recyclerViewAdapterWeakReference;
 
-        LoadMyMatches(IO io, RecyclerView recyclerView, ProgressBar progressBar, RecyclerViewAdapter adapter) {
+        LoadMyMatches(IO io, CheckoutRepository repository, RecyclerView recyclerView, ProgressBar progressBar, RecyclerViewAdapter adapter) {
             this.io = io;
+            this.repository = repository;
             this.recyclerViewWeakReference = new WeakReference<>(recyclerView);
             this.progressBarWeakReference = new WeakReference<>(progressBar);
             this.recyclerViewAdapterWeakReference = new WeakReference<>(adapter);
@@ -113,50 +117,65 @@ public class MyMatches extends AppCompatActivity {
 
         @Override
         public ArrayList<RCheckout> doInBackground(Void... params) {
-            ArrayList<RCheckout> handoffs = io.loadCheckouts();
             int number = io.loadCloudSettings().getTeamNumber();
 
             // Make sure we have enough information to continue
-            if(number == 0 || handoffs == null || handoffs.size() == 0) return null;
+            if(number == 0) return null;
 
+            // The index is shared with the rest of the app, and only rebuilt when the checkouts change
+            MatchIndex index = repository.getMatchIndex();
             ArrayList<RCheckout> result = new ArrayList<>();
 
-            for(RCheckout checkout : handoffs) {
-                if(checkout.getTeam().getNumber() == number) {
-                    if(checkout.getTeam().getTabs().get(0).getTitle().equalsIgnoreCase("PIT")) continue;
+            for(RCheckout checkout : index.getCheckouts(number)) {
+                RTab tab = checkout.getTeam().getTabs().get(0);
+                if(tab.getTitle().equalsIgnoreCase("PIT")) continue;
 
-                    ArrayList<RTeam> teammates = new ArrayList<>();
-                    ArrayList<RTeam> opponents = new ArrayList<>();
+                // Find teammates and opponents
+                ArrayList<RTeam> teammates = index.getAlliance(tab.getTitle(), tab.isRedAlliance());
+                ArrayList<RTeam> opponents = index.getAlliance(tab.getTitle(), !tab.isRedAlliance());
 
-                    // Find teammates
-                    for(RCheckout check : handoffs) {
-                        if(check.getTeam().getTabs().get(0).getTitle().equalsIgnoreCase(checkout.getTeam().getTabs().get(0).getTitle())) {
-                            if(check.getTeam().getTabs().get(0).isRedAlliance() == checkout.getTeam().getTabs().get(0).isRedAlliance()) teammates.add(check.getTeam());
-                            else opponents.add(check.getTeam());
-                        }
-                    }
-
-                    checkout.getTeam().getTabs().get(0).setTeammates(teammates);
-                    checkout.getTeam().getTabs().get(0).setOpponents(opponents);
-
-                    result.add(checkout);
-                }
+                result.add(toMatch(checkout, teammates, opponents));
             }
 
-            Collections.sort(result);
-
             return result;
         }
 
+        /**
+         * The checkouts are shared with the rest of the app by CheckoutRepository, so teammates and opponents are
+         * attached to a copy of the match instead of the checkout itself
+         * @param checkout the checkout of the match
+         * @param teammates teams on the same alliance
+         * @param opponents teams on the opposing alliance
+         * @return a checkout containing only what's needed to display the match
+         */
+        private RCheckout toMatch(RCheckout checkout, ArrayList<RTeam> teammates, ArrayList<RTeam> opponents) {
+            RTab original = checkout.getTeam().getTabs().get(0);
+
+            RTab tab = new RTab();
+            tab.setTitle(original.getTitle());
+            tab.setRedAlliance(original.isRedAlliance());
+            tab.setTime(original.getTime());
+            tab.setTeammates(teammates);
+            tab.setOpponents(opponents);
+
+            RTeam team = new RTeam(checkout.getTeam().getName(), checkout.getTeam().getNumber(), checkout.getTeam().getID());
+            team.setTabs(new ArrayList<RTab>());
+            team.getTabs().add(tab);
+
+            RCheckout match = new RCheckout(team);
+            match.setID(checkout.getID());
+            match.setStatus(checkout.getStatus());
+            match.setNameTag(checkout.getNameTag());
+            match.setTime(checkout.getTime());
+            return match;
+        }
+
         @Override
         public void onPostExecute(ArrayList<RCheckout> handoffs) {
             if(handoffs == null) return;
 
             try {
-                if(recyclerViewAdapterWeakReference.get() != null) {
-                    recyclerViewAdapterWeakReference.get().removeAll();
-                    recyclerViewAdapterWeakReference.get().setCheckouts(handoffs);
-                }
+                if(recyclerViewAdapterWeakReference.get() != null) recyclerViewAdapterWeakReference.get().setCheckouts(handoffs);
                 recyclerViewWeakReference.get().setVisibility(View.VISIBLE);
                 progressBarWeakReference.get().setVisibility(View.GONE);
             } catch(NullPointerException e) {
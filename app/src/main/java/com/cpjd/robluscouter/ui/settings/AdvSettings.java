@@ -19,6 +19,7 @@ import com.cpjd.http.Request;
 import com.cpjd.models.CloudTeam;
 import com.cpjd.requests.CloudTeamRequest;
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RSettings;
 import com.cpjd.robluscouter.models.RUI;
@@ -137,6 +138,10 @@ public class AdvSettings extends AppCompatActivity{
             disableSyncing.setOnPreferenceChangeListener(this);
             disableSyncing.setChecked(settings.isSyncDisabled());
 
+            android.preference.CheckBoxPreference deltaUploads = (android.preference.CheckBoxPreference) findPreference("delta_uploads");
+            deltaUploads.setOnPreferenceChangeListener(this);
+            deltaUploads.setChecked(settings.isDeltaUploads());
+
             rui = settings.getRui();
         }
 
@@ -210,8 +215,7 @@ public class AdvSettings extends AppCompatActivity{
                         .setFastDialogListener(new FastDialogBuilder.FastDialogListener() {
                             @Override
                             public void accepted() {
-                                IO io = new IO(getActivity());
-                                io.clearCheckouts();
+                                CheckoutRepository.getInstance(getActivity()).clear();
                             }
 
                             @Override
@@ -264,12 +268,15 @@ public class AdvSettings extends AppCompatActivity{
            else if(preference.getKey().equalsIgnoreCase("disable_syncing")) {
                settings.setSyncDisabled((Boolean)o);
            }
+           else if(preference.getKey().equalsIgnoreCase("delta_uploads")) {
+               settings.setDeltaUploads((Boolean)o);
+           }
            // user selected auto checkouts option
            else if(preference.getKey().equalsIgnoreCase("auto_checkouts")) {
                settings.setAutoAssignmentMode(((ListPreference)preference).findIndexOfValue(o.toString()));
                pd = ProgressDialog.show(getActivity(), "Checking out checkouts...", "Please wait...");
                pd.setCancelable(false);
-               new AutoCheckoutTask(this, new IO(getActivity()), settings, null, true).start();
+               new AutoCheckoutTask(this, new IO(getActivity()), CheckoutRepository.getInstance(getActivity()), settings, null, true).start();
            }
            else if(preference.getKey().equalsIgnoreCase("server_ip")) {
                if(o.toString() == null || o.toString().equals("") || o.toString().replaceAll(" ", "").equals("")) {
@@ -23,6 +23,7 @@ import android.view.inputmethod.InputMethodManager;
 import android.widget.Toast;
 
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RCheckout;
 import com.cpjd.robluscouter.models.RForm;
@@ -89,8 +90,8 @@ public class TeamViewer extends AppCompatActivity {
 
         // load the checkout that the user requested
         int ID = getIntent().getIntExtra("checkout", 0);
-        if(editable) checkout = new IO(getApplicationContext()).loadMyCheckout(ID);
-        else checkout = new IO(getApplicationContext()).loadCheckout(ID);
+        if(editable) checkout = CheckoutRepository.getInstance(getApplicationContext()).getMyCheckout(ID);
+        else checkout = CheckoutRepository.getInstance(getApplicationContext()).getCheckout(ID);
 
         /*
          * What's the RForm reference for? It's used for verifying that a local checkout's form is matched with the Roblu Master form.
@@ -100,8 +101,12 @@ public class TeamViewer extends AppCompatActivity {
         RForm form = new IO(getApplicationContext()).loadForm();
         if(form == null) Utils.showSnackbar(findViewById(R.id.teams_viewer_layout), this, "Form could not be synced with server. Local form may contain discrepancies.", true, 0);
         else { // verify the form
-            checkout.getTeam().verify(form);
-            if(editable) new IO(this).saveMyCheckout(checkout);
+            // verify() is skipped if the team was already verified against this form, there's nothing to save then.
+            // The checkout is the repository's cached instance, so it's saved back even if it's read only, otherwise the cache wouldn't match the disk
+            if(checkout.getTeam().verify(form)) {
+                if(editable) CheckoutRepository.getInstance(this).saveMyCheckout(checkout);
+                else CheckoutRepository.getInstance(this).saveCheckout(checkout);
+            }
         }
 
         /*
@@ -159,7 +164,7 @@ public class TeamViewer extends AppCompatActivity {
                         if(won) Utils.showSnackbar(findViewById(R.id.teams_viewer_layout), getApplicationContext(), title+" marked as won.", false, rui.getPrimaryColor());
                         else Utils.showSnackbar(findViewById(R.id.teams_viewer_layout), getApplicationContext(), title+" marked as lost.", false, rui.getPrimaryColor());
                         popup.dismiss();
-                        new IO(getApplicationContext()).saveMyCheckout(checkout);
+                        CheckoutRepository.getInstance(getApplicationContext()).saveMyCheckout(checkout);
                     }
                 }
                 else if(item.getItemId() == R.id.qr) {
@@ -187,6 +192,7 @@ public class TeamViewer extends AppCompatActivity {
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if(item.getItemId() == android.R.id.home) {
+            CheckoutRepository.getInstance(getApplicationContext()).flush();
             Intent result = new Intent();
             result.putExtra("checkout", checkout.getID());
             if(editable) setResult(Constants.TEAM_EDITED, result);
@@ -205,6 +211,7 @@ public class TeamViewer extends AppCompatActivity {
      */
     @Override
     public void onBackPressed() {
+        CheckoutRepository.getInstance(getApplicationContext()).flush();
         Intent result = new Intent();
         result.putExtra("checkout", checkout.getID());
         if(editable) setResult(Constants.TEAM_EDITED, result);
@@ -249,7 +256,8 @@ public class TeamViewer extends AppCompatActivity {
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
         if(resultCode == Constants.GALLERY_EXIT) {
-            checkout = new IO(getApplicationContext()).loadCheckout(checkout.getID());
+            if(editable) checkout = CheckoutRepository.getInstance(getApplicationContext()).getMyCheckout(checkout.getID());
+            else checkout = CheckoutRepository.getInstance(getApplicationContext()).getCheckout(checkout.getID());
             tabAdapter.notifyDataSetChanged();
             ImageGalleryActivity.IMAGES = null;
         }
@@ -259,15 +267,13 @@ public class TeamViewer extends AppCompatActivity {
             byte[] drawings = Drawing.DRAWINGS;
             Drawing.DRAWINGS = null;
 
-            for(RMetric metric : TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics()) {
-                if(metric.getID() == ID) {
-                    metric.setModified(true);
-                    ((RFieldDiagram)metric).setDrawings(drawings);
-                    break;
-                }
+            RMetric metric = TeamViewer.checkout.getTeam().getTabs().get(position).getMetric(ID);
+            if(metric != null) {
+                metric.setModified(true);
+                ((RFieldDiagram)metric).setDrawings(drawings);
             }
             TeamViewer.checkout.getTeam().setLastEdit(System.currentTimeMillis());
-            new IO(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
+            CheckoutRepository.getInstance(getApplicationContext()).saveMyCheckout(TeamViewer.checkout);
             tabAdapter.notifyDataSetChanged();
         }
     }
@@ -303,6 +309,10 @@ public class TeamViewer extends AppCompatActivity {
     @Override
     public void onPause() {
         super.onPause();
+        // Make sure edits that are being saved in the background are on the disk
+        if(!CheckoutRepository.getInstance(getApplicationContext()).flush()) {
+            Toast.makeText(getApplicationContext(), "Some edits couldn't be saved to storage.", Toast.LENGTH_LONG).show();
+        }
         unregisterReceiver(uiRefreshRequestReceiver);
     }
 }
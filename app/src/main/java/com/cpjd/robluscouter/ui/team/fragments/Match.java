@@ -15,8 +15,11 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import com.cpjd.robluscouter.R;
+import com.cpjd.robluscouter.io.CheckoutRepository;
 import com.cpjd.robluscouter.io.IO;
 import com.cpjd.robluscouter.models.RForm;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.metrics.CalculationGraph;
 import com.cpjd.robluscouter.models.metrics.RBoolean;
 import com.cpjd.robluscouter.models.metrics.RCalculation;
 import com.cpjd.robluscouter.models.metrics.RCheckbox;
@@ -33,6 +36,7 @@ import com.cpjd.robluscouter.ui.forms.RMetricToUI;
 import com.cpjd.robluscouter.ui.team.TeamViewer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Match manages the loading of one RTab object
@@ -60,6 +64,14 @@ public class Match extends Fragment implements RMetricToUI.ElementsListener {
     private RMetricToUI els;
 
     private LinearLayoutCompat layout;
+    /**
+     * Keeps the calculation metrics of this tab up to date
+     */
+    private CalculationGraph calculations;
+    /**
+     * The text view displaying each calculation metric's value, keyed by calculation ID
+     */
+    private final HashMap<Integer, TextView> calculationViews = new HashMap<>();
 
     private View view;
 
@@ -84,6 +96,10 @@ public class Match extends Fragment implements RMetricToUI.ElementsListener {
     public void load() {
         if(layout != null && layout.getChildCount() > 0) layout.removeAllViews();
 
+        calculationViews.clear();
+        calculations = new CalculationGraph(TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics());
+        calculations.evaluateAll();
+
         if(form != null) {
             ArrayList<RMetric> elements;
             if(position == 0 && TeamViewer.checkout.getTeam().getTabs().size() > 1) elements = form.getPit();
@@ -92,12 +108,10 @@ public class Match extends Fragment implements RMetricToUI.ElementsListener {
                 Log.d("RSBS", "Match form size: "+elements.size());
             }
 
+            RTab tab = TeamViewer.checkout.getTeam().getTabs().get(position);
             for(RMetric s : elements) {
-                for (RMetric e : TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics()) {
-                    if(e.getID() == s.getID()) {
-                        loadMetric(e);
-                    }
-                }
+                RMetric e = tab.getMetric(s.getID());
+                if(e != null) loadMetric(e);
             }
         } else {
             for(RMetric s : TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics()) {
@@ -117,39 +131,30 @@ public class Match extends Fragment implements RMetricToUI.ElementsListener {
         else if (e instanceof RTextfield) layout.addView(els.getTextfield((RTextfield) e));
         else if(e instanceof RDivider) layout.addView(els.getDivider((RDivider)e));
         else if(e instanceof RFieldDiagram) layout.addView(els.getFieldDiagram(position, (RFieldDiagram)e));
-        else if(e instanceof RCalculation) layout.addView(els.getCalculationMetric(TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics(), ((RCalculation)e)));
+        else if(e instanceof RCalculation) {
+            CardView card = els.getCalculationMetric(calculations, ((RCalculation)e));
+            calculationViews.put(e.getID(), (TextView) ((RelativeLayout) card.getChildAt(0)).getChildAt(0));
+            layout.addView(card);
+        }
         else Log.d("RSBS", "Could'nt resolve an item.");
     }
 
     @Override
     public void changeMade(RMetric metric) {
-                /*
-         * Notify any calculation metrics that a change was made
+        /*
+         * Recompute the calculation metrics that depend on the changed metric
          */
-        for(int i = 0; i < layout.getChildCount(); i++) {
-            CardView cv = (CardView) layout.getChildAt(i);
-            if(cv.getTag() != null && cv.getTag().toString().split(":")[0].equals("CALC")) {
-                // We've discovered a calculation metric, we have access to the ID, so acquire a new copy of the view
-                int ID = Integer.parseInt(cv.getTag().toString().split(":")[1]);
-                for(RMetric m : TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics()) {
-                    if(m.getID() == ID) {
-                        // Get the calculation
-                        String value = m.getTitle()+"\nValue: "+((RCalculation)m).getValue(TeamViewer.checkout.getTeam().getTabs().get(position).getMetrics());
-                        // Set the text
-                        RelativeLayout rl = (RelativeLayout) cv.getChildAt(0);
-                        TextView tv = (TextView) rl.getChildAt(0);
-                        tv.setText(value);
-                        break;
-                    }
-                }
-            }
+        for(RCalculation calculation : calculations.update(metric.getID())) {
+            TextView tv = calculationViews.get(calculation.getID());
+            if(tv != null) tv.setText(calculation.getTitle()+"\nValue: "+calculations.getValue(calculation));
         }
 
         // set the metric as modified - this is a critical line, otherwise scouting data will get deleted
         metric.setModified(true);
 
         TeamViewer.checkout.getTeam().setLastEdit(System.currentTimeMillis());
-        new IO(view.getContext()).saveMyCheckout(TeamViewer.checkout);
+        // Edits come in quickly (counter taps, slider moves), so they're written in the background, TeamViewer flushes them when it's paused
+        CheckoutRepository.getInstance(view.getContext()).saveMyCheckoutLater(TeamViewer.checkout);
     }
 
     public int getPosition() {
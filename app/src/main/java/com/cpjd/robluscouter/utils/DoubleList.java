@@ -0,0 +1,141 @@
+package com.cpjd.robluscouter.utils;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationContext;
+import org.codehaus.jackson.map.JsonDeserializer;
+import org.codehaus.jackson.map.JsonSerializer;
+import org.codehaus.jackson.map.SerializerProvider;
+import org.codehaus.jackson.map.annotate.JsonDeserialize;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DoubleList is a growable list of primitive doubles, it replaces ArrayList<Double> where every element would otherwise be boxed.
+ *
+ * In JSON, it's written as a plain array of numbers, exactly like an ArrayList<Double>.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+@JsonSerialize(using = DoubleList.Serializer.class)
+@JsonDeserialize(using = DoubleList.Deserializer.class)
+public class DoubleList implements Serializable {
+
+    /**
+     * Changing this versionUID will render this class incompatible with older versions.
+     */
+    public static final long serialVersionUID = 1L;
+
+    private double[] values;
+    private int size;
+
+    public DoubleList() {
+        this(4);
+    }
+
+    public DoubleList(int capacity) {
+        values = new double[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Converts a boxed list, nulls are read as 0
+     * @param list the list to convert, may be null
+     * @return the list, or null if list was null
+     */
+    public static DoubleList of(List<?> list) {
+        if(list == null) return null;
+        DoubleList doubles = new DoubleList(list.size());
+        for(Object value : list) doubles.add(value instanceof Number ? ((Number) value).doubleValue() : 0);
+        return doubles;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double get(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        return values[index];
+    }
+
+    public void add(double value) {
+        if(size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    /**
+     * Removes the element at the index, and shifts the remaining elements down
+     * @param index the index of the element
+     * @return the removed element
+     */
+    public double remove(int index) {
+        double value = get(index);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return value;
+    }
+
+    public DoubleList copy() {
+        DoubleList copy = new DoubleList(size);
+        System.arraycopy(values, 0, copy.values, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof DoubleList)) return false;
+        DoubleList other = (DoubleList) o;
+        if(size != other.size) return false;
+        for(int i = 0; i < size; i++) if(Double.compare(values[i], other.values[i]) != 0) return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for(int i = 0; i < size; i++) {
+            long bits = Double.doubleToLongBits(values[i]);
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for(int i = 0; i < size; i++) builder.append(i == 0 ? "" : ", ").append(values[i]);
+        return builder.append("]").toString();
+    }
+
+    /**
+     * Writes the list the same way as an ArrayList<Double>
+     */
+    public static class Serializer extends JsonSerializer<DoubleList> {
+        @Override
+        public void serialize(DoubleList list, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartArray();
+            for(int i = 0; i < list.size; i++) generator.writeNumber(list.values[i]);
+            generator.writeEndArray();
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<DoubleList> {
+        @Override
+        public DoubleList deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if(parser.getCurrentToken() != JsonToken.START_ARRAY) throw context.mappingException(DoubleList.class);
+            DoubleList list = new DoubleList();
+            for(JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                list.add(token == JsonToken.VALUE_NULL ? 0 : parser.getDoubleValue());
+            }
+            return list;
+        }
+    }
+}
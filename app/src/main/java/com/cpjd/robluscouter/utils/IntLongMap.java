@@ -0,0 +1,194 @@
+package com.cpjd.robluscouter.utils;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * IntLongMap maps int keys to long values without boxing either, it replaces LinkedHashMap<Integer, Long>.
+ *
+ * Entries are kept in parallel arrays in insertion order, so iterating with {@link #keyAt(int)} and {@link #valueAt(int)}
+ * returns them in the same order as a LinkedHashMap would. Keys are found through an open addressing (linear probing)
+ * table of entry indices. Entries can't be removed one at a time, only cleared all at once, which is all the sync settings need.
+ *
+ * @version 1
+ * @since 4.5.0
+ */
+public class IntLongMap implements Serializable {
+
+    /**
+     * Changing this versionUID will render this class incompatible with older versions.
+     */
+    public static final long serialVersionUID = 1L;
+
+    private transient int[] keys;
+    private transient long[] values;
+    private transient int size;
+    /**
+     * Entry index + 1 for each slot, 0 is an empty slot. The length is always a power of 2, and at most half full.
+     */
+    private transient int[] table;
+
+    public IntLongMap() {
+        this(8);
+    }
+
+    public IntLongMap(int capacity) {
+        init(Math.max(capacity, 4));
+    }
+
+    /**
+     * Converts a boxed map, entries with a null key or value are skipped
+     * @param map the map to convert, may be null
+     * @return the map, or null if map was null
+     */
+    public static IntLongMap of(Map<?, ?> map) {
+        if(map == null) return null;
+        IntLongMap converted = new IntLongMap(map.size());
+        for(Map.Entry<?, ?> entry : map.entrySet()) {
+            if(entry.getKey() == null || !(entry.getValue() instanceof Number)) continue;
+            // keys were sometimes read back as strings
+            int key = entry.getKey() instanceof Number ? ((Number) entry.getKey()).intValue() : Integer.parseInt(entry.getKey().toString());
+            converted.put(key, ((Number) entry.getValue()).longValue());
+        }
+        return converted;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @param key the key
+     * @param missing returned if the key isn't in the map
+     * @return the value of the key
+     */
+    public long get(int key, long missing) {
+        int index = find(key);
+        return index >= 0 ? values[index] : missing;
+    }
+
+    public void put(int key, long value) {
+        int index = find(key);
+        if(index >= 0) {
+            values[index] = value;
+            return;
+        }
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        if(size * 2 > table.length) rehash(table.length * 2);
+        else insert(size - 1);
+    }
+
+    /**
+     * @param index the entry index, in insertion order, from 0 to size() - 1
+     * @return the key of the entry
+     */
+    public int keyAt(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        return keys[index];
+    }
+
+    /**
+     * @param index the entry index, in insertion order, from 0 to size() - 1
+     * @return the value of the entry
+     */
+    public long valueAt(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        return values[index];
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(table, 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof IntLongMap)) return false;
+        IntLongMap other = (IntLongMap) o;
+        if(size != other.size) return false;
+        for(int i = 0; i < size; i++) {
+            int index = other.find(keys[i]);
+            if(index < 0 || other.values[index] != values[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // order independent, like a map
+        int hash = 0;
+        for(int i = 0; i < size; i++) hash += keys[i] ^ (int) (values[i] ^ (values[i] >>> 32));
+        return hash;
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private void init(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        int slots = 8;
+        while(slots < capacity * 2) slots <<= 1;
+        table = new int[slots];
+    }
+
+    private int find(int key) {
+        int mask = table.length - 1;
+        for(int slot = mix(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if(keys[table[slot] - 1] == key) return table[slot] - 1;
+        }
+        return -1;
+    }
+
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = mix(keys[index]) & mask;
+        while(table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = index + 1;
+    }
+
+    private void rehash(int slots) {
+        table = new int[slots];
+        for(int i = 0; i < size; i++) insert(i);
+    }
+
+    /**
+     * Checkout IDs are sequential, so they're scrambled to spread them out over the table
+     */
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for(int i = 0; i < size; i++) {
+            out.writeInt(keys[i]);
+            out.writeLong(values[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        init(Math.max(count, 4));
+        for(int i = 0; i < count; i++) put(in.readInt(), in.readLong());
+    }
+}
@@ -126,7 +126,8 @@ public class Utils {
     /**
      * Requests a UI refresh in checkouts view.
      *
-     * Note: This will reload checkouts from the disk.
+     * Note: Checkout tabs are refreshed by CheckoutRepository's listeners whenever checkouts are saved, this is only needed
+     * for refreshing settings and event information.
      * @param context a context reference
      * @param refreshMyCheckouts if the my checkouts tab should be refreshed
      * @param refreshCheckouts if the checkouts tab should be refreshed
@@ -0,0 +1,237 @@
+package com.cpjd.robluscouter.io;
+
+import com.cpjd.robluscouter.models.RCheckout;
+import com.cpjd.robluscouter.models.RTab;
+import com.cpjd.robluscouter.models.RTeam;
+import com.cpjd.robluscouter.models.metrics.CheckboxValues;
+import com.cpjd.robluscouter.models.metrics.RBoolean;
+import com.cpjd.robluscouter.models.metrics.RCalculation;
+import com.cpjd.robluscouter.models.metrics.RCheckbox;
+import com.cpjd.robluscouter.models.metrics.RChooser;
+import com.cpjd.robluscouter.models.metrics.RCounter;
+import com.cpjd.robluscouter.models.metrics.RFieldDiagram;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.models.metrics.RSlider;
+import com.cpjd.robluscouter.models.metrics.RStopwatch;
+import com.cpjd.robluscouter.models.metrics.RTextfield;
+import com.cpjd.robluscouter.utils.DoubleList;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CheckoutCodec}.
+ */
+public class CheckoutCodecTest {
+
+    @Test
+    public void roundTrip_keepsEveryField() throws Exception {
+        RCheckout checkout = checkout(5, "Notes");
+        assertEquals(json(checkout), json(CheckoutCodec.decode(CheckoutCodec.encode(checkout))));
+    }
+
+    @Test
+    public void roundTrip_keepsStringsLongerThan64KB() throws Exception {
+        StringBuilder note = new StringBuilder();
+        while(note.length() < 70000) note.append("Great driver, über fast 🚀 ");
+        RCheckout checkout = checkout(2, note.toString());
+
+        RCheckout decoded = CheckoutCodec.decode(CheckoutCodec.encode(checkout));
+        assertEquals(note.toString(), ((RTextfield) decoded.getTeam().getTabs().get(1).getMetrics().get(6)).getText());
+        assertEquals(json(checkout), json(decoded));
+    }
+
+    @Test
+    public void roundTrip_keepsNullsAndEmptyStrings() throws Exception {
+        RCheckout checkout = checkout(2, "");
+        checkout.setNameTag(null);
+        checkout.getTeam().setName("");
+        checkout.getTeam().getTabs().get(1).setEdits(null);
+        ((RTextfield) checkout.getTeam().getTabs().get(1).getMetrics().get(6)).setText(null);
+
+        assertEquals(json(checkout), json(CheckoutCodec.decode(CheckoutCodec.encode(checkout))));
+    }
+
+    @Test
+    public void roundTrip_keepsSchemasThatChangeBetweenTabs() throws Exception {
+        RCheckout checkout = checkout(4, "Notes");
+        // the same metric, with a different schema in one of the tabs
+        RChooser chooser = (RChooser) checkout.getTeam().getTabs().get(2).getMetrics().get(1);
+        chooser.setTitle("Endgame");
+        chooser.setValues(new String[] {"None", "Park"});
+
+        RCheckout decoded = CheckoutCodec.decode(CheckoutCodec.encode(checkout));
+        assertEquals(json(checkout), json(decoded));
+        assertEquals("Climb", decoded.getTeam().getTabs().get(1).getMetrics().get(1).getTitle());
+        assertEquals("Endgame", decoded.getTeam().getTabs().get(2).getMetrics().get(1).getTitle());
+        assertEquals("Climb", decoded.getTeam().getTabs().get(3).getMetrics().get(1).getTitle());
+    }
+
+    @Test
+    public void encode_writesRepeatedSchemasOnce() throws Exception {
+        byte[] bytes = CheckoutCodec.encode(checkout(40, "Notes"));
+        assertEquals(1, count(bytes, "Moved in auto"));
+        assertEquals(1, count(bytes, "High"));
+        assertEquals(1, count(bytes, "Cubes * 2 + Speed"));
+    }
+
+    @Test
+    public void copy_doesNotShareReferences() throws Exception {
+        RCheckout checkout = checkout(2, "Notes");
+        RCheckout copy = CheckoutCodec.copy(checkout);
+        assertEquals(json(checkout), json(copy));
+
+        ((RCounter) copy.getTeam().getTabs().get(1).getMetrics().get(3)).setValue(99);
+        copy.getTeam().getTabs().get(1).getEdits().put("Someone else", 1L);
+        assertEquals(json(checkout(2, "Notes")), json(checkout));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsOtherData() throws Exception {
+        CheckoutCodec.decode(new byte[] {'R', 'C', 'K', '2', 3});
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_rejectsNewerVersions() throws Exception {
+        byte[] bytes = CheckoutCodec.encode(checkout(1, "Notes"));
+        bytes[4]++;
+        CheckoutCodec.decode(bytes);
+    }
+
+    @Test
+    public void isLegacy_detectsJavaSerialization() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(checkout(1, "Notes"));
+        out.close();
+
+        assertTrue(CheckoutCodec.isLegacy(bytes.toByteArray()));
+        assertFalse(CheckoutCodec.isLegacy(CheckoutCodec.encode(checkout(1, "Notes"))));
+        assertFalse(CheckoutCodec.isLegacy(null));
+    }
+
+    /*
+     * Helper methods
+     */
+
+    /**
+     * Checkouts are compared by their JSON, the format they're synced in
+     */
+    private static String json(RCheckout checkout) throws IOException {
+        return new ObjectMapper().writeValueAsString(checkout);
+    }
+
+    private static int count(byte[] bytes, String string) {
+        byte[] target = string.getBytes(Charset.forName("UTF-8"));
+        int count = 0;
+        for(int i = 0; i + target.length <= bytes.length; i++) {
+            int j = 0;
+            while(j < target.length && bytes[i + j] == target[j]) j++;
+            if(j == target.length) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Builds a checkout with a PIT tab and match tabs that contain one of most metric types
+     * @param tabs the number of tabs
+     * @param note the text of the notes metric
+     */
+    private static RCheckout checkout(int tabs, String note) {
+        RTeam team = new RTeam();
+        team.setID(12);
+        team.setName("Team 4400");
+        team.setNumber(4400);
+        team.setLastEdit(1700000000000L);
+        team.setTabs(new ArrayList<RTab>());
+
+        for(int i = 0; i < tabs; i++) {
+            RTab tab = new RTab();
+            tab.setTitle(i == 0 ? "PIT" : "Quals "+i);
+            tab.setWon(i % 2 == 0);
+            tab.setRedAlliance(i % 3 == 0);
+            LinkedHashMap<String, Long> edits = new LinkedHashMap<>();
+            edits.put("Scout "+(i % 3), 1700000000000L + i);
+            tab.setEdits(edits);
+
+            ArrayList<RMetric> metrics = new ArrayList<>();
+            RBoolean moved = new RBoolean();
+            moved.setID(1);
+            moved.setTitle("Moved in auto");
+            moved.setValue(i % 2 == 0);
+            moved.setModified(true);
+            metrics.add(moved);
+
+            RChooser climb = new RChooser();
+            climb.setID(2);
+            climb.setTitle("Climb");
+            climb.setValues(new String[] {"None", "Low", "High"});
+            climb.setSelectedIndex(i % 3);
+            metrics.add(climb);
+
+            RCheckbox auto = new RCheckbox();
+            auto.setID(3);
+            auto.setTitle("Auto");
+            CheckboxValues values = new CheckboxValues(new String[] {"Cross", "Switch", "Scale"});
+            values.setChecked(i % 3, true);
+            auto.setValues(values);
+            metrics.add(auto);
+
+            RCounter cubes = new RCounter();
+            cubes.setID(4);
+            cubes.setTitle("Cubes");
+            cubes.setIncrement(0.5);
+            cubes.setValue(i * 1.5);
+            metrics.add(cubes);
+
+            RSlider speed = new RSlider();
+            speed.setID(5);
+            speed.setTitle("Speed");
+            speed.setMin(-3);
+            speed.setMax(10);
+            speed.setValue(i % 10);
+            metrics.add(speed);
+
+            RStopwatch cycle = new RStopwatch();
+            cycle.setID(6);
+            cycle.setTitle("Cycle");
+            cycle.setTime(12.3);
+            DoubleList times = new DoubleList();
+            times.add(1.5);
+            times.add(i);
+            cycle.setTimes(times);
+            metrics.add(cycle);
+
+            metrics.add(new RTextfield(7, "Notes", note));
+
+            RCalculation total = new RCalculation(8, "Total");
+            total.setCalculation("Cubes * 2 + Speed");
+            metrics.add(total);
+
+            RFieldDiagram field = new RFieldDiagram();
+            field.setID(9);
+            field.setTitle("Path");
+            field.setPictureID(3);
+            field.setDrawings(new byte[] {1, 2, 3});
+            metrics.add(field);
+
+            tab.setMetrics(metrics);
+            team.getTabs().add(tab);
+        }
+
+        RCheckout checkout = new RCheckout(team);
+        checkout.setID(77);
+        checkout.setNameTag("Scout");
+        checkout.setTime(1700000001000L);
+        return checkout;
+    }
+}
@@ -0,0 +1,231 @@
+package com.cpjd.robluscouter.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CheckoutStore}.
+ *
+ * Stores are shared per directory, so every test that re-opens a store copies the files into a new directory first.
+ */
+public class CheckoutStoreTest {
+
+    private File root;
+    private int directories;
+
+    @Before
+    public void setUp() throws Exception {
+        root = File.createTempFile("store", "");
+        assertTrue(root.delete() && root.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    @Test
+    public void put_replacesOlderVersion() throws Exception {
+        CheckoutStore store = CheckoutStore.getInstance(newDirectory());
+        assertTrue(store.put(1, bytes("first", 10)));
+        assertTrue(store.put(2, bytes("other", 10)));
+        assertTrue(store.put(1, bytes("second", 10)));
+
+        assertArrayEquals(bytes("second", 10), store.get(1));
+        assertArrayEquals(bytes("other", 10), store.get(2));
+        assertEquals(2, store.size());
+        assertNull(store.get(3));
+    }
+
+    @Test
+    public void remove_isKeptAfterReopening() throws Exception {
+        File directory = newDirectory();
+        CheckoutStore store = CheckoutStore.getInstance(directory);
+        store.put(1, bytes("a", 10));
+        store.put(2, bytes("b", 10));
+        store.remove(1);
+
+        assertFalse(store.contains(1));
+        assertNull(store.get(1));
+
+        CheckoutStore reopened = CheckoutStore.getInstance(copy(directory));
+        assertFalse(reopened.contains(1));
+        assertArrayEquals(bytes("b", 10), reopened.get(2));
+    }
+
+    @Test
+    public void getAll_isInDiskOrder() throws Exception {
+        CheckoutStore store = CheckoutStore.getInstance(newDirectory());
+        store.put(3, bytes("c", 1));
+        store.put(1, bytes("a", 1));
+        store.put(2, bytes("b", 1));
+        store.put(3, bytes("d", 1));
+
+        LinkedHashMap<Integer, byte[]> all = store.getAll();
+        assertEquals("[1, 2, 3]", all.keySet().toString());
+        assertArrayEquals(bytes("d", 1), all.get(3));
+    }
+
+    @Test
+    public void compact_keepsOnlyLiveRecords() throws Exception {
+        File directory = newDirectory();
+        CheckoutStore store = CheckoutStore.getInstance(directory);
+        for(int version = 0; version < 20; version++) {
+            for(int ID = 0; ID < 5; ID++) store.put(ID, bytes("v"+version, 100));
+        }
+        store.remove(4);
+        store.compact();
+
+        File data = new File(directory, "checkouts.dat");
+        assertEquals(4 * (8 + 100), data.length());
+        for(int ID = 0; ID < 4; ID++) assertArrayEquals(bytes("v19", 100), store.get(ID));
+        assertFalse(store.contains(4));
+
+        // the compacted index matches the compacted data file
+        CheckoutStore reopened = CheckoutStore.getInstance(copy(directory));
+        assertEquals(4, reopened.size());
+        for(int ID = 0; ID < 4; ID++) assertArrayEquals(bytes("v19", 100), reopened.get(ID));
+
+        // records appended after compaction go after the live records
+        store.put(7, bytes("new", 10));
+        assertArrayEquals(bytes("new", 10), store.get(7));
+        assertArrayEquals(bytes("v19", 100), store.get(3));
+    }
+
+    @Test
+    public void open_recoversRecordsMissingFromIndex() throws Exception {
+        File directory = newDirectory();
+        CheckoutStore store = CheckoutStore.getInstance(directory);
+        store.put(1, bytes("a", 20));
+        long indexed = new File(directory, "checkouts.idx").length();
+        store.put(2, bytes("b", 20));
+        store.put(1, bytes("c", 20));
+
+        // the app was killed after the first index entry was written
+        File copy = copy(directory);
+        truncate(new File(copy, "checkouts.idx"), indexed);
+
+        CheckoutStore recovered = CheckoutStore.getInstance(copy);
+        assertEquals(2, recovered.size());
+        assertArrayEquals(bytes("c", 20), recovered.get(1));
+        assertArrayEquals(bytes("b", 20), recovered.get(2));
+        assertEquals(3 * 16, new File(copy, "checkouts.idx").length());
+    }
+
+    @Test
+    public void open_rebuildsMissingIndex() throws Exception {
+        File directory = newDirectory();
+        CheckoutStore store = CheckoutStore.getInstance(directory);
+        store.put(1, bytes("a", 20));
+        store.put(2, bytes("b", 20));
+        store.remove(1);
+
+        File copy = copy(directory);
+        assertTrue(new File(copy, "checkouts.idx").delete());
+
+        CheckoutStore recovered = CheckoutStore.getInstance(copy);
+        assertEquals(1, recovered.size());
+        assertFalse(recovered.contains(1));
+        assertArrayEquals(bytes("b", 20), recovered.get(2));
+    }
+
+    @Test
+    public void open_chopsOffPartiallyWrittenRecord() throws Exception {
+        File directory = newDirectory();
+        CheckoutStore store = CheckoutStore.getInstance(directory);
+        store.put(1, bytes("a", 20));
+        store.put(2, bytes("b", 20));
+        long length = new File(directory, "checkouts.dat").length();
+
+        // the app was killed half way through writing a record
+        File copy = copy(directory);
+        File data = new File(copy, "checkouts.dat");
+        try(RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.seek(length);
+            file.writeInt(3);
+            file.writeInt(1000);
+            file.write(bytes("partial", 50));
+        }
+
+        CheckoutStore recovered = CheckoutStore.getInstance(copy);
+        assertEquals(length, data.length());
+        assertEquals(2, recovered.size());
+        assertFalse(recovered.contains(3));
+
+        // the next record goes where the partial one was
+        recovered.put(3, bytes("c", 20));
+        assertEquals(length + 8 + 20, data.length());
+        assertArrayEquals(bytes("c", 20), CheckoutStore.getInstance(copy(copy)).get(3));
+    }
+
+    @Test
+    public void append_writesAtIndexedEnd() throws Exception {
+        File directory = newDirectory();
+        CheckoutStore store = CheckoutStore.getInstance(directory);
+        store.put(1, bytes("a", 20));
+        File data = new File(directory, "checkouts.dat");
+        long length = data.length();
+
+        // garbage past the indexed end of the data file, for example, left by a failed write
+        try(RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.seek(length);
+            file.write(bytes("garbage", 100));
+        }
+
+        store.put(2, bytes("b", 20));
+        assertEquals(length + 8 + 20, data.length());
+
+        CheckoutStore reopened = CheckoutStore.getInstance(copy(directory));
+        assertArrayEquals(bytes("a", 20), reopened.get(1));
+        assertArrayEquals(bytes("b", 20), reopened.get(2));
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private File newDirectory() {
+        return new File(root, "store"+(directories++));
+    }
+
+    private File copy(File directory) throws IOException {
+        File copy = newDirectory();
+        assertTrue(copy.mkdirs());
+        for(File file : directory.listFiles()) {
+            try(FileInputStream in = new FileInputStream(file); FileOutputStream out = new FileOutputStream(new File(copy, file.getName()))) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            }
+        }
+        return copy;
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try(RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(length);
+        }
+    }
+
+    private static byte[] bytes(String prefix, int length) {
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; i++) bytes[i] = (byte) (i < prefix.length() ? prefix.charAt(i) : i);
+        return bytes;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) for(File child : children) delete(child);
+        if(!file.delete()) file.deleteOnExit();
+    }
+}
@@ -0,0 +1,183 @@
+package com.cpjd.robluscouter.models;
+
+import com.cpjd.robluscouter.models.metrics.CheckboxValues;
+import com.cpjd.robluscouter.models.metrics.RBoolean;
+import com.cpjd.robluscouter.models.metrics.RCheckbox;
+import com.cpjd.robluscouter.models.metrics.RChooser;
+import com.cpjd.robluscouter.models.metrics.RCounter;
+import com.cpjd.robluscouter.models.metrics.RMetric;
+import com.cpjd.robluscouter.models.metrics.RTextfield;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link FormDiff#apply(RTab)}.
+ */
+public class FormDiffTest {
+
+    @Test
+    public void apply_removesMetricsThatAreNotOnTheForm() throws Exception {
+        RTab tab = tab("Quals 1", counter(1, "Cubes", 0), counter(2, "Removed", 0), bool(3, "Moved", false));
+        diff(new ArrayList<RMetric>(), list(counter(1, "Cubes", 0), bool(3, "Moved", false))).apply(tab);
+
+        assertEquals("[1, 3]", IDs(tab));
+    }
+
+    @Test
+    public void apply_addsCopiesOfMissingMetrics() throws Exception {
+        RCounter added = counter(2, "Added", 4);
+        RTab tab = tab("Quals 1", counter(1, "Cubes", 0));
+        diff(new ArrayList<RMetric>(), list(added, counter(1, "Cubes", 0))).apply(tab);
+
+        // metrics that are already in the tab keep their position, new ones go at the end
+        assertEquals("[1, 2]", IDs(tab));
+        RMetric copy = tab.getMetrics().get(1);
+        assertNotSame(added, copy);
+        assertEquals(4, ((RCounter) copy).getValue(), 0);
+    }
+
+    @Test
+    public void apply_replacesRetypedMetrics() throws Exception {
+        RTab tab = tab("Quals 1", counter(1, "Cubes", 5), bool(2, "Moved", true));
+        diff(new ArrayList<RMetric>(), list(bool(1, "Cubes", false), bool(2, "Moved", false))).apply(tab);
+
+        assertEquals("[2, 1]", IDs(tab));
+        assertTrue(tab.getMetrics().get(1) instanceof RBoolean);
+    }
+
+    @Test
+    public void apply_renamesMetrics() throws Exception {
+        RTab tab = tab("Quals 1", counter(1, "Cubes", 0));
+        diff(new ArrayList<RMetric>(), list(counter(1, "Power cubes", 0))).apply(tab);
+
+        assertEquals("Power cubes", tab.getMetrics().get(0).getTitle());
+    }
+
+    @Test
+    public void apply_resetsOnlyUnmodifiedValues() throws Exception {
+        RCounter modified = counter(1, "Cubes", 7);
+        modified.setModified(true);
+        RTab tab = tab("Quals 1", modified, counter(2, "Climbs", 3), bool(3, "Moved", false), new RTextfield(4, "Notes", ""));
+        RTextfield notes = new RTextfield(4, "Notes", "Default note");
+        diff(new ArrayList<RMetric>(), list(counter(1, "Cubes", 1), counter(2, "Climbs", 1), bool(3, "Moved", true), notes)).apply(tab);
+
+        assertEquals(7, ((RCounter) tab.getMetrics().get(0)).getValue(), 0);
+        assertEquals(1, ((RCounter) tab.getMetrics().get(1)).getValue(), 0);
+        assertTrue(((RBoolean) tab.getMetrics().get(2)).isValue());
+        assertEquals("Default note", ((RTextfield) tab.getMetrics().get(3)).getText());
+    }
+
+    @Test
+    public void apply_keepsTeamNameAndNumber() throws Exception {
+        RTextfield name = new RTextfield(0, "Team name", false, true, "");
+        RTab tab = tab("PIT", new RTextfield(0, "Team name", false, true, "Roblu"));
+        diff(list(name), new ArrayList<RMetric>()).apply(tab);
+
+        assertEquals("Roblu", ((RTextfield) tab.getMetrics().get(0)).getText());
+    }
+
+    @Test
+    public void apply_updatesCheckboxLabels() throws Exception {
+        RCheckbox old = checkbox(1, "Cross", "Switch");
+        old.getValues().setChecked(1, true);
+        old.setModified(true);
+        RTab tab = tab("Quals 1", old);
+        diff(new ArrayList<RMetric>(), list(checkbox(1, "Cross line", "Switch", "Scale"))).apply(tab);
+
+        CheckboxValues values = ((RCheckbox) tab.getMetrics().get(0)).getValues();
+        assertEquals(3, values.size());
+        assertEquals("Cross line", values.getLabels()[0]);
+        assertFalse(values.isChecked(0));
+        assertTrue(values.isChecked(1));
+        assertFalse(values.isChecked(2));
+    }
+
+    @Test
+    public void apply_updatesChooserItems() throws Exception {
+        RChooser old = chooser(1, 2, "None", "Low", "High");
+        old.setModified(true);
+        RTab tab = tab("Quals 1", old, chooser(2, 1, "A", "B"));
+        diff(new ArrayList<RMetric>(), list(chooser(1, 0, "None", "Low", "Mid", "High"), chooser(2, 0, "A", "B"))).apply(tab);
+
+        RChooser kept = (RChooser) tab.getMetrics().get(0);
+        assertEquals(Arrays.asList("None", "Low", "Mid", "High"), Arrays.asList(kept.getValues()));
+        assertEquals(2, kept.getSelectedIndex());
+        assertEquals(0, ((RChooser) tab.getMetrics().get(1)).getSelectedIndex());
+    }
+
+    @Test
+    public void apply_usesThePitFormForThePitTab() throws Exception {
+        FormDiff diff = diff(list(counter(1, "Pit metric", 0)), list(counter(2, "Match metric", 0)));
+        RTab pit = tab("PIT", counter(2, "Match metric", 0));
+        RTab match = tab("Quals 1", counter(1, "Pit metric", 0));
+        diff.apply(pit);
+        diff.apply(match);
+
+        assertEquals("[1]", IDs(pit));
+        assertEquals("[2]", IDs(match));
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private static FormDiff diff(ArrayList<RMetric> pit, ArrayList<RMetric> match) {
+        return new FormDiff(new RForm(pit, match));
+    }
+
+    private static RTab tab(String title, RMetric... metrics) {
+        RTab tab = new RTab();
+        tab.setTitle(title);
+        tab.setMetrics(list(metrics));
+        return tab;
+    }
+
+    private static ArrayList<RMetric> list(RMetric... metrics) {
+        return new ArrayList<>(Arrays.asList(metrics));
+    }
+
+    private static String IDs(RTab tab) {
+        ArrayList<Integer> IDs = new ArrayList<>();
+        for(RMetric metric : tab.getMetrics()) IDs.add(metric.getID());
+        return IDs.toString();
+    }
+
+    private static RCounter counter(int ID, String title, double value) {
+        RCounter counter = new RCounter();
+        counter.setID(ID);
+        counter.setTitle(title);
+        counter.setIncrement(1);
+        counter.setValue(value);
+        return counter;
+    }
+
+    private static RBoolean bool(int ID, String title, boolean value) {
+        RBoolean bool = new RBoolean();
+        bool.setID(ID);
+        bool.setTitle(title);
+        bool.setValue(value);
+        return bool;
+    }
+
+    private static RCheckbox checkbox(int ID, String... labels) {
+        RCheckbox checkbox = new RCheckbox();
+        checkbox.setID(ID);
+        checkbox.setTitle("Auto");
+        checkbox.setValues(new CheckboxValues(labels));
+        return checkbox;
+    }
+
+    private static RChooser chooser(int ID, int selected, String... items) {
+        RChooser chooser = new RChooser();
+        chooser.setID(ID);
+        chooser.setTitle("Climb");
+        chooser.setValues(items);
+        chooser.setSelectedIndex(selected);
+        return chooser;
+    }
+}
@@ -0,0 +1,120 @@
+package com.cpjd.robluscouter.models.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link CalculationGraph}.
+ */
+public class CalculationGraphTest {
+
+    @Test
+    public void evaluateAll_computesReferencedCalculationsFirst() throws Exception {
+        RCounter cubes = counter(1, "Cubes", 3);
+        // Total is listed before the calculation it references
+        RCalculation total = calculation(2, "Total", "Doubled + 1");
+        RCalculation doubled = calculation(3, "Doubled", "Cubes * 2");
+        CalculationGraph graph = graph(total, cubes, doubled);
+
+        graph.evaluateAll();
+        assertEquals("6.0", graph.getValue(doubled));
+        assertEquals("7.0", graph.getValue(total));
+        assertEquals(7, total.getLastValue(), 0);
+    }
+
+    @Test
+    public void update_recomputesDependentsInOrder() throws Exception {
+        RCounter cubes = counter(1, "Cubes", 3);
+        RSlider speed = new RSlider();
+        speed.setID(4);
+        speed.setTitle("Speed");
+        speed.setValue(5);
+        RCalculation total = calculation(2, "Total", "Doubled + Speed");
+        RCalculation doubled = calculation(3, "Doubled", "Cubes * 2");
+        RCalculation fast = calculation(5, "Fast", "Speed / 2");
+        CalculationGraph graph = graph(total, cubes, doubled, speed, fast);
+        graph.evaluateAll();
+
+        cubes.setValue(10);
+        ArrayList<RCalculation> updated = graph.update(cubes.getID());
+        assertEquals(2, updated.size());
+        assertSame(doubled, updated.get(0));
+        assertSame(total, updated.get(1));
+        assertEquals("25.0", graph.getValue(total));
+        assertEquals("2.5", graph.getValue(fast));
+
+        speed.setValue(1);
+        updated = graph.update(speed.getID());
+        assertEquals(2, updated.size());
+        assertTrue(updated.contains(total) && updated.contains(fast));
+        assertEquals("21.0", graph.getValue(total));
+
+        assertTrue(graph.update(99).isEmpty());
+    }
+
+    @Test
+    public void cycles_areBadEquations() throws Exception {
+        RCalculation a = calculation(1, "A", "B + 1");
+        RCalculation b = calculation(2, "B", "A + 1");
+        RCalculation c = calculation(3, "C", "A * 2");
+        RCalculation d = calculation(4, "D", "2 + 2");
+        CalculationGraph graph = graph(a, b, c, d);
+
+        graph.evaluateAll();
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(a));
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(b));
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(c));
+        assertEquals("4.0", graph.getValue(d));
+    }
+
+    @Test
+    public void invalidFormulas_areBadEquations() throws Exception {
+        RCounter cubes = counter(1, "Cubes", 3);
+        RCalculation self = calculation(2, "Self", "Self + 1");
+        RCalculation broken = calculation(3, "Broken", "Cubes +");
+        RCalculation dependent = calculation(4, "Dependent", "Broken * 2");
+        RCalculation empty = calculation(5, "Empty", null);
+        CalculationGraph graph = graph(cubes, self, broken, dependent, empty);
+
+        graph.evaluateAll();
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(self));
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(broken));
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(dependent));
+        assertEquals(CalculationGraph.BAD_EQUATION, graph.getValue(empty));
+    }
+
+    @Test
+    public void values_areRoundedToTwoDecimals() throws Exception {
+        RCalculation third = calculation(1, "Third", "1 / 3");
+        CalculationGraph graph = graph(third);
+        graph.evaluateAll();
+        assertEquals("0.33", graph.getValue(third));
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private static CalculationGraph graph(RMetric... metrics) {
+        ArrayList<RMetric> list = new ArrayList<>();
+        for(RMetric metric : metrics) list.add(metric);
+        return new CalculationGraph(list);
+    }
+
+    private static RCounter counter(int ID, String title, double value) {
+        RCounter counter = new RCounter();
+        counter.setID(ID);
+        counter.setTitle(title);
+        counter.setValue(value);
+        return counter;
+    }
+
+    private static RCalculation calculation(int ID, String title, String formula) {
+        RCalculation calculation = new RCalculation(ID, title);
+        calculation.setCalculation(formula);
+        return calculation;
+    }
+}
@@ -0,0 +1,89 @@
+package com.cpjd.robluscouter.models.metrics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Expression}.
+ */
+public class ExpressionTest {
+
+    private static final Expression.Values NO_VALUES = new Expression.Values() {
+        @Override
+        public double valueOf(int ID) {
+            throw new IllegalStateException("No metric "+ID);
+        }
+    };
+
+    @Test
+    public void evaluate_followsOperatorPrecedence() throws Exception {
+        assertEquals(7, evaluate("1 + 2 * 3"), 0);
+        assertEquals(9, evaluate("(1 + 2) * 3"), 0);
+        assertEquals(1, evaluate("7 % 3"), 0);
+        assertEquals(2.5, evaluate("10 / 4"), 0);
+        assertEquals(-4, evaluate("-2^2"), 0);
+        assertEquals(64, evaluate("2^3^2"), 0);
+        assertEquals(1, evaluate("3 - 1 - 1"), 0);
+        assertEquals(0.5, evaluate(".5"), 0);
+    }
+
+    @Test
+    public void evaluate_supportsConstantsAndFunctions() throws Exception {
+        assertEquals(Math.PI, evaluate("pi"), 0);
+        assertEquals(Math.E, evaluate("e"), 0);
+        assertEquals(1, evaluate("min(3, 1, 2)"), 0);
+        assertEquals(3, evaluate("max(3, 1, 2)"), 0);
+        assertEquals(6, evaluate("sum(3, 1, 2)"), 0);
+        assertEquals(2, evaluate("avg(3, 1, 2)"), 0);
+        assertEquals(4, evaluate("abs(round(-3.6))"), 0);
+        assertEquals(2, evaluate("log(100)"), 1e-9);
+        assertEquals(0, evaluate("sin(0)"), 0);
+    }
+
+    @Test
+    public void compile_resolvesLongestTitle() throws Exception {
+        LinkedHashMap<String, Integer> titles = new LinkedHashMap<>();
+        titles.put("Cubes", 1);
+        titles.put("Cubes scored", 2);
+        titles.put("pi", 3);
+
+        final HashMap<Integer, Double> values = new HashMap<>();
+        values.put(1, 10.0);
+        values.put(2, 4.0);
+        values.put(3, 100.0);
+        Expression.Values lookup = new Expression.Values() {
+            @Override
+            public double valueOf(int ID) {
+                return values.get(ID);
+            }
+        };
+
+        Expression expression = Expression.compile("Cubes scored * 2 + Cubes", titles, "longest");
+        assertEquals(18, expression.evaluate(lookup), 0);
+        assertEquals("[1, 2]", expression.getReferences().toString());
+
+        // titles take priority over constants
+        assertEquals(101, Expression.compile("pi + 1", titles, "longest").evaluate(lookup), 0);
+    }
+
+    @Test
+    public void compile_rejectsInvalidFormulas() throws Exception {
+        String[] invalid = {"", "1 +", "(1 + 2", "1 2", "foo", "min()", "sin(1, 2)", "1..2", "1 $ 2"};
+        for(String formula : invalid) {
+            try {
+                Expression.compile(formula, new HashMap<String, Integer>(), "invalid");
+                fail("Compiled "+formula);
+            } catch(IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static double evaluate(String formula) {
+        return Expression.compile(formula, new HashMap<String, Integer>(), "").evaluate(NO_VALUES);
+    }
+}
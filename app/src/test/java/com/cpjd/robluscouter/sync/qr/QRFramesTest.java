@@ -0,0 +1,114 @@
+package com.cpjd.robluscouter.sync.qr;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link QRFrames}.
+ */
+public class QRFramesTest {
+
+    @Test
+    public void split_usesOneFrameForSmallPayloads() throws Exception {
+        assertEquals(1, QRFrames.split(payload(10)).size());
+        assertEquals(1, QRFrames.split(payload(QRFrames.MAX_CHUNK_SIZE)).size());
+        assertEquals(1, QRFrames.split(new byte[0]).size());
+        assertEquals(2, QRFrames.split(payload(QRFrames.MAX_CHUNK_SIZE + 1)).size());
+    }
+
+    @Test
+    public void split_framesFitInVersion25Codes() throws Exception {
+        for(byte[] frame : QRFrames.split(payload(QRFrames.MAX_CHUNK_SIZE * 2))) {
+            assertTrue(QrCode.encodeBinary(frame, QrCode.Ecc.LOW).version <= 25);
+        }
+    }
+
+    @Test
+    public void assemble_acceptsFramesInAnyOrder() throws Exception {
+        byte[] payload = payload(5000);
+        ArrayList<byte[]> frames = QRFrames.split(payload);
+        assertEquals(5, frames.size());
+        Collections.shuffle(frames, new Random(1));
+
+        QRFrames.Assembler assembler = new QRFrames.Assembler();
+        for(int i = 0; i < frames.size(); i++) {
+            assertFalse(assembler.isComplete());
+            assertEquals(i == frames.size() - 1, assembler.add(frames.get(i)));
+            // scanning the same frame twice is harmless
+            assembler.add(frames.get(i));
+            assertEquals(i + 1, assembler.getReceived());
+        }
+        assertEquals(5, assembler.getCount());
+        assertArrayEquals(payload, assembler.getPayload());
+    }
+
+    @Test
+    public void assemble_emptyPayload() throws Exception {
+        QRFrames.Assembler assembler = new QRFrames.Assembler();
+        assertTrue(assembler.add(QRFrames.split(new byte[0]).get(0)));
+        assertEquals(0, assembler.getPayload().length);
+    }
+
+    @Test(expected = IOException.class)
+    public void getPayload_rejectsMissingFrames() throws Exception {
+        QRFrames.Assembler assembler = new QRFrames.Assembler();
+        assembler.add(QRFrames.split(payload(5000)).get(0));
+        assembler.getPayload();
+    }
+
+    @Test(expected = IOException.class)
+    public void getPayload_rejectsCorruptedPayload() throws Exception {
+        ArrayList<byte[]> frames = QRFrames.split(payload(3000));
+        frames.get(1)[20] ^= 1;
+
+        QRFrames.Assembler assembler = new QRFrames.Assembler();
+        for(byte[] frame : frames) assembler.add(frame);
+        assembler.getPayload();
+    }
+
+    @Test(expected = IOException.class)
+    public void add_rejectsFramesOfOtherPayloads() throws Exception {
+        byte[] other = payload(3000);
+        other[0]++;
+
+        QRFrames.Assembler assembler = new QRFrames.Assembler();
+        assembler.add(QRFrames.split(payload(3000)).get(0));
+        assembler.add(QRFrames.split(other).get(1));
+    }
+
+    @Test
+    public void add_rejectsOtherData() throws Exception {
+        byte[][] invalid = {
+                new byte[0],
+                "Not a QR frame".getBytes("UTF-8"),
+                {'R', 'Q', 99, 0, 1, 0, 0, 0, 0},
+                {'R', 'Q', 1, 2, 2, 0, 0, 0, 0},
+                {'R', 'Q', 1, 0, 0, 0, 0, 0, 0}
+        };
+        for(byte[] frame : invalid) {
+            try {
+                new QRFrames.Assembler().add(frame);
+                fail("Accepted "+new String(frame, "UTF-8"));
+            } catch(IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void split_rejectsPayloadsThatNeedTooManyFrames() throws Exception {
+        QRFrames.split(new byte[QRFrames.MAX_CHUNK_SIZE * 255 + 1]);
+    }
+
+    private static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        new Random(length).nextBytes(payload);
+        return payload;
+    }
+}
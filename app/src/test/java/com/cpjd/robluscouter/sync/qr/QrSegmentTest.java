@@ -0,0 +1,115 @@
+package com.cpjd.robluscouter.sync.qr;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the mode selection of {@link QrSegment}.
+ */
+public class QrSegmentTest {
+
+    @Test
+    public void makeSegments_picksSingleMode() throws Exception {
+        assertEquals("[]", modes(QrSegment.makeSegments("")));
+        assertEquals("[NUMERIC]", modes(QrSegment.makeSegments("0123456789")));
+        assertEquals("[ALPHANUMERIC]", modes(QrSegment.makeSegments("ROBLU 4400:$%*+-./")));
+        assertEquals("[BYTE]", modes(QrSegment.makeSegments("Roblu 4400")));
+    }
+
+    @Test
+    public void makeSegmentsOptimally_keepsSingleModeText() throws Exception {
+        assertEquals("[]", modes(optimal("")));
+        assertEquals("[NUMERIC]", modes(optimal("31415926535897932384626433832795")));
+        assertEquals("[ALPHANUMERIC]", modes(optimal("HELLO WORLD 2018")));
+        assertEquals("[BYTE]", modes(optimal("hello world")));
+    }
+
+    @Test
+    public void makeSegmentsOptimally_splitsLongRuns() throws Exception {
+        assertEquals("[BYTE, NUMERIC, BYTE]", modes(optimal("team:12345678901234567890123456789012345678901234567890;end")));
+        assertEquals("[ALPHANUMERIC, BYTE]", modes(optimal("RECORD 44 ABCDEFGHIJKLMNOPQRSTUVWXYZ ABCDEFGH/note: lowercase text")));
+    }
+
+    @Test
+    public void makeSegmentsOptimally_doesNotSplitShortRuns() throws Exception {
+        // switching modes for a couple of digits costs more than it saves
+        assertEquals("[BYTE]", modes(optimal("match 12 of 90")));
+    }
+
+    @Test
+    public void makeSegmentsOptimally_countsUtf8Bytes() throws Exception {
+        List<QrSegment> segments = optimal("überfast 🚀");
+        assertEquals("[BYTE]", modes(segments));
+        assertEquals("überfast 🚀".getBytes("UTF-8").length, segments.get(0).numChars);
+    }
+
+    @Test
+    public void makeSegmentsOptimally_neverUsesMoreBitsThanOneSegment() throws Exception {
+        Random random = new Random(2);
+        String alphabet = "0123456789ABCDEFXYZ abcxyz:;{}\"é";
+        for(int i = 0; i < 200; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 1 + random.nextInt(300);
+            for(int j = 0; j < length; j++) {
+                // runs of the same kind of character
+                int run = 1 + random.nextInt(20), start = random.nextInt(alphabet.length());
+                for(int k = 0; k < run && text.length() < length; k++) text.append(alphabet.charAt((start + random.nextInt(4)) % alphabet.length()));
+            }
+            String string = text.toString();
+            List<QrSegment> segments = optimal(string);
+            int version = versionOf(segments);
+            int single = QrSegment.getTotalBits(QrSegment.makeSegments(string), version);
+            // -1 means one segment can't even be encoded at this version, the character count is too big
+            assertTrue(single == -1 || QrSegment.getTotalBits(segments, version) <= single);
+        }
+    }
+
+    @Test
+    public void encodeText_usesSmallerCodesForMixedText() throws Exception {
+        StringBuilder text = new StringBuilder("checkout:");
+        for(int i = 0; i < 300; i++) text.append(i % 10);
+        text.append(";name:Scout");
+        String string = text.toString();
+
+        int optimal = QrCode.encodeText(string, QrCode.Ecc.LOW).version;
+        int single = QrCode.encodeSegments(QrSegment.makeSegments(string), QrCode.Ecc.LOW).version;
+        assertTrue(optimal < single);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void makeSegmentsOptimally_rejectsTextThatDoesNotFit() throws Exception {
+        QrSegment.makeSegmentsOptimally("hello world", QrCode.Ecc.HIGH, 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void makeSegmentsOptimally_rejectsInvalidVersions() throws Exception {
+        QrSegment.makeSegmentsOptimally("1", QrCode.Ecc.LOW, 10, 9);
+    }
+
+    /*
+     * Helper methods
+     */
+
+    private static List<QrSegment> optimal(String text) {
+        return QrSegment.makeSegmentsOptimally(text, QrCode.Ecc.LOW, QrCode.MIN_VERSION, QrCode.MAX_VERSION);
+    }
+
+    private static int versionOf(List<QrSegment> segments) {
+        for(int version = QrCode.MIN_VERSION; version <= QrCode.MAX_VERSION; version++) {
+            int bits = QrSegment.getTotalBits(segments, version);
+            if(bits != -1 && bits <= QrCode.getNumDataCodewords(version, QrCode.Ecc.LOW) * 8) return version;
+        }
+        throw new IllegalArgumentException("Data too long");
+    }
+
+    private static String modes(List<QrSegment> segments) {
+        ArrayList<QrSegment.Mode> modes = new ArrayList<>();
+        for(QrSegment segment : segments) modes.add(segment.mode);
+        return modes.toString();
+    }
+}